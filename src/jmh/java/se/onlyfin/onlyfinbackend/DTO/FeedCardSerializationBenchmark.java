@@ -0,0 +1,89 @@
+package se.onlyfin.onlyfinbackend.DTO;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+import se.onlyfin.onlyfinbackend.model.FeedCard;
+import se.onlyfin.onlyfinbackend.model.RawJson;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares turning a feed card row into a response body with the content kept as raw JSON bytes against the
+ * earlier mapping, which decoded the content to a String, parsed it into a JsonNode tree and serialized the tree.
+ * Both start from the UTF-8 bytes the database driver hands over. The content is a chart like the ones the test
+ * setup seeds. Run with ./gradlew jmh, the gc profiler reports the bytes allocated per operation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FeedCardSerializationBenchmark {
+    private static final String CHART_CONTENT = "{\"chart\":{\"type\":\"column\",\"backgroundColor\":\"#FFFFFF\"}," +
+            "\"title\":{\"text\":\"Quarterly revenue\",\"style\":{\"color\":\"#1A1616\"}}," +
+            "\"xAxis\":{\"categories\":[\"Q1\",\"Q2\",\"Q3\"],\"labels\":{\"style\":{\"color\":\"#1A1616\"}}}," +
+            "\"yAxis\":{\"title\":{\"text\":\"MSEK\",\"style\":{\"color\":\"#1A1616\"}}," +
+            "\"labels\":{\"style\":{\"color\":\"#1A1616\"}},\"gridLineColor\":\"#1A1616\"}," +
+            "\"labels\":{\"style\":{\"color\":\"#1A1616\"}}," +
+            "\"series\":[{\"data\":[100],\"name\":\"name\",\"color\":\"#39a22a\",\"borderWidth\":0}," +
+            "{\"data\":[200],\"name\":\"name\",\"color\":\"#da6868\",\"borderWidth\":0}," +
+            "{\"data\":[300],\"name\":\"name\",\"color\":\"#a2a852\",\"borderWidth\":0}]," +
+            "\"exporting\":{\"chartOptions\":{\"subtitle\":{\"text\":\"Created by TEST_PROD on OnlyFin\"," +
+            "\"style\":{\"color\":\"#000\",\"fontSize\":\"8px\"}}}}," +
+            "\"plotOptions\":{\"series\":{\"animation\":{\"duration\":0}}}}";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final byte[] contentBytes = CHART_CONTENT.getBytes(StandardCharsets.UTF_8);
+    private final Instant postDate = Instant.parse("2023-05-01T08:30:00Z");
+    private final Instant updatedDate = Instant.parse("2023-05-02T09:45:00Z");
+
+    /**
+     * The mapping before content was passed through: the column was read as text and parsed into a tree.
+     */
+    @Benchmark
+    public byte[] jsonNodeContent() throws JsonProcessingException {
+        JsonNode content = objectMapper.readTree(new String(contentBytes, StandardCharsets.UTF_8));
+        ZoneId zoneId = ZoneId.of("Europe/Stockholm");
+        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("dd MMMM HH:mm yyyy", Locale.ENGLISH);
+        TreeFeedCardDTO feedCardDTO = new TreeFeedCardDTO(
+                new ProfileDTO("analyst", 1),
+                new StockDTO("Stock", -1),
+                new CategoryDTO("Category", 2),
+                content,
+                formatter.format(postDate.atZone(zoneId)),
+                formatter.format(updatedDate.atZone(zoneId)));
+        return objectMapper.writeValueAsBytes(feedCardDTO);
+    }
+
+    /**
+     * The current mapping: the column bytes are wrapped and copied into the response as they are.
+     */
+    @Benchmark
+    public byte[] rawJsonContent() throws JsonProcessingException {
+        FeedCard feedCard = new FeedCard();
+        feedCard.setId(3);
+        feedCard.setAnalystId(1);
+        feedCard.setCategoryId(2);
+        feedCard.setCategoryName("Category");
+        feedCard.setContent(RawJson.ofUtf8(contentBytes));
+        feedCard.setPostDate(postDate);
+        feedCard.setUpdatedDate(updatedDate);
+        return objectMapper.writeValueAsBytes(FeedCardDTO.fromFeedCard(feedCard, "analyst", "Stock", null));
+    }
+
+    /**
+     * The shape of the feed card DTO when its content was a JSON tree.
+     */
+    public record TreeFeedCardDTO(ProfileDTO posterOfContent, StockDTO stock, CategoryDTO category, JsonNode content,
+                                  String postDate, String updatedAt) {
+    }
+
+}
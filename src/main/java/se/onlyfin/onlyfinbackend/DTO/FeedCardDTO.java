@@ -1,6 +1,14 @@
 package se.onlyfin.onlyfinbackend.DTO;
 
-import com.fasterxml.jackson.databind.JsonNode;
+import org.springframework.lang.Nullable;
+import se.onlyfin.onlyfinbackend.model.FeedCard;
+import se.onlyfin.onlyfinbackend.model.RawJson;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+import java.util.Objects;
 
 /**
  * DTO used for fetching a "feed card" in the feed page.
@@ -12,6 +20,43 @@ import com.fasterxml.jackson.databind.JsonNode;
  * @param postDate        the date that the content was posted
  * @param updatedAt       the date that the content was last updated
  */
-public record FeedCardDTO(ProfileDTO posterOfContent, StockDTO stock, CategoryDTO category, JsonNode content,
+public record FeedCardDTO(ProfileDTO posterOfContent, StockDTO stock, CategoryDTO category, RawJson content,
                           String postDate, String updatedAt) {
+    /**
+     * Timezone dates are formatted in when the client doesn't ask for one.
+     */
+    public static final ZoneId DEFAULT_ZONE = ZoneId.of("Europe/Stockholm");
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("dd MMMM HH:mm yyyy", Locale.ENGLISH);
+
+    /**
+     * Creates a feed card DTO from a feed card.
+     *
+     * @param feedCard        the feed card
+     * @param analystUsername username of the analyst who posted the feed card
+     * @param stockName       name of the stock the feed card is about
+     * @param zoneId          timezone to format dates in, Europe/Stockholm if null
+     * @return the feed card DTO
+     */
+    public static FeedCardDTO fromFeedCard(FeedCard feedCard, String analystUsername, String stockName,
+                                           @Nullable ZoneId zoneId) {
+        return new FeedCardDTO(
+                new ProfileDTO(analystUsername, feedCard.getAnalystId()),
+                new StockDTO(stockName, -1),
+                new CategoryDTO(feedCard.getCategoryName(), feedCard.getCategoryId()),
+                feedCard.getContent(),
+                formatDate(feedCard.getPostDate(), zoneId),
+                formatDate(feedCard.getUpdatedDate(), zoneId));
+    }
+
+    /**
+     * Formats a date the way feed cards show it.
+     *
+     * @param date   the date
+     * @param zoneId timezone to format the date in, Europe/Stockholm if null
+     * @return the formatted date
+     */
+    public static String formatDate(Instant date, @Nullable ZoneId zoneId) {
+        return DATE_FORMATTER.format(date.atZone(Objects.requireNonNullElse(zoneId, DEFAULT_ZONE)));
+    }
+
 }
@@ -0,0 +1,46 @@
+package se.onlyfin.onlyfinbackend.DTO;
+
+import org.springframework.lang.Nullable;
+import se.onlyfin.onlyfinbackend.model.FeedCardSummary;
+
+import java.time.ZoneId;
+
+/**
+ * DTO used for fetching a "feed card" in the feed page without its content.
+ * The content can be fetched separately by module id when the card is about to be shown.
+ *
+ * @param moduleId        id of the module the card shows
+ * @param posterOfContent the user who posted the content
+ * @param stock           the stock that the content is about
+ * @param category        the category that the content is about
+ * @param moduleType      the type of the module
+ * @param postDate        the date that the content was posted
+ * @param updatedAt       the date that the content was last updated
+ * @param contentHash     hash of the content, changes whenever the content does
+ */
+public record FeedCardSummaryDTO(Integer moduleId, ProfileDTO posterOfContent, StockDTO stock, CategoryDTO category,
+                                 String moduleType, String postDate, String updatedAt, String contentHash) {
+
+    /**
+     * Creates a feed card summary DTO from a feed card summary.
+     *
+     * @param summary         the feed card summary
+     * @param analystUsername username of the analyst who posted the feed card
+     * @param stockName       name of the stock the feed card is about
+     * @param zoneId          timezone to format dates in, Europe/Stockholm if null
+     * @return the feed card summary DTO
+     */
+    public static FeedCardSummaryDTO fromSummary(FeedCardSummary summary, String analystUsername, String stockName,
+                                                 @Nullable ZoneId zoneId) {
+        return new FeedCardSummaryDTO(
+                summary.getId(),
+                new ProfileDTO(analystUsername, summary.getAnalystId()),
+                new StockDTO(stockName, -1),
+                new CategoryDTO(summary.getCategoryName(), summary.getCategoryId()),
+                summary.getModuleType(),
+                FeedCardDTO.formatDate(summary.getPostDate(), zoneId),
+                FeedCardDTO.formatDate(summary.getUpdatedDate(), zoneId),
+                summary.getContentHash());
+    }
+
+}
@@ -0,0 +1,12 @@
+package se.onlyfin.onlyfinbackend.DTO;
+
+import java.util.List;
+
+/**
+ * DTO used for fetching one page of the feed digest.
+ *
+ * @param groups  the digest groups on this page, newest first
+ * @param hasMore true if there is a next page
+ */
+public record FeedDigestDTO(List<FeedDigestGroupDTO> groups, boolean hasMore) {
+}
@@ -0,0 +1,16 @@
+package se.onlyfin.onlyfinbackend.DTO;
+
+/**
+ * DTO used for fetching one group of the feed digest.
+ *
+ * @param posterOfContent the user who posted the content
+ * @param stock           the stock that the content is about
+ * @param category        the category that the content is about, null if the group covers the whole stock
+ * @param bucketStart     start of the time bucket the content was posted in
+ * @param cardCount       number of feed cards in the group
+ * @param newestCard      the newest feed card in the group
+ * @param membersKey      key to pass when fetching all feed cards in the group
+ */
+public record FeedDigestGroupDTO(ProfileDTO posterOfContent, StockDTO stock, CategoryDTO category,
+                                 String bucketStart, Long cardCount, FeedCardDTO newestCard, String membersKey) {
+}
@@ -0,0 +1,12 @@
+package se.onlyfin.onlyfinbackend.DTO;
+
+import java.util.List;
+
+/**
+ * DTO used for fetching one page of the feed.
+ *
+ * @param feedCards  the feed cards on this page
+ * @param nextCursor cursor to pass when fetching the next page, null if this is the last page
+ */
+public record FeedPageDTO(List<FeedCardDTO> feedCards, String nextCursor) {
+}
@@ -0,0 +1,12 @@
+package se.onlyfin.onlyfinbackend.DTO;
+
+import java.util.List;
+
+/**
+ * DTO used for fetching one page of feed card summaries.
+ *
+ * @param feedCards  the feed card summaries on this page
+ * @param nextCursor cursor to pass when fetching the next page, null if this is the last page
+ */
+public record FeedSummaryPageDTO(List<FeedCardSummaryDTO> feedCards, String nextCursor) {
+}
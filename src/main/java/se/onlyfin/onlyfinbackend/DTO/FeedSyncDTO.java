@@ -0,0 +1,15 @@
+package se.onlyfin.onlyfinbackend.DTO;
+
+import java.util.List;
+
+/**
+ * DTO used for returning the feed cards that were created or updated since a sync token.
+ *
+ * @param feedCards the created or updated feed cards, ordered by ascending updated-date
+ * @param syncToken token to pass on the next sync
+ * @param hasMore   true if more changes are waiting and the client should sync again right away
+ * @param reset     true if the subscriptions changed since the previous sync, so that the sync started over and
+ *                  the client should drop the feed cards it had synced before
+ */
+public record FeedSyncDTO(List<SyncedFeedCardDTO> feedCards, String syncToken, boolean hasMore, boolean reset) {
+}
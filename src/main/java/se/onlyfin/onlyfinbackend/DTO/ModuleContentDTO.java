@@ -0,0 +1,13 @@
+package se.onlyfin.onlyfinbackend.DTO;
+
+import com.fasterxml.jackson.annotation.JsonRawValue;
+
+/**
+ * DTO used for fetching the content of a module shown in the feed.
+ *
+ * @param moduleId    id of the module
+ * @param contentHash hash of the content, same as in the feed card summary
+ * @param content     the content as JSON text, written to the response as is
+ */
+public record ModuleContentDTO(Integer moduleId, String contentHash, @JsonRawValue String content) {
+}
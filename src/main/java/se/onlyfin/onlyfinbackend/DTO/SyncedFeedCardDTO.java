@@ -0,0 +1,13 @@
+package se.onlyfin.onlyfinbackend.DTO;
+
+import com.fasterxml.jackson.annotation.JsonUnwrapped;
+
+/**
+ * DTO used for a feed card returned by a feed sync.
+ * Serialized as a regular feed card with the module id added, so clients can replace cards they already have.
+ *
+ * @param moduleId id of the module the card shows
+ * @param feedCard the feed card
+ */
+public record SyncedFeedCardDTO(Integer moduleId, @JsonUnwrapped FeedCardDTO feedCard) {
+}
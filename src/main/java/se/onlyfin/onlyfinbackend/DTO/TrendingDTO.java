@@ -0,0 +1,11 @@
+package se.onlyfin.onlyfinbackend.DTO;
+
+/**
+ * DTO used to send a trending stock or analyst.
+ *
+ * @param id    id of the stock reference or analyst
+ * @param name  name of the stock or username of the analyst
+ * @param count estimated number of new posts about the stock, or new subscriptions to the analyst, in the window
+ */
+public record TrendingDTO(int id, String name, int count) {
+}
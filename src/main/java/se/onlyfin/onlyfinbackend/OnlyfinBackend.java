@@ -2,8 +2,10 @@ package se.onlyfin.onlyfinbackend;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
+@EnableScheduling
 public class OnlyfinBackend {
 
     public static void main(String[] args) {
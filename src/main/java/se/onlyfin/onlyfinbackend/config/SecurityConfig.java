@@ -55,7 +55,8 @@ public class SecurityConfig {
                                 "/reviews/fetch-all",
                                 "/fetch-about-me",
                                 "/fetch-about-me-with-sub-info",
-                                "/feed/target-analyst/"
+                                "/feed/target-analyst/",
+                                "/feed/explore"
                         )
                         .permitAll()
                         .requestMatchers(
@@ -88,6 +89,8 @@ public class SecurityConfig {
                                 "/password-update",
                                 "/subscriptions/get-my-subscribe-count",
                                 "/subscriptions/get-subscribe-count",
+                                "/subscriptions/leaderboard",
+                                "/subscriptions/get-leaderboard-rank",
                                 "/subscriptions/is-user-subscribed-to"
                         )
                         .hasRole("USER")
@@ -57,7 +57,7 @@ public class DashboardController {
             for (int j = 0; j < dashboard.getStocks().get(i).getCategories().size(); j++) {
 
                 int tempCategoryId = dashboard.getStocks().get(i).getCategories().get(j).getId();
-                List<DashboardLayout> tempList = dashboardLayoutRepository.findByCategoryId(tempCategoryId);
+                List<DashboardLayout> tempList = dashboardLayoutRepository.findPublishedByCategoryId(tempCategoryId);
                 layoutList.addAll(tempList);
             }
         }
@@ -1,16 +1,45 @@
 package se.onlyfin.onlyfinbackend.controller;
 
-import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.NonNull;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.*;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.lang.Nullable;
+import org.springframework.util.DigestUtils;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.context.request.async.CallableProcessingInterceptor;
+import org.springframework.web.context.request.async.WebAsyncUtils;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import se.onlyfin.onlyfinbackend.DTO.CategoryDTO;
 import se.onlyfin.onlyfinbackend.DTO.FeedCardDTO;
+import se.onlyfin.onlyfinbackend.DTO.FeedCardSummaryDTO;
+import se.onlyfin.onlyfinbackend.DTO.FeedDigestDTO;
+import se.onlyfin.onlyfinbackend.DTO.FeedDigestGroupDTO;
+import se.onlyfin.onlyfinbackend.DTO.FeedPageDTO;
+import se.onlyfin.onlyfinbackend.DTO.FeedSummaryPageDTO;
+import se.onlyfin.onlyfinbackend.DTO.FeedSyncDTO;
+import se.onlyfin.onlyfinbackend.DTO.ModuleContentDTO;
 import se.onlyfin.onlyfinbackend.DTO.ProfileDTO;
 import se.onlyfin.onlyfinbackend.DTO.StockDTO;
+import se.onlyfin.onlyfinbackend.DTO.SyncedFeedCardDTO;
 import se.onlyfin.onlyfinbackend.model.FeedCard;
+import se.onlyfin.onlyfinbackend.model.FeedCardContent;
+import se.onlyfin.onlyfinbackend.model.FeedCardSummary;
+import se.onlyfin.onlyfinbackend.model.FeedCursor;
+import se.onlyfin.onlyfinbackend.model.FeedDigestGroup;
+import se.onlyfin.onlyfinbackend.model.FeedDigestKey;
+import se.onlyfin.onlyfinbackend.model.FeedFilter;
+import se.onlyfin.onlyfinbackend.model.FeedSyncToken;
+import se.onlyfin.onlyfinbackend.model.RawJson;
 import se.onlyfin.onlyfinbackend.model.Subscription;
 import se.onlyfin.onlyfinbackend.model.User;
 import se.onlyfin.onlyfinbackend.model.dashboard_entity.Category;
@@ -18,16 +47,32 @@ import se.onlyfin.onlyfinbackend.model.dashboard_entity.Dashboard;
 import se.onlyfin.onlyfinbackend.model.dashboard_entity.ModuleEntity;
 import se.onlyfin.onlyfinbackend.model.dashboard_entity.Stock;
 import se.onlyfin.onlyfinbackend.repository.FeedCardRepository;
+import se.onlyfin.onlyfinbackend.repository.FeedCardStreamRepository;
+import se.onlyfin.onlyfinbackend.repository.ModuleRepository;
 import se.onlyfin.onlyfinbackend.repository.SubscriptionRepository;
+import se.onlyfin.onlyfinbackend.service.ExploreFeedService;
+import se.onlyfin.onlyfinbackend.service.FeedNameDictionary;
+import se.onlyfin.onlyfinbackend.service.FeedRankingService;
+import se.onlyfin.onlyfinbackend.service.FeedReadStateService;
+import se.onlyfin.onlyfinbackend.service.FeedStreamService;
+import se.onlyfin.onlyfinbackend.service.FeedTimelineService;
+import se.onlyfin.onlyfinbackend.service.FeedVersionService;
+import se.onlyfin.onlyfinbackend.service.RecentPostCache;
 import se.onlyfin.onlyfinbackend.service.UserService;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.security.Principal;
+import java.time.Duration;
 import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
 import java.time.temporal.ChronoUnit;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 /**
@@ -37,27 +82,63 @@ import java.util.stream.Collectors;
 @RequestMapping("/feed")
 @CrossOrigin(origins = {"https://onlyfrontend-production.up.railway.app", "https://beta.onlyfin.se"}, allowCredentials = "true")
 public class FeedController {
+    private static final int MAX_PAGE_SIZE = 50;
+    private static final int MAX_CUTOFF_DAYS = 365;
+    private static final int MAX_DIGEST_BUCKET_HOURS = 24 * 7;
+
     private final DashboardController dashboardController;
     private final UserService userService;
     private final SubscriptionRepository subscriptionRepository;
     private final FeedCardRepository feedCardRepository;
+    private final FeedTimelineService feedTimelineService;
+    private final FeedStreamService feedStreamService;
+    private final RecentPostCache recentPostCache;
+    private final FeedCardStreamRepository feedCardStreamRepository;
+    private final ObjectMapper objectMapper;
+    private final FeedVersionService feedVersionService;
+    private final FeedRankingService feedRankingService;
+    private final ModuleRepository moduleRepository;
+    private final ExploreFeedService exploreFeedService;
+    private final FeedReadStateService feedReadStateService;
+    private final FeedNameDictionary feedNameDictionary;
+    private final long syncSettleMillis;
 
     public FeedController(DashboardController dashboardController, UserService userService,
-                          SubscriptionRepository subscriptionRepository, FeedCardRepository feedCardRepository) {
+                          SubscriptionRepository subscriptionRepository, FeedCardRepository feedCardRepository,
+                          FeedTimelineService feedTimelineService, FeedStreamService feedStreamService,
+                          RecentPostCache recentPostCache, FeedCardStreamRepository feedCardStreamRepository,
+                          ObjectMapper objectMapper, FeedVersionService feedVersionService,
+                          FeedRankingService feedRankingService, ModuleRepository moduleRepository,
+                          ExploreFeedService exploreFeedService, FeedReadStateService feedReadStateService,
+                          FeedNameDictionary feedNameDictionary,
+                          @Value("${onlyfin.feed.sync.settle-millis:2000}") long syncSettleMillis) {
         this.dashboardController = dashboardController;
         this.userService = userService;
         this.subscriptionRepository = subscriptionRepository;
         this.feedCardRepository = feedCardRepository;
+        this.feedTimelineService = feedTimelineService;
+        this.feedStreamService = feedStreamService;
+        this.recentPostCache = recentPostCache;
+        this.feedCardStreamRepository = feedCardStreamRepository;
+        this.objectMapper = objectMapper;
+        this.feedVersionService = feedVersionService;
+        this.feedRankingService = feedRankingService;
+        this.moduleRepository = moduleRepository;
+        this.exploreFeedService = exploreFeedService;
+        this.feedReadStateService = feedReadStateService;
+        this.feedNameDictionary = feedNameDictionary;
+        this.syncSettleMillis = syncSettleMillis;
     }
 
     /**
      * This method fetches all the feed cards for the user that is logged in.
+     * Answers with 304 Not Modified if the client's ETag still matches the feed.
      *
      * @param principal the user that is logged in
      * @return a list of feed cards
      */
     @GetMapping("/all-the-things")
-    public ResponseEntity<List<FeedCardDTO>> fetchFeedAll(Principal principal, @Nullable ZoneId zoneId) {
+    public ResponseEntity<List<FeedCardDTO>> fetchFeedAll(Principal principal, @Nullable ZoneId zoneId, WebRequest webRequest) {
         User fetchingUser = userService.getUserOrException(principal.getName());
 
         List<Subscription> subscriptions = subscriptionRepository.findBySubscriber(fetchingUser);
@@ -65,32 +146,28 @@ public class FeedController {
             return ResponseEntity.noContent().build();
         }
 
-        HashMap<String, Integer> analystUsernameToIdMap = new HashMap<>();
-        ArrayList<FeedCard> feedCards = new ArrayList<>();
-        for (Subscription subscription : subscriptions) {
-            User currentAnalyst = subscription.getSubscribedTo();
-            feedCards.addAll(feedCardRepository.findByAnalystUsernameOrderByPostDateDesc(currentAnalyst.getUsername()));
-            analystUsernameToIdMap.put(currentAnalyst.getUsername(), currentAnalyst.getId());
+        String feedETag = createFeedETag(subscriptions, "all-the-things", zoneId);
+        if (webRequest.checkNotModified(feedETag)) {
+            return null;
         }
 
-        List<FeedCardDTO> feedCardDTOS = createFeedCardDTOList(analystUsernameToIdMap, feedCards, null);
-        if (feedCards.isEmpty()) {
+        List<FeedCardDTO> feedCardDTOS = fetchTimelineAsDTOs(fetchingUser, subscriptions, Instant.EPOCH, zoneId);
+        if (feedCardDTOS.isEmpty()) {
             return ResponseEntity.noContent().build();
         }
 
-        feedCardDTOS.sort(Comparator.comparing(FeedCardDTO::postDate).reversed());
-
-        return ResponseEntity.ok().body(feedCardDTOS);
+        return ResponseEntity.ok().eTag(feedETag).body(feedCardDTOS);
     }
 
     /**
      * This method fetches feed cards from the last 7 days for the user that is logged in.
+     * The cutoff is rounded down to the hour so that the feed, and its ETag, stay the same within the hour.
      *
      * @param principal the user that is logged in
      * @return a list of feed cards from the last 7 days
      */
     @GetMapping("/week")
-    public ResponseEntity<List<FeedCardDTO>> fetchFeedWeek(Principal principal, @Nullable ZoneId zoneId) {
+    public ResponseEntity<List<FeedCardDTO>> fetchFeedWeek(Principal principal, @Nullable ZoneId zoneId, WebRequest webRequest) {
         User fetchingUser = userService.getUserOrException(principal.getName());
 
         List<Subscription> subscriptions = subscriptionRepository.findBySubscriber(fetchingUser);
@@ -98,51 +175,630 @@ public class FeedController {
             return ResponseEntity.noContent().build();
         }
 
-        Instant cutoffDate = Instant.now().minus(7, ChronoUnit.DAYS);
-        HashMap<String, Integer> analystUsernameToId = new HashMap<>();
-        ArrayList<FeedCard> feedCards = new ArrayList<>();
-        for (Subscription subscription : subscriptions) {
-            User currentAnalyst = subscription.getSubscribedTo();
-            feedCards.addAll(
-                    feedCardRepository.findByAnalystUsernameAndPostDateAfterOrderByPostDateDesc(
-                            currentAnalyst.getUsername(),
-                            cutoffDate));
-            analystUsernameToId.put(currentAnalyst.getUsername(), currentAnalyst.getId());
+        Instant cutoffDate = Instant.now().minus(7, ChronoUnit.DAYS).truncatedTo(ChronoUnit.HOURS);
+        String feedETag = createFeedETag(subscriptions, "week", zoneId, cutoffDate);
+        if (webRequest.checkNotModified(feedETag)) {
+            return null;
         }
 
-        List<FeedCardDTO> feedCardDTOs = createFeedCardDTOList(analystUsernameToId, feedCards, null);
+        List<FeedCardDTO> feedCardDTOs = fetchTimelineAsDTOs(fetchingUser, subscriptions, cutoffDate, zoneId);
 
-        return ResponseEntity.ok().body(feedCardDTOs);
+        return ResponseEntity.ok().eTag(feedETag).body(feedCardDTOs);
     }
 
     /**
-     * @param days      the number of days to fetch feed cards from
-     * @param principal the user that is logged in
-     * @return a list of feed cards from the last x days
+     * The cutoff is rounded down to the hour so that the feed, and its ETag, stay the same within the hour.
+     * The feed can be narrowed down to one stock, category or module type, which is done in the database.
+     *
+     * @param days       the number of days to fetch feed cards from, at most 365
+     * @param principal  the user that is logged in
+     * @param stock      only include feed cards about the stock with this name
+     * @param categoryId only include feed cards in this category
+     * @param moduleType only include feed cards of this module type
+     * @return a list of feed cards from the last x days, or No content if there is no stock with the name
      */
     @GetMapping("/days-cutoff")
-    public ResponseEntity<List<FeedCardDTO>> fetchFeedCutoffDays(@RequestParam Integer days, Principal principal, @Nullable ZoneId zoneId) {
+    public ResponseEntity<List<FeedCardDTO>> fetchFeedCutoffDays(@RequestParam Integer days, Principal principal,
+                                                                 @RequestParam(required = false) String stock,
+                                                                 @RequestParam(required = false) Integer categoryId,
+                                                                 @RequestParam(required = false) String moduleType,
+                                                                 @Nullable ZoneId zoneId, WebRequest webRequest) {
+        User fetchingUser = userService.getUserOrException(principal.getName());
+
+        List<Subscription> subscriptions = subscriptionRepository.findBySubscriber(fetchingUser);
+        if (subscriptions.isEmpty()) {
+            return ResponseEntity.noContent().build();
+        }
+
+        Instant cutoffDate = Instant.now().minus(clampCutoffDays(days), ChronoUnit.DAYS).truncatedTo(ChronoUnit.HOURS);
+        Optional<FeedFilter> feedFilterOptional = createFeedFilter(stock, categoryId, moduleType);
+        if (feedFilterOptional.isEmpty()) {
+            return ResponseEntity.noContent().build();
+        }
+        FeedFilter feedFilter = feedFilterOptional.get();
+        String feedETag = createFeedETag(subscriptions, "days-cutoff", zoneId, cutoffDate, feedFilter);
+        if (webRequest.checkNotModified(feedETag)) {
+            return null;
+        }
+
+        List<FeedCardDTO> feedCardDTOs;
+        if (feedFilter.isEmpty()) {
+            feedCardDTOs = fetchTimelineAsDTOs(fetchingUser, subscriptions, cutoffDate, zoneId);
+        } else {
+            List<FeedCard> feedCards = feedCardRepository.findFilteredSubscriptionFeed(
+                    fetchingUser, feedFilter, cutoffDate, null, null);
+            feedCardDTOs = feedNameDictionary.toFeedCardDTOs(feedCards, zoneId);
+        }
+
+        return ResponseEntity.ok().eTag(feedETag).body(feedCardDTOs);
+    }
+
+    /**
+     * This method streams all the feed cards for the user that is logged in as newline-delimited JSON.
+     * Feed cards are written one by one as they are read from the database, so the whole feed is never held
+     * in memory at once.
+     *
+     * @param principal the user that is logged in
+     * @param zoneId    timezone to format dates in
+     * @return a stream of feed cards, one JSON object per line
+     */
+    @GetMapping(path = "/all-the-things/ndjson", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamFeedAll(Principal principal, @Nullable ZoneId zoneId,
+                                                               WebRequest webRequest) {
+        User fetchingUser = userService.getUserOrException(principal.getName());
+
+        if (subscriptionRepository.findBySubscriber(fetchingUser).isEmpty()) {
+            return ResponseEntity.noContent().build();
+        }
+
+        return streamFeedAsNdjson(fetchingUser, Instant.EPOCH, zoneId, webRequest);
+    }
+
+    /**
+     * This method streams feed cards from the last x days for the user that is logged in as newline-delimited JSON.
+     *
+     * @param days      the number of days to fetch feed cards from, at most 365
+     * @param principal the user that is logged in
+     * @param zoneId    timezone to format dates in
+     * @return a stream of feed cards from the last x days, one JSON object per line
+     */
+    @GetMapping(path = "/days-cutoff/ndjson", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamFeedCutoffDays(@RequestParam Integer days, Principal principal,
+                                                                      @Nullable ZoneId zoneId, WebRequest webRequest) {
+        User fetchingUser = userService.getUserOrException(principal.getName());
+
+        if (subscriptionRepository.findBySubscriber(fetchingUser).isEmpty()) {
+            return ResponseEntity.noContent().build();
+        }
+
+        Instant cutoffDate = Instant.now().minus(clampCutoffDays(days), ChronoUnit.DAYS);
+        return streamFeedAsNdjson(fetchingUser, cutoffDate, zoneId, webRequest);
+    }
+
+    /**
+     * This method fetches one page of the feed for the user that is logged in.
+     * Pages are addressed by an opaque cursor instead of a page number, so every page costs the same
+     * no matter how far back the user has scrolled. Leave out the cursor to fetch the newest page.
+     * Recent pages are merged from the in-memory buffers of the subscribed-to analysts,
+     * older pages are read from the database. Filtered and unread-only pages are always read from the database.
+     *
+     * @param principal  the user that is logged in
+     * @param cursor     cursor returned with the previous page
+     * @param size       number of feed cards to fetch, at most 50
+     * @param stock      only include feed cards about the stock with this name
+     * @param categoryId only include feed cards in this category
+     * @param moduleType only include feed cards of this module type
+     * @param unread     only include feed cards the user hasn't marked read
+     * @return a page of feed cards and the cursor for the next page, or No content if there is no stock with the name
+     */
+    @GetMapping("/page")
+    public ResponseEntity<FeedPageDTO> fetchFeedPage(Principal principal,
+                                                     @RequestParam(required = false) String cursor,
+                                                     @RequestParam(defaultValue = "10") Integer size,
+                                                     @RequestParam(required = false) String stock,
+                                                     @RequestParam(required = false) Integer categoryId,
+                                                     @RequestParam(required = false) String moduleType,
+                                                     @RequestParam(defaultValue = "false") boolean unread,
+                                                     @Nullable ZoneId zoneId, WebRequest webRequest) {
         User fetchingUser = userService.getUserOrException(principal.getName());
+        if (size < 1 || size > MAX_PAGE_SIZE) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        FeedCursor feedCursor = null;
+        if (cursor != null) {
+            try {
+                feedCursor = FeedCursor.decode(cursor);
+            } catch (IllegalArgumentException e) {
+                return ResponseEntity.badRequest().build();
+            }
+        }
 
         List<Subscription> subscriptions = subscriptionRepository.findBySubscriber(fetchingUser);
         if (subscriptions.isEmpty()) {
             return ResponseEntity.noContent().build();
         }
 
-        Instant cutoffDate = Instant.now().minus(days, ChronoUnit.DAYS);
-        HashMap<String, Integer> analystUsernameToId = new HashMap<>();
-        ArrayList<FeedCard> feedCards = new ArrayList<>();
+        Optional<FeedFilter> feedFilterOptional = createFeedFilter(stock, categoryId, moduleType);
+        if (feedFilterOptional.isEmpty()) {
+            return ResponseEntity.noContent().build();
+        }
+        FeedFilter feedFilter = feedFilterOptional.get();
+        Instant lastReadDate = unread ? feedReadStateService.lastReadDate(fetchingUser.getId()) : null;
+        Instant unreadSince = unread ? feedReadStateService.unreadSince(fetchingUser.getId()) : null;
+        String feedETag = createFeedETag(subscriptions, "page", zoneId, cursor, size, feedFilter,
+                lastReadDate, unreadSince);
+        if (webRequest.checkNotModified(feedETag)) {
+            return null;
+        }
+
+        List<User> subscribedToAnalysts = new ArrayList<>();
         for (Subscription subscription : subscriptions) {
-            User currentAnalyst = subscription.getSubscribedTo();
-            feedCards.addAll(feedCardRepository.findByAnalystUsernameAndPostDateAfterOrderByPostDateDesc(
-                    currentAnalyst.getUsername(),
-                    cutoffDate));
-            analystUsernameToId.put(currentAnalyst.getUsername(), currentAnalyst.getId());
+            subscribedToAnalysts.add(subscription.getSubscribedTo());
+        }
+
+        List<FeedCard> feedCards;
+        boolean hasNext;
+        //ask for one extra feed card to find out whether there is a next page
+        Optional<List<FeedCard>> mergedOptional;
+        if (unread) {
+            mergedOptional = Optional.of(feedReadStateService.findUnreadSubscriptionFeed(
+                    fetchingUser, feedFilter, feedCursor, size + 1));
+        } else if (feedFilter.isEmpty()) {
+            mergedOptional = recentPostCache.mergeLatest(subscribedToAnalysts, feedCursor, size + 1);
+        } else {
+            mergedOptional = Optional.of(feedCardRepository.findFilteredSubscriptionFeed(
+                    fetchingUser, feedFilter, null, feedCursor, size + 1));
+        }
+        if (mergedOptional.isPresent()) {
+            List<FeedCard> merged = mergedOptional.get();
+            hasNext = merged.size() > size;
+            feedCards = hasNext ? merged.subList(0, size) : merged;
+        } else {
+            Pageable pageable = PageRequest.ofSize(size);
+            Slice<FeedCard> feedCardSlice = (feedCursor == null)
+                    ? feedCardRepository.findSubscriptionFeed(fetchingUser, pageable)
+                    : feedCardRepository.findSubscriptionFeedBefore(
+                    fetchingUser, feedCursor.postDate(), feedCursor.id(), pageable);
+            hasNext = feedCardSlice.hasNext();
+            feedCards = feedCardSlice.getContent();
+        }
+
+        if (feedCards.isEmpty()) {
+            return ResponseEntity.noContent().build();
+        }
+
+        String nextCursor = null;
+        if (hasNext) {
+            nextCursor = FeedCursor.after(feedCards.get(feedCards.size() - 1)).encode();
+        }
+
+        List<FeedCardDTO> feedCardDTOs = feedNameDictionary.toFeedCardDTOs(feedCards, zoneId);
+        return ResponseEntity.ok().eTag(feedETag).body(new FeedPageDTO(feedCardDTOs, nextCursor));
+    }
+
+    /**
+     * This method fetches one page of the feed for the user that is logged in without the module content.
+     * Each summary carries the module id and a hash of its content, so that clients can fetch the content
+     * of the cards that are actually shown with {@link #fetchModuleContent(List, String)} and keep it cached.
+     *
+     * @param principal the user that is logged in
+     * @param cursor    cursor returned with the previous page
+     * @param size      number of feed cards to fetch, at most 50
+     * @param zoneId    timezone to format dates in
+     * @return a page of feed card summaries and the cursor for the next page
+     */
+    @GetMapping("/page/summary")
+    public ResponseEntity<FeedSummaryPageDTO> fetchFeedSummaryPage(Principal principal,
+                                                                   @RequestParam(required = false) String cursor,
+                                                                   @RequestParam(defaultValue = "10") Integer size,
+                                                                   @Nullable ZoneId zoneId) {
+        User fetchingUser = userService.getUserOrException(principal.getName());
+        if (size < 1 || size > MAX_PAGE_SIZE) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        Pageable pageable = PageRequest.ofSize(size);
+        Slice<FeedCardSummary> summarySlice;
+        if (cursor == null) {
+            summarySlice = feedCardRepository.findSubscriptionFeedSummaries(fetchingUser.getId(), pageable);
+        } else {
+            FeedCursor feedCursor;
+            try {
+                feedCursor = FeedCursor.decode(cursor);
+            } catch (IllegalArgumentException e) {
+                return ResponseEntity.badRequest().build();
+            }
+            summarySlice = feedCardRepository.findSubscriptionFeedSummariesBefore(
+                    fetchingUser.getId(), feedCursor.postDate(), feedCursor.id(), pageable);
+        }
+
+        List<FeedCardSummary> summaries = summarySlice.getContent();
+        if (summaries.isEmpty()) {
+            return ResponseEntity.noContent().build();
+        }
+
+        String nextCursor = null;
+        if (summarySlice.hasNext()) {
+            FeedCardSummary lastSummary = summaries.get(summaries.size() - 1);
+            nextCursor = new FeedCursor(lastSummary.getPostDate(), lastSummary.getId()).encode();
+        }
+
+        Set<Integer> analystIds = new HashSet<>();
+        Set<Integer> stockRefIds = new HashSet<>();
+        for (FeedCardSummary summary : summaries) {
+            analystIds.add(summary.getAnalystId());
+            stockRefIds.add(summary.getStockRefId());
+        }
+        feedNameDictionary.loadAnalystNames(analystIds);
+        feedNameDictionary.loadStockNames(stockRefIds);
+
+        List<FeedCardSummaryDTO> summaryDTOs = summaries.stream()
+                .map(summary -> FeedCardSummaryDTO.fromSummary(summary,
+                        feedNameDictionary.analystName(summary.getAnalystId()),
+                        feedNameDictionary.stockName(summary.getStockRefId()), zoneId))
+                .collect(Collectors.toList());
+        return ResponseEntity.ok().body(new FeedSummaryPageDTO(summaryDTOs, nextCursor));
+    }
+
+    /**
+     * This method fetches the content of a batch of modules shown in the feed.
+     * The response carries an ETag made from the content hashes. When the client passes that same value as
+     * the version parameter, the URL changes whenever any of the content does, so the response is cached for
+     * a year. Without a matching version the client has to revalidate with the ETag.
+     *
+     * @param ids     ids of the modules, at most 50
+     * @param version combined content version the client expects, optional
+     * @return the content of the modules that exist, ordered by id
+     */
+    @GetMapping("/content")
+    public ResponseEntity<List<ModuleContentDTO>> fetchModuleContent(@RequestParam List<Integer> ids,
+                                                                     @RequestParam(name = "v", required = false) String version) {
+        if (ids.isEmpty() || ids.size() > MAX_PAGE_SIZE) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        List<FeedCardContent> contents = feedCardRepository.findContentByIdIn(new TreeSet<>(ids));
+        if (contents.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+
+        StringBuilder contentHashes = new StringBuilder();
+        List<ModuleContentDTO> contentDTOs = new ArrayList<>(contents.size());
+        for (FeedCardContent content : contents) {
+            contentHashes.append(content.getId()).append(':').append(content.getContentHash()).append(';');
+            contentDTOs.add(new ModuleContentDTO(content.getId(), content.getContentHash(), content.getContent()));
+        }
+        String currentVersion = DigestUtils.md5DigestAsHex(contentHashes.toString().getBytes(StandardCharsets.UTF_8));
+
+        CacheControl cacheControl = currentVersion.equals(version)
+                ? CacheControl.maxAge(365, TimeUnit.DAYS).cachePrivate().immutable()
+                : CacheControl.noCache().cachePrivate();
+
+        return ResponseEntity.ok()
+                .eTag(currentVersion)
+                .cacheControl(cacheControl)
+                .body(contentDTOs);
+    }
+
+    /**
+     * This method fetches the feed of the user that is logged in as a digest.
+     * Feed cards that an analyst posted on the same stock, or in the same category, within the same time bucket
+     * are collapsed into one group that shows how many cards there are and the newest one.
+     * The cards of a group can be fetched with {@link #fetchFeedDigestMembers(String, Integer, Integer, ZoneId)}.
+     *
+     * @param principal   the user that is logged in
+     * @param days        the number of days to include, at most 365
+     * @param bucketHours length of a time bucket in hours, at most a week
+     * @param groupBy     "stock" to group by stock or "category" to group by category
+     * @param page        page number, starting at 0
+     * @param size        number of groups to fetch, at most 50
+     * @param zoneId      timezone to format dates in and to align the buckets to
+     * @return a page of digest groups, newest first
+     */
+    @GetMapping("/digest")
+    public ResponseEntity<FeedDigestDTO> fetchFeedDigest(Principal principal,
+                                                         @RequestParam(defaultValue = "7") Integer days,
+                                                         @RequestParam(defaultValue = "24") Integer bucketHours,
+                                                         @RequestParam(defaultValue = "stock") String groupBy,
+                                                         @RequestParam(defaultValue = "0") Integer page,
+                                                         @RequestParam(defaultValue = "10") Integer size,
+                                                         @Nullable ZoneId zoneId) {
+        User fetchingUser = userService.getUserOrException(principal.getName());
+        if (days < 0 || bucketHours < 1 || bucketHours > MAX_DIGEST_BUCKET_HOURS || page < 0
+                || size < 1 || size > MAX_PAGE_SIZE || !(groupBy.equals("stock") || groupBy.equals("category"))) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        List<Subscription> subscriptions = subscriptionRepository.findBySubscriber(fetchingUser);
+        if (subscriptions.isEmpty()) {
+            return ResponseEntity.noContent().build();
         }
 
-        List<FeedCardDTO> feedCardDTOs = createFeedCardDTOList(analystUsernameToId, feedCards, null);
+        Instant now = Instant.now();
+        Instant cutoffDate = now.minus(clampCutoffDays(days), ChronoUnit.DAYS);
+        Duration bucketLength = Duration.ofHours(bucketHours);
+        ZoneId bucketZone = Objects.requireNonNullElse(zoneId, FeedCardDTO.DEFAULT_ZONE);
+        long bucketOffsetSeconds = bucketZone.getRules().getOffset(now).getTotalSeconds();
+
+        Slice<FeedDigestGroup> groupSlice = feedCardRepository.findSubscriptionFeedDigest(fetchingUser.getId(),
+                cutoffDate, bucketLength.toSeconds(), bucketOffsetSeconds, groupBy.equals("category"),
+                PageRequest.of(page, size));
+        List<FeedDigestGroup> groups = groupSlice.getContent();
+        if (groups.isEmpty()) {
+            return ResponseEntity.noContent().build();
+        }
+
+        HashMap<Integer, FeedCard> newestCardById = new HashMap<>();
+        for (FeedCard feedCard : feedCardRepository.findAllById(groups.stream().map(FeedDigestGroup::getNewestId).toList())) {
+            newestCardById.put(feedCard.getId(), feedCard);
+        }
+        feedNameDictionary.loadAnalystNames(groups.stream().map(FeedDigestGroup::getAnalystId).toList());
+        feedNameDictionary.loadStockNames(groups.stream().map(FeedDigestGroup::getStockRefId).toList());
+
+        List<FeedDigestGroupDTO> groupDTOs = new ArrayList<>(groups.size());
+        for (FeedDigestGroup group : groups) {
+            FeedCard newestCard = newestCardById.get(group.getNewestId());
+            if (newestCard == null) {
+                // deleted since the groups were read
+                continue;
+            }
 
-        return ResponseEntity.ok().body(feedCardDTOs);
+            String analystUsername = feedNameDictionary.analystName(group.getAnalystId());
+            String stockName = feedNameDictionary.stockName(group.getStockRefId());
+            FeedDigestKey membersKey = new FeedDigestKey(group.getAnalystId(), group.getStockRefId(),
+                    group.getCategoryId(), group.getBucketStart(), group.getBucketStart().plus(bucketLength));
+            groupDTOs.add(new FeedDigestGroupDTO(
+                    new ProfileDTO(analystUsername, group.getAnalystId()),
+                    new StockDTO(stockName, -1),
+                    (group.getCategoryId() == null) ? null : new CategoryDTO(newestCard.getCategoryName(), group.getCategoryId()),
+                    FeedCardDTO.formatDate(group.getBucketStart(), zoneId),
+                    group.getCardCount(),
+                    FeedCardDTO.fromFeedCard(newestCard, analystUsername, stockName, zoneId),
+                    membersKey.encode()));
+        }
+
+        return ResponseEntity.ok().body(new FeedDigestDTO(groupDTOs, groupSlice.hasNext()));
+    }
+
+    /**
+     * This method fetches the feed cards of one digest group.
+     *
+     * @param key    members key of the digest group
+     * @param page   page number, starting at 0
+     * @param size   number of feed cards to fetch, at most 50
+     * @param zoneId timezone to format dates in
+     * @return a list of feed cards in the group, newest first
+     */
+    @GetMapping("/digest/members")
+    public ResponseEntity<List<FeedCardDTO>> fetchFeedDigestMembers(@RequestParam String key,
+                                                                    @RequestParam(defaultValue = "0") Integer page,
+                                                                    @RequestParam(defaultValue = "10") Integer size,
+                                                                    @Nullable ZoneId zoneId) {
+        if (page < 0 || size < 1 || size > MAX_PAGE_SIZE) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        FeedDigestKey digestKey;
+        try {
+            digestKey = FeedDigestKey.decode(key);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        Slice<FeedCard> memberSlice = feedCardRepository.findDigestMembers(digestKey.analystId(),
+                digestKey.stockRefId(), digestKey.categoryId(), digestKey.bucketStart(), digestKey.bucketEnd(),
+                PageRequest.of(page, size));
+        if (memberSlice.isEmpty()) {
+            return ResponseEntity.noContent().build();
+        }
+
+        return ResponseEntity.ok().body(feedNameDictionary.toFeedCardDTOs(memberSlice.getContent(), zoneId));
+    }
+
+    /**
+     * This method fetches one page of the feed for the user that is logged in, ordered by relevance instead of
+     * by post-date. Relevance decays with age and grows with the analyst's number of subscribers and with how
+     * often the user has opened the analyst's posts, see {@link #recordInteraction(Principal, Integer)}.
+     * Only the most relevant feed cards are ranked, pages past them are empty.
+     *
+     * @param principal the user that is logged in
+     * @param page      page number, starting at 0
+     * @param size      number of feed cards to fetch, at most 50
+     * @param zoneId    timezone to format dates in
+     * @return a list of feed cards, most relevant first
+     */
+    @GetMapping("/ranked")
+    public ResponseEntity<List<FeedCardDTO>> fetchRankedFeed(Principal principal,
+                                                             @RequestParam(defaultValue = "0") Integer page,
+                                                             @RequestParam(defaultValue = "10") Integer size,
+                                                             @Nullable ZoneId zoneId) {
+        User fetchingUser = userService.getUserOrException(principal.getName());
+        if (page < 0 || size < 1 || size > MAX_PAGE_SIZE) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        List<Subscription> subscriptions = subscriptionRepository.findBySubscriber(fetchingUser);
+        if (subscriptions.isEmpty()) {
+            return ResponseEntity.noContent().build();
+        }
+
+        List<Integer> rankedIds = feedRankingService.rankedFeedCardIds(
+                fetchingUser, subscriptions, (int) Math.min((long) page * size, Integer.MAX_VALUE), size);
+        if (rankedIds.isEmpty()) {
+            return ResponseEntity.noContent().build();
+        }
+
+        HashMap<Integer, FeedCard> feedCardById = new HashMap<>();
+        for (FeedCard feedCard : feedCardRepository.findAllById(rankedIds)) {
+            feedCardById.put(feedCard.getId(), feedCard);
+        }
+        List<FeedCard> feedCards = new ArrayList<>(rankedIds.size());
+        for (Integer rankedId : rankedIds) {
+            FeedCard feedCard = feedCardById.get(rankedId);
+            if (feedCard != null) {
+                feedCards.add(feedCard);
+            }
+        }
+
+        return ResponseEntity.ok().body(feedNameDictionary.toFeedCardDTOs(feedCards, zoneId));
+    }
+
+    /**
+     * This method records that the user that is logged in has opened a feed card.
+     * Posts by analysts the user interacts with often are ranked higher in the ranked feed.
+     *
+     * @param principal the user that is logged in
+     * @param moduleId  id of the opened module
+     * @return 204 if the interaction was recorded, 404 if the module does not exist
+     */
+    @PostMapping("/interaction")
+    public ResponseEntity<Void> recordInteraction(Principal principal, @RequestParam Integer moduleId) {
+        User fetchingUser = userService.getUserOrException(principal.getName());
+
+        Dashboard dashboard = moduleRepository.findDashboardByModuleId(moduleId);
+        if (dashboard == null) {
+            return ResponseEntity.notFound().build();
+        }
+
+        feedRankingService.recordInteraction(fetchingUser.getId(), dashboard.getId());
+        return ResponseEntity.noContent().build();
+    }
+
+    /**
+     * This method counts the feed cards in the feed of the user that is logged in that the user hasn't read.
+     *
+     * @param principal the user that is logged in
+     * @return the number of unread feed cards
+     */
+    @GetMapping("/unread-count")
+    public ResponseEntity<Integer> fetchUnreadCount(Principal principal) {
+        User fetchingUser = userService.getUserOrException(principal.getName());
+
+        return ResponseEntity.ok().body(feedReadStateService.countUnread(fetchingUser.getId()));
+    }
+
+    /**
+     * This method marks feed cards as read for the user that is logged in, typically the cards of one page.
+     * All ids are added to the user's read state in a single update.
+     *
+     * @param principal the user that is logged in
+     * @param ids       ids of the read modules, at most 50
+     * @return 204 if the feed cards were marked read, 400 if any of them is not in the user's feed
+     */
+    @PostMapping("/read")
+    public ResponseEntity<Void> markFeedCardsRead(Principal principal, @RequestBody List<Integer> ids) {
+        User fetchingUser = userService.getUserOrException(principal.getName());
+        if (ids.isEmpty() || ids.size() > MAX_PAGE_SIZE || ids.contains(null)) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        if (!feedReadStateService.markRead(fetchingUser.getId(), ids)) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.noContent().build();
+    }
+
+    /**
+     * This method marks every feed card currently in the feed of the user that is logged in as read.
+     *
+     * @param principal the user that is logged in
+     * @return 204 if the feed was marked read
+     */
+    @PostMapping("/read-all")
+    public ResponseEntity<Void> markFeedRead(Principal principal) {
+        User fetchingUser = userService.getUserOrException(principal.getName());
+
+        feedReadStateService.markFeedRead(fetchingUser.getId());
+        return ResponseEntity.noContent().build();
+    }
+
+    /**
+     * This method fetches the feed cards that were created or updated since the client last synced.
+     * Leave out the token on the first sync to get the changes of the last x days.
+     * Changes are returned oldest first together with a new token. While hasMore is true the client should
+     * sync again right away. Deleted modules are not reported.
+     * A token created before the user's subscriptions changed starts over like a first sync, since the feed
+     * cards of a newly subscribed-to analyst can be older than the token. The response then has reset set, and
+     * the client should drop the feed cards it has synced so far.
+     *
+     * @param principal the user that is logged in
+     * @param token     token returned by the previous sync
+     * @param days      the number of days to sync on the first sync, at most 365
+     * @param size      maximum number of feed cards to return, at most 50
+     * @param zoneId    timezone to format dates in
+     * @return the changed feed cards and the token for the next sync
+     */
+    @GetMapping("/sync")
+    public ResponseEntity<FeedSyncDTO> syncFeed(Principal principal,
+                                                @RequestParam(required = false) String token,
+                                                @RequestParam(defaultValue = "7") Integer days,
+                                                @RequestParam(defaultValue = "50") Integer size,
+                                                @Nullable ZoneId zoneId) {
+        User fetchingUser = userService.getUserOrException(principal.getName());
+        if (size < 1 || size > MAX_PAGE_SIZE || days < 0) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        List<Integer> subscribedToIds = new ArrayList<>();
+        for (Subscription subscription : subscriptionRepository.findBySubscriber(fetchingUser)) {
+            subscribedToIds.add(subscription.getSubscribedTo().getId());
+        }
+        int subscriptionHash = FeedSyncToken.subscriptionHash(subscribedToIds);
+
+        FeedSyncToken syncToken = null;
+        if (token != null) {
+            try {
+                syncToken = FeedSyncToken.decode(token);
+            } catch (IllegalArgumentException e) {
+                return ResponseEntity.badRequest().build();
+            }
+        }
+        boolean reset = syncToken != null && syncToken.subscriptionHash() != subscriptionHash;
+        if (syncToken == null || reset) {
+            syncToken = new FeedSyncToken(Instant.now().minus(clampCutoffDays(days), ChronoUnit.DAYS), 0,
+                    subscriptionHash);
+        }
+
+        Instant settledBefore = Instant.now().minusMillis(syncSettleMillis);
+        Slice<FeedCard> changeSlice = feedCardRepository.findSubscriptionFeedChangesAfter(
+                fetchingUser, syncToken.updatedDate(), syncToken.id(), settledBefore, PageRequest.ofSize(size));
+        List<FeedCard> changedFeedCards = changeSlice.getContent();
+
+        if (!changedFeedCards.isEmpty()) {
+            syncToken = FeedSyncToken.after(changedFeedCards.get(changedFeedCards.size() - 1), subscriptionHash);
+        }
+
+        List<FeedCardDTO> changedFeedCardDTOs = feedNameDictionary.toFeedCardDTOs(changedFeedCards, zoneId);
+        List<SyncedFeedCardDTO> syncedFeedCards = new ArrayList<>(changedFeedCards.size());
+        for (int i = 0; i < changedFeedCards.size(); i++) {
+            syncedFeedCards.add(new SyncedFeedCardDTO(changedFeedCards.get(i).getId(), changedFeedCardDTOs.get(i)));
+        }
+
+        return ResponseEntity.ok().body(new FeedSyncDTO(syncedFeedCards, syncToken.encode(), changeSlice.hasNext(),
+                reset));
+    }
+
+    /**
+     * This method opens a Server-Sent Events stream for the user that is logged in.
+     * New and updated feed cards from subscribed-to analysts are pushed as they are posted,
+     * so clients don't have to poll the feed to notice new posts.
+     *
+     * @param principal the user that is logged in
+     * @param zoneId    timezone to format dates in
+     * @return the event stream
+     */
+    @GetMapping(path = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> streamFeed(Principal principal, @Nullable ZoneId zoneId) {
+        User fetchingUser = userService.getUserOrException(principal.getName());
+
+        List<Integer> subscribedToIds = new ArrayList<>();
+        for (Subscription subscription : subscriptionRepository.findBySubscriber(fetchingUser)) {
+            subscribedToIds.add(subscription.getSubscribedTo().getId());
+        }
+
+        SseEmitter emitter = feedStreamService.connect(fetchingUser.getId(), subscribedToIds, zoneId);
+        return ResponseEntity.ok().body(emitter);
     }
 
     /**
@@ -165,9 +821,9 @@ public class FeedController {
         }
 
         Pageable pageable = PageRequest.of(page, size, Sort.by("postDate").descending());
-        Page<FeedCard> feedCardPage = feedCardRepository.findByAnalystUsernameOrderByPostDateDesc(targetAnalyst.getUsername(), pageable);
+        Page<FeedCard> feedCardPage = feedCardRepository.findByAnalystIdOrderByPostDateDesc(targetAnalyst.getId(), pageable);
 
-        List<FeedCardDTO> feedCards = createFeedCardDTOList(targetAnalyst, feedCardPage.getContent(), null);
+        List<FeedCardDTO> feedCards = feedNameDictionary.toFeedCardDTOs(feedCardPage.getContent(), null);
         if (feedCards.isEmpty()) {
             return ResponseEntity.noContent().build();
         }
@@ -176,49 +832,181 @@ public class FeedController {
     }
 
     /**
-     * This method creates a list of feed card DTOs using inputted feed cards and analyst username to an id map
+     * This method fetches the latest feed cards of all analysts and does not require logging in.
+     * The response is a snapshot that is rebuilt at a fixed interval and shared by all visitors,
+     * so it may be up to one interval old. Dates are formatted in the default timezone.
      *
-     * @param analystUsernameToIdMap map of analyst usernames to their ids
-     * @param feedCards              list of feed cards
-     * @param zoneId                 timezone id
-     * @return a list of feed card DTOs
+     * @return a list of feed cards, newest first
      */
-    private static List<FeedCardDTO> createFeedCardDTOList(HashMap<String, Integer> analystUsernameToIdMap, ArrayList<FeedCard> feedCards, @Nullable ZoneId zoneId) {
-        return feedCards.stream()
-                .map(feedCard -> new FeedCardDTO(
-                        new ProfileDTO(feedCard.getAnalystUsername(), analystUsernameToIdMap.get(feedCard.getAnalystUsername())),
-                        new StockDTO(feedCard.getStockName(), -1),
-                        new CategoryDTO(feedCard.getCategoryName(), feedCard.getCategoryId()),
-                        feedCard.getContent(),
-                        LocalDateTime.ofInstant(feedCard.getPostDate(), Objects.requireNonNullElse(zoneId, ZoneId.of("Europe/Stockholm")))
-                                .format(DateTimeFormatter.ofPattern("dd MMMM HH:mm yyyy", Locale.ENGLISH)),
-                        LocalDateTime.ofInstant(feedCard.getUpdatedDate(), Objects.requireNonNullElse(zoneId, ZoneId.of("Europe/Stockholm")))
-                                .format(DateTimeFormatter.ofPattern("dd MMMM HH:mm yyyy", Locale.ENGLISH))))
-                .sorted(Comparator.comparing(FeedCardDTO::postDate).reversed())
-                .collect(Collectors.toList());
+    @GetMapping(path = "/explore", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<byte[]> fetchExploreFeed(WebRequest webRequest) {
+        ExploreFeedService.Snapshot snapshot = exploreFeedService.currentSnapshot();
+        if (webRequest.checkNotModified(snapshot.eTag())) {
+            return null;
+        }
+
+        if (snapshot.feedCardCount() == 0) {
+            return ResponseEntity.noContent().build();
+        }
+
+        return ResponseEntity.ok()
+                .eTag(snapshot.eTag())
+                .cacheControl(CacheControl.maxAge(exploreFeedService.getRefreshInterval()).cachePublic())
+                .body(snapshot.body());
     }
 
     /**
-     * This method creates a list of feed card DTOs using inputted feed cards, a target user, and a timezone
+     * Creates a response that writes a subscriber's feed straight from a database cursor.
+     * Each feed card is written in the same shape as {@link FeedCardDTO}, followed by a newline.
+     * The stream slot is also released when the asynchronous request completes, so that it isn't lost if the
+     * response body never runs because of a timeout, a client disconnect or a rejected task.
      *
-     * @param targetUser the target user
-     * @param feedCards  list of feed cards
-     * @param zoneId     the timezone
-     * @return a list of feed card DTOs
+     * @param subscriber the subscribing user
+     * @param cutoffDate the date to start fetching from
+     * @param zoneId     timezone to format dates in
+     * @param webRequest the current request
+     * @return the streaming response, or Service unavailable if too many streams are open
      */
-    private static List<FeedCardDTO> createFeedCardDTOList(User targetUser, List<FeedCard> feedCards, @Nullable ZoneId zoneId) {
-        return feedCards.stream()
-                .map(feedCard -> new FeedCardDTO(
-                        new ProfileDTO(feedCard.getAnalystUsername(), targetUser.getId()),
-                        new StockDTO(feedCard.getStockName(), -1),
-                        new CategoryDTO(feedCard.getCategoryName(), feedCard.getCategoryId()),
-                        feedCard.getContent(),
-                        LocalDateTime.ofInstant(feedCard.getPostDate(), Objects.requireNonNullElse(zoneId, ZoneId.of("Europe/Stockholm")))
-                                .format(DateTimeFormatter.ofPattern("dd MMMM HH:mm yyyy", Locale.ENGLISH)),
-                        LocalDateTime.ofInstant(feedCard.getUpdatedDate(), Objects.requireNonNullElse(zoneId, ZoneId.of("Europe/Stockholm")))
-                                .format(DateTimeFormatter.ofPattern("dd MMMM HH:mm yyyy", Locale.ENGLISH))))
-                .sorted(Comparator.comparing(FeedCardDTO::postDate).reversed())
-                .collect(Collectors.toList());
+    private ResponseEntity<StreamingResponseBody> streamFeedAsNdjson(User subscriber, Instant cutoffDate,
+                                                                     @Nullable ZoneId zoneId, WebRequest webRequest) {
+        Optional<FeedCardStreamRepository.FeedStream> feedStream =
+                feedCardStreamRepository.openSubscriptionFeed(subscriber.getId(), cutoffDate);
+        if (feedStream.isEmpty()) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).header(HttpHeaders.RETRY_AFTER, "5").build();
+        }
+
+        WebAsyncUtils.getAsyncManager(webRequest).registerCallableInterceptor(
+                FeedCardStreamRepository.FeedStream.class.getName(), new CallableProcessingInterceptor() {
+                    @Override
+                    public <T> void afterCompletion(NativeWebRequest request, Callable<T> task) {
+                        feedStream.get().close();
+                    }
+                });
+
+        return ResponseEntity.ok().body((outputStream) -> {
+            try (JsonGenerator generator = objectMapper.createGenerator(outputStream)) {
+                generator.setRootValueSeparator(null);
+                feedStream.get().forEach((row) -> {
+                    try {
+                        writeFeedCard(generator, row, zoneId);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        });
+    }
+
+    /**
+     * Writes a single feed card row as one line of JSON.
+     * The content is already JSON text and is copied to the output without being parsed.
+     * Analyst and stock names come from the name dictionary, which only queries for names it hasn't seen yet.
+     *
+     * @param generator the generator to write to
+     * @param row       the feed card row
+     * @param zoneId    timezone to format dates in
+     * @throws IOException if the client has gone away
+     */
+    private void writeFeedCard(JsonGenerator generator, FeedCardStreamRepository.FeedCardRow row,
+                               @Nullable ZoneId zoneId) throws IOException {
+        generator.writeStartObject();
+
+        generator.writeObjectFieldStart("posterOfContent");
+        generator.writeStringField("username", feedNameDictionary.analystName(row.analystId()));
+        generator.writeNumberField("id", row.analystId());
+        generator.writeEndObject();
+
+        generator.writeObjectFieldStart("stock");
+        generator.writeStringField("name", feedNameDictionary.stockName(row.stockRefId()));
+        generator.writeNumberField("id", -1);
+        generator.writeEndObject();
+
+        generator.writeObjectFieldStart("category");
+        generator.writeStringField("name", row.categoryName());
+        generator.writeNumberField("id", row.categoryId());
+        generator.writeEndObject();
+
+        generator.writeFieldName("content");
+        if (row.content() == null) {
+            generator.writeNull();
+        } else {
+            generator.writeRawValue(row.content());
+        }
+
+        generator.writeStringField("postDate", FeedCardDTO.formatDate(row.postDate(), zoneId));
+        generator.writeStringField("updatedAt", FeedCardDTO.formatDate(row.updatedDate(), zoneId));
+        generator.writeEndObject();
+        generator.writeRaw('\n');
+    }
+
+    /**
+     * Limits how far back the date-windowed endpoints read, so that they only ever touch recent partitions.
+     *
+     * @param days requested number of days
+     * @return the number of days to use
+     */
+    private static int clampCutoffDays(int days) {
+        return Math.max(0, Math.min(days, MAX_CUTOFF_DAYS));
+    }
+
+    /**
+     * Creates the ETag for a feed response from the subscribed-to analysts and the version of their feed cards.
+     *
+     * @param subscriptions the subscriber's subscriptions
+     * @param variant       anything else the response depends on
+     * @return the ETag value
+     */
+    private String createFeedETag(List<Subscription> subscriptions, Object... variant) {
+        List<Integer> subscribedToIds = new ArrayList<>(subscriptions.size());
+        for (Subscription subscription : subscriptions) {
+            subscribedToIds.add(subscription.getSubscribedTo().getId());
+        }
+
+        return feedVersionService.feedETag(subscribedToIds, variant);
+    }
+
+    /**
+     * Creates a feed filter from the request parameters, looking up the stock by its name.
+     *
+     * @param stockName  name of the stock, null for any stock
+     * @param categoryId id of the category, null for any category
+     * @param moduleType type of the module, null for any type
+     * @return the filter, or empty if there is no stock with the name so that nothing can match
+     */
+    private Optional<FeedFilter> createFeedFilter(@Nullable String stockName, @Nullable Integer categoryId,
+                                                  @Nullable String moduleType) {
+        Integer stockRefId = null;
+        if (stockName != null) {
+            Optional<Integer> stockRefIdOptional = feedNameDictionary.findStockRefId(stockName);
+            if (stockRefIdOptional.isEmpty()) {
+                return Optional.empty();
+            }
+            stockRefId = stockRefIdOptional.get();
+        }
+        return Optional.of(new FeedFilter(stockRefId, categoryId, moduleType));
+    }
+
+    /**
+     * Reads a subscriber's timeline and converts it to feed card DTOs.
+     *
+     * @param subscriber    the subscribing user
+     * @param subscriptions the subscriber's subscriptions
+     * @param cutoffDate    the date to start fetching from
+     * @param zoneId        timezone id
+     * @return a list of feed card DTOs ordered by descending post-date
+     */
+    private List<FeedCardDTO> fetchTimelineAsDTOs(User subscriber, List<Subscription> subscriptions,
+                                                  Instant cutoffDate, @Nullable ZoneId zoneId) {
+        List<User> subscribedToAnalysts = new ArrayList<>();
+        for (Subscription subscription : subscriptions) {
+            subscribedToAnalysts.add(subscription.getSubscribedTo());
+        }
+
+        List<FeedCard> feedCards = feedTimelineService.fetchTimeline(subscriber, subscribedToAnalysts, cutoffDate);
+
+        return feedNameDictionary.toFeedCardDTOs(feedCards, zoneId);
     }
 
     /**
@@ -229,7 +1017,7 @@ public class FeedController {
      * @return Instant object of the latest post time
      */
     public Instant fetchAnalystsLastPostTime(@NonNull User targetAnalyst) {
-        Optional<FeedCard> latestInstantOptional = feedCardRepository.findFirstByAnalystUsernameOrderByPostDateDesc(targetAnalyst.getUsername());
+        Optional<FeedCard> latestInstantOptional = feedCardRepository.findFirstByAnalystIdOrderByPostDateDesc(targetAnalyst.getId());
         if (latestInstantOptional.isPresent()) {
             return latestInstantOptional.get().getPostDate();
         } else {
@@ -245,7 +1033,7 @@ public class FeedController {
      * @return Instant object of the latest update time
      */
     public Instant fetchAnalystsLastUpdateTime(@NonNull User targetAnalyst) {
-        Optional<FeedCard> latestInstantOptional = feedCardRepository.findFirstByAnalystUsernameOrderByUpdatedDateDesc(targetAnalyst.getUsername());
+        Optional<FeedCard> latestInstantOptional = feedCardRepository.findFirstByAnalystIdOrderByUpdatedDateDesc(targetAnalyst.getId());
         if (latestInstantOptional.isPresent()) {
             return latestInstantOptional.get().getPostDate();
         } else {
@@ -354,7 +1142,7 @@ public class FeedController {
                         //current module under the current stock category
                         for (ModuleEntity moduleEntityUnderCurrentStockThatCurrentAnalystCovers : categoryUnderCurrentStockThatCurrentAnalystCovers.getModuleEntities()) {
                             if (moduleEntityUnderCurrentStockThatCurrentAnalystCovers.getPostDate().isAfter(Instant.now().minus(7, ChronoUnit.DAYS))) {
-                                JsonNode content = moduleEntityUnderCurrentStockThatCurrentAnalystCovers.getContent();
+                                RawJson content = moduleEntityUnderCurrentStockThatCurrentAnalystCovers.getContent();
                                 //create "feed card" using all available content
                                 feedCardDTOS.add(new FeedCardDTO(
                                         currentAnalystProfileDTO,
@@ -403,7 +1191,7 @@ public class FeedController {
             for (Category categoryUnderCurrentStockThatCurrentAnalystCovers : currentStockThatCurrentAnalystCovers.getCategories()) {
                 //current module under the current stock category
                 for (ModuleEntity moduleEntityUnderCurrentStockThatCurrentAnalystCovers : categoryUnderCurrentStockThatCurrentAnalystCovers.getModuleEntities()) {
-                    JsonNode content = moduleEntityUnderCurrentStockThatCurrentAnalystCovers.getContent();
+                    RawJson content = moduleEntityUnderCurrentStockThatCurrentAnalystCovers.getContent();
                     //create "feed card" using all available content
                     feedCardDTOS.add(craftFeedCard(currentAnalystProfileDTO, currentStockThatCurrentAnalystCovers, categoryUnderCurrentStockThatCurrentAnalystCovers, moduleEntityUnderCurrentStockThatCurrentAnalystCovers, content));
                 }
@@ -426,7 +1214,7 @@ public class FeedController {
                                       Stock currentStockThatCurrentAnalystCovers,
                                       Category categoryUnderCurrentStockThatCurrentAnalystCovers,
                                       ModuleEntity moduleEntityUnderCurrentStockThatCurrentAnalystCovers,
-                                      JsonNode content) {
+                                      RawJson content) {
         return new FeedCardDTO(
                 currentAnalystProfileDTO,
                 new StockDTO(
@@ -10,6 +10,7 @@ import se.onlyfin.onlyfinbackend.DTO.ProfileDTO;
 import se.onlyfin.onlyfinbackend.DTO.ProfileWithSubInfoForLoggedInUserDTO;
 import se.onlyfin.onlyfinbackend.model.User;
 import se.onlyfin.onlyfinbackend.model.dashboard_entity.StockRef;
+import se.onlyfin.onlyfinbackend.service.InfluenceService;
 import se.onlyfin.onlyfinbackend.service.UserService;
 
 import java.security.Principal;
@@ -25,15 +26,18 @@ public class SearchController {
     private final DashboardController dashboardController;
     private final StockReferenceController stockReferenceController;
     private final UserService userService;
+    private final InfluenceService influenceService;
 
     @Autowired
     public SearchController(SubscriptionController subscriptionController,
                             DashboardController dashboardController,
-                            StockReferenceController stockReferenceController, UserService userService) {
+                            StockReferenceController stockReferenceController, UserService userService,
+                            InfluenceService influenceService) {
         this.subscriptionController = subscriptionController;
         this.dashboardController = dashboardController;
         this.stockReferenceController = stockReferenceController;
         this.userService = userService;
+        this.influenceService = influenceService;
     }
 
     /**
@@ -201,11 +205,13 @@ public class SearchController {
             ResponseEntity.notFound().build();
         }
 
-        return ResponseEntity.ok().body(analystsCoveringTargetStock.stream().toList());
+        List<ProfileDTO> profiles = new ArrayList<>(analystsCoveringTargetStock);
+        influenceService.sortByInfluence(profiles, ProfileDTO::id);
+        return ResponseEntity.ok().body(profiles);
     }
 
     /**
-     * Creates a list of profiles from a list of users.
+     * Creates a list of profiles from a list of users, most influential first.
      *
      * @param users users to be converted to profiles.
      * @return profile representation of users
@@ -214,6 +220,7 @@ public class SearchController {
         List<ProfileDTO> profiles = new ArrayList<>();
         users.forEach((currentUser) ->
                 profiles.add(new ProfileDTO(currentUser.getUsername(), currentUser.getId())));
+        influenceService.sortByInfluence(profiles, ProfileDTO::id);
         return profiles;
     }
 
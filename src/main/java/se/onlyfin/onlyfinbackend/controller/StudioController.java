@@ -1,19 +1,28 @@
 package se.onlyfin.onlyfinbackend.controller;
 
 import jakarta.transaction.Transactional;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import se.onlyfin.onlyfinbackend.DTO.CategoryNameChangeDTO;
 import se.onlyfin.onlyfinbackend.DTO.LayoutDTO;
 import se.onlyfin.onlyfinbackend.DTO.StockRefDTO;
+import se.onlyfin.onlyfinbackend.event.DashboardChangeEvent;
+import se.onlyfin.onlyfinbackend.event.ModuleChangeEvent;
+import se.onlyfin.onlyfinbackend.event.StockCoverageChangeEvent;
+import se.onlyfin.onlyfinbackend.model.ScheduledModule;
 import se.onlyfin.onlyfinbackend.model.User;
 import se.onlyfin.onlyfinbackend.model.dashboard_entity.*;
 import se.onlyfin.onlyfinbackend.repository.*;
+import se.onlyfin.onlyfinbackend.service.FeedVersionService;
+import se.onlyfin.onlyfinbackend.service.ScheduledPublishingService;
 import se.onlyfin.onlyfinbackend.service.UserService;
 
 import java.security.Principal;
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Optional;
 
 /**
  * This class is responsible for handling requests related to the graph creation studio.
@@ -28,7 +37,11 @@ public class StudioController {
     private final DashboardRepository dashboardRepository;
     private final StockRefRepository stockRefRepository;
     private final DashboardLayoutRepository dashboardLayoutRepository;
+    private final FeedCardRepository feedCardRepository;
+    private final FeedVersionService feedVersionService;
     private final UserService userService;
+    private final ScheduledPublishingService scheduledPublishingService;
+    private final ApplicationEventPublisher eventPublisher;
 
     public StudioController(StockRepository stockRepository,
                             CategoryRepository categoryRepository,
@@ -36,14 +49,22 @@ public class StudioController {
                             DashboardRepository dashboardRepository,
                             StockRefRepository stockRefRepository,
                             DashboardLayoutRepository dashboardLayoutRepository,
-                            UserService userService) {
+                            FeedCardRepository feedCardRepository,
+                            FeedVersionService feedVersionService,
+                            UserService userService,
+                            ScheduledPublishingService scheduledPublishingService,
+                            ApplicationEventPublisher eventPublisher) {
         this.stockRepository = stockRepository;
         this.categoryRepository = categoryRepository;
         this.moduleRepository = moduleRepository;
         this.dashboardRepository = dashboardRepository;
         this.stockRefRepository = stockRefRepository;
         this.dashboardLayoutRepository = dashboardLayoutRepository;
+        this.feedCardRepository = feedCardRepository;
+        this.feedVersionService = feedVersionService;
         this.userService = userService;
+        this.scheduledPublishingService = scheduledPublishingService;
+        this.eventPublisher = eventPublisher;
     }
 
     /**
@@ -64,6 +85,7 @@ public class StudioController {
 
         if(stockToSave.getDashboard_id() == targetUser.getId()){
             stockRepository.save(stockToSave);
+            eventPublisher.publishEvent(new StockCoverageChangeEvent(targetUser.getId()));
             return ResponseEntity.ok().body("stock added successfully");
         }
         else {
@@ -80,7 +102,7 @@ public class StudioController {
      * @return HTTP 200 if successful
      */
     @DeleteMapping("/deleteStock/{id}")
-
+    @Transactional
     public ResponseEntity<String> deleteStock(@PathVariable Integer id, Principal principal) {
         User targetUser = userService.getUserOrException(principal.getName());
 
@@ -88,9 +110,14 @@ public class StudioController {
             return ResponseEntity.badRequest().body("There is no stock with that id");
         }
 
-
-            stockRepository.deleteById(id);
-            return ResponseEntity.ok().body("Removed stock successfully");
+        Integer ownerId = stockRepository.findById(id).orElseThrow().getDashboard_id();
+        feedCardRepository.deleteByStockId(id);
+        feedVersionService.bump(ownerId);
+        scheduledPublishingService.cancelStock(id);
+        stockRepository.deleteById(id);
+        eventPublisher.publishEvent(new DashboardChangeEvent(ownerId));
+        eventPublisher.publishEvent(new StockCoverageChangeEvent(ownerId));
+        return ResponseEntity.ok().body("Removed stock successfully");
     }
 
     /**
@@ -121,12 +148,18 @@ public class StudioController {
      * @return HTTP 200 if successful
      */
     @DeleteMapping("/deleteCategory/{id}")
+    @Transactional
     public ResponseEntity<String> deleteCategory(@PathVariable Integer id) {
         if (!categoryRepository.existsById(id)) {
             return ResponseEntity.badRequest().body("There is no category with that id");
         }
 
+        Integer ownerId = categoryRepository.findDashboardFromCategoryId(id);
+        scheduledPublishingService.cancelCategory(id);
         categoryRepository.deleteById(id);
+        feedCardRepository.deleteByCategoryId(id);
+        feedVersionService.bump(ownerId);
+        eventPublisher.publishEvent(new DashboardChangeEvent(ownerId));
         return ResponseEntity.ok().body("Removed category successfully");
     }
 
@@ -137,6 +170,7 @@ public class StudioController {
      * @return the updated category if successful
      */
     @PutMapping("/updateCategoryName")
+    @Transactional
     public ResponseEntity<Category> updateCategoryName(@RequestBody CategoryNameChangeDTO nameChangeRequest) {
         int targetCategoryId = nameChangeRequest.id();
 
@@ -148,16 +182,22 @@ public class StudioController {
         targetCategory.setName(nameChangeRequest.name());
 
         Category savedCategory = categoryRepository.save(targetCategory);
+        feedCardRepository.renameCategory(targetCategoryId, nameChangeRequest.name());
+        Integer ownerId = categoryRepository.findDashboardFromCategoryId(targetCategoryId);
+        feedVersionService.bump(ownerId);
+        eventPublisher.publishEvent(new DashboardChangeEvent(ownerId));
         return ResponseEntity.ok().body(savedCategory);
     }
 
     /**
      * Creates a new module under a target category (which is under a stock)
+     * If the module has a publish time in the future, it is hidden from feeds and the dashboard until then.
      *
-     * @param moduleToSave (target category id, module type, raw JSON content)
+     * @param moduleToSave (target category id, module type, raw JSON content, optional publish time)
      * @return the saved module if successful
      */
     @PostMapping("/createModule")
+    @Transactional
     public ResponseEntity<?> createModule(@RequestBody ModuleEntity moduleToSave, Principal principal) {
         User targetUser = userService.getUserOrException(principal.getName());
         int targetCategoryId = moduleToSave.getCategory_id();
@@ -173,6 +213,16 @@ public class StudioController {
             DashboardLayout moduleDashboardLayout = new DashboardLayout(savedModule.getId(), savedModule.getCategory_id());
             dashboardLayoutRepository.save(moduleDashboardLayout);
 
+            Instant publishAt = moduleToSave.getPublishAt();
+            if (publishAt != null && publishAt.isAfter(Instant.now())) {
+                scheduledPublishingService.schedule(savedModule.getId(), targetUser.getId(), publishAt);
+            } else {
+                feedCardRepository.refreshFromModule(savedModule.getId());
+                feedVersionService.bump(targetUser.getId());
+                eventPublisher.publishEvent(new ModuleChangeEvent(
+                        ModuleChangeEvent.Type.CREATED, savedModule.getId(), targetUser.getId()));
+            }
+
             return ResponseEntity.ok(savedModule);
         } else {
             return ResponseEntity.badRequest().body("youre not owner of categoryID");
@@ -186,6 +236,7 @@ public class StudioController {
      * @return HTTP 200 if successful
      */
     @DeleteMapping("/deleteModule/{id}")
+    @Transactional
     public ResponseEntity<String> deleteModule(@PathVariable Integer id, Principal principal) {
         User targetUser = userService.getUserOrException(principal.getName());
 
@@ -194,7 +245,13 @@ public class StudioController {
         }
 
         if (moduleRepository.findDashboardByModuleId(id).getId() == targetUser.getId()) {
+            boolean wasScheduled = scheduledPublishingService.cancel(id);
             moduleRepository.deleteById(id);
+            feedCardRepository.deleteByModuleId(id);
+            if (!wasScheduled) {
+                feedVersionService.bump(targetUser.getId());
+                eventPublisher.publishEvent(new ModuleChangeEvent(ModuleChangeEvent.Type.DELETED, id, targetUser.getId()));
+            }
             return ResponseEntity.ok().body("Removed module successfully");
         } else {
             return ResponseEntity.badRequest().body("not your module");
@@ -203,18 +260,39 @@ public class StudioController {
     }
 
     /**
-     * Fetches a module by its id
+     * Fetches the logged-in analyst's modules that are scheduled to be published later.
+     *
+     * @return scheduled modules with their publish times, soonest first
+     */
+    @GetMapping("/scheduledModules")
+    public ResponseEntity<List<ScheduledModule>> getScheduledModules(Principal principal) {
+        User targetUser = userService.getUserOrException(principal.getName());
+
+        return ResponseEntity.ok(scheduledPublishingService.findScheduled(targetUser.getId()));
+    }
+
+    /**
+     * Fetches a module by its id.
+     * A module that is scheduled to be published later is only returned to the analyst who owns it.
      *
      * @param id id of target module
      * @return module object if it exists
      */
     @GetMapping("/getModuleFromId/{id}")
-    public ResponseEntity<ModuleEntity> getModuleById(@PathVariable Integer id) {
+    public ResponseEntity<ModuleEntity> getModuleById(@PathVariable Integer id, Principal principal) {
         ModuleEntity targetModuleEntity = moduleRepository.findById(id).orElse(null);
         if (targetModuleEntity == null) {
             return ResponseEntity.badRequest().build();
         }
 
+        Optional<ScheduledModule> schedule = scheduledPublishingService.findSchedule(id);
+        if (schedule.isPresent()) {
+            User fetchingUser = userService.getUserOrException(principal.getName());
+            if (!schedule.get().getAnalystId().equals(fetchingUser.getId())) {
+                return ResponseEntity.badRequest().build();
+            }
+        }
+
         return ResponseEntity.ok(targetModuleEntity);
     }
 
@@ -225,6 +303,7 @@ public class StudioController {
      * @return Updated module if successful
      */
     @PutMapping("/updateModuleContent")
+    @Transactional
     public ResponseEntity<?> updateModuleContent(@RequestBody ModuleEntity module, Principal principal) {
         User targetUser = userService.getUserOrException(principal.getName());
         ModuleEntity moduleToUpdate = moduleRepository.findById(module.getId()).orElse(null);
@@ -238,7 +317,13 @@ public class StudioController {
         if (moduleRepository.findDashboardByModuleId(module.getId()).getId() == targetUser.getId()) {
             moduleToUpdate.setContent(module.getContent());
 
-            ModuleEntity savedModule = moduleRepository.save(moduleToUpdate);
+            ModuleEntity savedModule = moduleRepository.saveAndFlush(moduleToUpdate);
+            if (!scheduledPublishingService.isScheduled(savedModule.getId())) {
+                feedCardRepository.refreshFromModule(savedModule.getId());
+                feedVersionService.bump(targetUser.getId());
+                eventPublisher.publishEvent(new ModuleChangeEvent(
+                        ModuleChangeEvent.Type.UPDATED, savedModule.getId(), targetUser.getId()));
+            }
             return ResponseEntity.ok(savedModule);
         }
 
@@ -1,14 +1,17 @@
 package se.onlyfin.onlyfinbackend.controller;
 
-import jakarta.transaction.Transactional;
 import lombok.NonNull;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import se.onlyfin.onlyfinbackend.DTO.ProfileDTO;
+import se.onlyfin.onlyfinbackend.event.SubscriptionChangeEvent;
 import se.onlyfin.onlyfinbackend.model.Subscription;
 import se.onlyfin.onlyfinbackend.model.User;
 import se.onlyfin.onlyfinbackend.repository.SubscriptionRepository;
+import se.onlyfin.onlyfinbackend.service.FeedNameDictionary;
+import se.onlyfin.onlyfinbackend.service.SubscriberLeaderboard;
 import se.onlyfin.onlyfinbackend.service.UserService;
 
 import java.security.Principal;
@@ -24,13 +27,20 @@ public class SubscriptionController {
     private final SubscriptionRepository subscriptionRepository;
     private final FeedController feedController;
     private final UserService userService;
+    private final ApplicationEventPublisher eventPublisher;
+    private final SubscriberLeaderboard subscriberLeaderboard;
+    private final FeedNameDictionary feedNameDictionary;
 
     @Autowired
     public SubscriptionController(SubscriptionRepository subscriptionRepository, FeedController feedController,
-                                  UserService userService) {
+                                  UserService userService, ApplicationEventPublisher eventPublisher,
+                                  SubscriberLeaderboard subscriberLeaderboard, FeedNameDictionary feedNameDictionary) {
         this.subscriptionRepository = subscriptionRepository;
         this.feedController = feedController;
         this.userService = userService;
+        this.eventPublisher = eventPublisher;
+        this.subscriberLeaderboard = subscriberLeaderboard;
+        this.feedNameDictionary = feedNameDictionary;
     }
 
     /**
@@ -60,6 +70,8 @@ public class SubscriptionController {
         subscription.setSubscriber(subscribingUser);
         subscription.setSubscribedTo(userToSubscribeTo);
         subscriptionRepository.save(subscription);
+        eventPublisher.publishEvent(new SubscriptionChangeEvent(
+                subscribingUser.getId(), userToSubscribeTo.getId(), true));
 
         return ResponseEntity.ok().body(userToSubscribeTo.getUsername());
     }
@@ -88,6 +100,8 @@ public class SubscriptionController {
         Subscription targetSubscription = subscriptionOptional.get();
 
         subscriptionRepository.delete(targetSubscription);
+        eventPublisher.publishEvent(new SubscriptionChangeEvent(
+                userWantingToUnsubscribe.getId(), userToUnsubscribeFrom.getId(), false));
 
         return ResponseEntity.ok().body(userToUnsubscribeFrom.getUsername());
     }
@@ -200,6 +214,47 @@ public class SubscriptionController {
         return ResponseEntity.ok().body(subscriptionCount);
     }
 
+    /**
+     * Fetches the most subscribed-to analysts
+     *
+     * @param limit maximum number of analysts to fetch, at most 100
+     * @return profiles of the most subscribed-to analysts, most subscribers first
+     */
+    @GetMapping("/subscriptions/leaderboard")
+    public ResponseEntity<List<ProfileDTO>> fetchLeaderboard(@RequestParam(defaultValue = "10") int limit) {
+        List<Integer> analystIds = subscriberLeaderboard.findTop(Math.min(limit, 100));
+        feedNameDictionary.loadAnalystNames(analystIds);
+
+        List<ProfileDTO> profiles = new ArrayList<>(analystIds.size());
+        for (Integer analystId : analystIds) {
+            profiles.add(new ProfileDTO(feedNameDictionary.analystName(analystId), analystId));
+        }
+
+        return ResponseEntity.ok().body(profiles);
+    }
+
+    /**
+     * Fetches the rank of the target analyst by subscription count.
+     * Analysts with the same subscription count share a rank.
+     *
+     * @param targetUsername the username of the target analyst
+     * @return the rank of the target analyst, starting at 1
+     */
+    @GetMapping("/subscriptions/get-leaderboard-rank")
+    public ResponseEntity<Integer> fetchLeaderboardRankForTarget(@RequestParam String targetUsername) {
+        User targetUser = userService.getUserOrNull(targetUsername);
+        if (targetUser == null) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        OptionalInt rank = subscriberLeaderboard.findRank(targetUser.getId());
+        if (rank.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+
+        return ResponseEntity.ok().body(rank.getAsInt());
+    }
+
     /**
      * Checks if the logged-in user is subscribed to the target user
      *
@@ -268,19 +323,8 @@ public class SubscriptionController {
      *
      * @param targetUser the target user
      */
-    @Transactional
     public void removeAllSubscriptionsRelatedToUser(User targetUser) {
-        subscriptionRepository.deleteAllBySubscriber(targetUser);
-        subscriptionRepository.deleteAllBySubscribedTo(targetUser);
-    }
-
-    /**
-     * Fetches the usernames of the top 7 most subscribed to analysts
-     *
-     * @return the usernames of the top 7 most subscribed-to analysts
-     */
-    public List<String> getMostSubscribedUsernames() {
-        return subscriptionRepository.findTop7SubscribedAnalystUsernames();
+        userService.removeAllSubscriptions(targetUser);
     }
 
 }
@@ -12,6 +12,7 @@ import org.springframework.web.bind.annotation.RestController;
 import se.onlyfin.onlyfinbackend.DTO.StockRefDTO;
 import se.onlyfin.onlyfinbackend.DTO.UserDTO;
 import se.onlyfin.onlyfinbackend.model.AnalystReview;
+import se.onlyfin.onlyfinbackend.model.RawJson;
 import se.onlyfin.onlyfinbackend.model.Subscription;
 import se.onlyfin.onlyfinbackend.model.User;
 import se.onlyfin.onlyfinbackend.model.dashboard_entity.*;
@@ -341,7 +342,7 @@ public class TestSetupController {
         ModuleEntity module = new ModuleEntity();
         module.setCategoryId(savedCategory);
         module.setModuleType("column");
-        module.setContent(encodedJSONChart);
+        module.setContent(RawJson.of(encodedJSONChart.toString()));
 
         ModuleEntity savedModule = moduleRepository.save(module);
         DashboardLayout dashboardLayout = new DashboardLayout(savedModule.getId(), savedModule.getCategory_id());
@@ -1,20 +1,27 @@
 package se.onlyfin.onlyfinbackend.controller;
 
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.CrossOrigin;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import se.onlyfin.onlyfinbackend.DTO.ProfileDTO;
+import se.onlyfin.onlyfinbackend.DTO.TrendingDTO;
 import se.onlyfin.onlyfinbackend.DTO.UserRecommendationDTO;
-import se.onlyfin.onlyfinbackend.DTO.UserRecommendationStringDTO;
-import se.onlyfin.onlyfinbackend.model.FeedCard;
+import se.onlyfin.onlyfinbackend.model.RawJson;
 import se.onlyfin.onlyfinbackend.model.Subscription;
 import se.onlyfin.onlyfinbackend.model.User;
 import se.onlyfin.onlyfinbackend.model.dashboard_entity.Dashboard;
 import se.onlyfin.onlyfinbackend.model.dashboard_entity.Stock;
 import se.onlyfin.onlyfinbackend.model.dashboard_entity.StockRef;
-import se.onlyfin.onlyfinbackend.repository.FeedCardRepository;
+import se.onlyfin.onlyfinbackend.service.CoSubscriptionRecommender;
+import se.onlyfin.onlyfinbackend.service.FeedNameDictionary;
+import se.onlyfin.onlyfinbackend.service.InfluenceService;
+import se.onlyfin.onlyfinbackend.service.RecommendationService;
+import se.onlyfin.onlyfinbackend.service.SimilarAnalystIndex;
+import se.onlyfin.onlyfinbackend.service.TrendingService;
 import se.onlyfin.onlyfinbackend.service.UserService;
 
 import java.security.Principal;
@@ -26,15 +33,26 @@ import java.util.*;
 public class UserSuggestionAlgorithm {
     private final DashboardController dashboardController;
     private final UserService userService;
-    private final FeedCardRepository feedCardRepository;
-    private final SubscriptionController subscriptionController;
+    private final RecommendationService recommendationService;
+    private final CoSubscriptionRecommender coSubscriptionRecommender;
+    private final FeedNameDictionary feedNameDictionary;
+    private final TrendingService trendingService;
+    private final SimilarAnalystIndex similarAnalystIndex;
+    private final InfluenceService influenceService;
 
     public UserSuggestionAlgorithm(DashboardController dashboardController, UserService userService,
-                                   FeedCardRepository feedCardRepository, SubscriptionController subscriptionController) {
+                                   RecommendationService recommendationService,
+                                   CoSubscriptionRecommender coSubscriptionRecommender,
+                                   FeedNameDictionary feedNameDictionary, TrendingService trendingService,
+                                   SimilarAnalystIndex similarAnalystIndex, InfluenceService influenceService) {
         this.dashboardController = dashboardController;
         this.userService = userService;
-        this.feedCardRepository = feedCardRepository;
-        this.subscriptionController = subscriptionController;
+        this.recommendationService = recommendationService;
+        this.coSubscriptionRecommender = coSubscriptionRecommender;
+        this.feedNameDictionary = feedNameDictionary;
+        this.trendingService = trendingService;
+        this.similarAnalystIndex = similarAnalystIndex;
+        this.influenceService = influenceService;
     }
 
     /**
@@ -44,131 +62,186 @@ public class UserSuggestionAlgorithm {
      * If the user isn't subscribed to anyone, a list of the top most subscribed to users will be returned.
      * A limitation with this algorithm is that it can't recommend analysts that don't cover at least one stock
      * that the user's subscriptions cover.
+     * Suggestions are computed in the background, so they can lag behind recent changes by a minute.
      *
      * @param principal the logged-in user
      * @return No-content if no suggestions can be made or List if suggestions can be made
      */
     @GetMapping("/by-stocks-covered-weighed-by-post-amount")
-    public ResponseEntity<Set<UserRecommendationStringDTO>> byStocksCoveredWeighedByPostAmount(Principal principal) {
+    public ResponseEntity<RawJson> byStocksCoveredWeighedByPostAmount(Principal principal) {
         User fetchingUser = userService.getUserOrException(principal.getName());
 
-        //subscription objects
-        List<Subscription> subscriptions = new ArrayList<>(fetchingUser.getSubscriptions());
-        if (subscriptions.isEmpty()) {
-            List<String> mostSubscribedUsernames = subscriptionController.getMostSubscribedUsernames();
-            mostSubscribedUsernames.remove(fetchingUser.getUsername());
-
-            Set<ProfileDTO> profiles = userService.getProfilesFromUsernames(mostSubscribedUsernames);
+        RawJson suggestions = recommendationService.findOrCompute(fetchingUser.getId()).getStockSuggestions();
+        if (suggestions == null) {
+            return ResponseEntity.noContent().build();
+        }
 
-            Set<UserRecommendationStringDTO> recommendations = new HashSet<>();
-            for (ProfileDTO profile : profiles) {
-                recommendations.add(new UserRecommendationStringDTO("Popular user", profile));
-            }
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(suggestions);
+    }
 
-            if (recommendations.isEmpty()) {
-                return ResponseEntity.noContent().build();
-            }
+    /**
+     * Returns the profiles of the 7 most subscribed-to analysts.
+     *
+     * @param principal the logged-in user
+     * @return List with the 7 most subscribed-to users
+     */
+    @GetMapping("/by-subscription-count-7")
+    public ResponseEntity<RawJson> byTop7SubscriptionCount(Principal principal) {
+        User fetchingUser = userService.getUserOrException(principal.getName());
 
-            return ResponseEntity.ok().body(recommendations);
+        RawJson profiles = recommendationService.findOrCompute(fetchingUser.getId()).getPopularProfiles();
+        if (profiles == null) {
+            return ResponseEntity.noContent().build();
         }
 
-        //all subscriptions
-        List<User> subscribedToAnalysts = new ArrayList<>();
-        for (Subscription subscription : subscriptions) {
-            User subscribedTo = subscription.getSubscribedTo();
-            subscribedToAnalysts.add(subscribedTo);
-        }
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(profiles);
+    }
 
-        //subscribed-to analysts stock coverage times
-        HashMap<String, Integer> commonalityMap = new HashMap<>();
-        for (User currentAnalyst : subscribedToAnalysts) {
-            List<FeedCard> analystsFeedCards = feedCardRepository.findByAnalystUsername(currentAnalyst.getUsername());
-            for (FeedCard currentFeedCard : analystsFeedCards) {
-                String stockName = currentFeedCard.getStockName();
-                Integer count = commonalityMap.getOrDefault(stockName, 0);
-                commonalityMap.put(stockName, count + 1);
-            }
-        }
+    /**
+     * Returns analysts that users with similar subscriptions to the logged-in user are subscribed to, best first.
+     * Analysts that are often subscribed to together with the user's subscriptions rank highest, followed by
+     * analysts that are in turn often subscribed to together with those.
+     * Nothing can be recommended if the user isn't subscribed to anyone.
+     *
+     * @param principal the logged-in user
+     * @param limit     maximum number of profiles to return, at most 50
+     * @return No-content if no suggestions can be made or List if suggestions can be made
+     */
+    @GetMapping("/by-co-subscriptions")
+    public ResponseEntity<List<ProfileDTO>> byCoSubscriptions(Principal principal,
+                                                             @RequestParam(defaultValue = "10") int limit) {
+        User fetchingUser = userService.getUserOrException(principal.getName());
 
-        //sort the stocks by occurrences
-        List<Map.Entry<String, Integer>> toSort = new ArrayList<>(commonalityMap.entrySet());
-        toSort.sort(Map.Entry.<String, Integer>comparingByValue().reversed());
-        LinkedHashMap<String, Integer> sortedStockOccurrencesForSubscribedAnalysts = new LinkedHashMap<>();
-        for (Map.Entry<String, Integer> entry : toSort) {
-            sortedStockOccurrencesForSubscribedAnalysts.put(entry.getKey(), entry.getValue());
+        List<Integer> analystIds = coSubscriptionRecommender.recommend(fetchingUser.getId(), Math.min(Math.max(limit, 0), 50));
+        feedNameDictionary.loadAnalystNames(analystIds);
+        List<ProfileDTO> profiles = new ArrayList<>(analystIds.size());
+        for (Integer analystId : analystIds) {
+            String username = feedNameDictionary.analystName(analystId);
+            if (username != null) {
+                profiles.add(new ProfileDTO(username, analystId));
+            }
         }
-
-        //All not-subscribed-to analysts. Will be a bottleneck when scaling
-        List<User> notSubscribedToAnalysts = new ArrayList<>(userService.getAllAnalysts());
-        notSubscribedToAnalysts.removeIf(subscribedToAnalysts::contains);
-        notSubscribedToAnalysts.remove(fetchingUser);
-        if (notSubscribedToAnalysts.isEmpty()) {
+        if (profiles.isEmpty()) {
             return ResponseEntity.noContent().build();
         }
 
-        //map with available coverage by not-subscribed-to analysts that is also covered by some subscribed-to analyst
-        HashMap<String, HashMap<User, Integer>> matches = new HashMap<>();
-        for (User currentAnalyst : notSubscribedToAnalysts) {
-            for (FeedCard currentFeedCard : feedCardRepository.findByAnalystUsername(currentAnalyst.getUsername())) {
-                matches.putIfAbsent(currentFeedCard.getStockName(), new HashMap<>());
-                HashMap<User, Integer> mapUnderStockRef = matches.get(currentFeedCard.getStockName());
-                Integer currentCountOfCoverage = mapUnderStockRef.getOrDefault(currentAnalyst, 0);
-                mapUnderStockRef.put(currentAnalyst, currentCountOfCoverage + 1);
-            }
-        }
+        return ResponseEntity.ok().body(profiles);
+    }
 
-        //suggestion list based on matches between subscribed-to analysts coverage and available coverage
-        Set<UserRecommendationStringDTO> suggestions = new HashSet<>();
-        for (String currentStockRef : sortedStockOccurrencesForSubscribedAnalysts.keySet()) {
-            if (matches.containsKey(currentStockRef)) {
-                HashMap<User, Integer> occurrenceMap = matches.get(currentStockRef);
+    /**
+     * Returns the most influential analysts, excluding the logged-in user.
+     * Influence weighs every subscriber by how influential the subscriber is in turn, and is computed in the
+     * background, so it can lag behind recent subscriptions by an hour.
+     *
+     * @param principal the logged-in user
+     * @param limit     maximum number of profiles to return, at most 50
+     * @return No-content if influence hasn't been computed yet, else List with the most influential first
+     */
+    @GetMapping("/by-influence")
+    public ResponseEntity<List<ProfileDTO>> byInfluence(Principal principal,
+                                                        @RequestParam(defaultValue = "10") int limit) {
+        User fetchingUser = userService.getUserOrException(principal.getName());
 
-                int highestAmountOfPostsForThisStockRef = -1;
-                User winningUser = null;
+        List<Integer> analystIds = new ArrayList<>(influenceService.findMostInfluentialAnalysts(Math.min(limit, 50) + 1));
+        analystIds.remove(fetchingUser.getId());
+        analystIds = analystIds.subList(0, Math.min(Math.max(limit, 0), analystIds.size()));
+        feedNameDictionary.loadAnalystNames(analystIds);
+        List<ProfileDTO> profiles = new ArrayList<>(analystIds.size());
+        for (Integer analystId : analystIds) {
+            String username = feedNameDictionary.analystName(analystId);
+            if (username != null) {
+                profiles.add(new ProfileDTO(username, analystId));
+            }
+        }
+        if (profiles.isEmpty()) {
+            return ResponseEntity.noContent().build();
+        }
 
-                for (User currentAnalystThatCoversThisStock : occurrenceMap.keySet()) {
-                    if (occurrenceMap.get(currentAnalystThatCoversThisStock) > highestAmountOfPostsForThisStockRef) {
-                        highestAmountOfPostsForThisStockRef = occurrenceMap.get(currentAnalystThatCoversThisStock);
-                        winningUser = currentAnalystThatCoversThisStock;
-                    }
-                }
+        return ResponseEntity.ok().body(profiles);
+    }
 
-                if (highestAmountOfPostsForThisStockRef != -1) {
-                    suggestions.add(new UserRecommendationStringDTO(
-                            currentStockRef,
-                            new ProfileDTO(winningUser.getUsername(), winningUser.getId())));
-                }
+    /**
+     * Returns analysts that cover many of the same stocks as the target analyst, most similar first.
+     * Similarity is the number of stocks both analysts cover divided by the number of stocks either covers.
+     *
+     * @param targetUsername the username of the target analyst
+     * @param limit          maximum number of profiles to return, at most 50
+     * @return Bad request if the target user doesn't exist, No-content if no similar analysts are found, else List
+     */
+    @GetMapping("/similar-analysts")
+    public ResponseEntity<List<ProfileDTO>> similarAnalysts(@RequestParam String targetUsername,
+                                                            @RequestParam(defaultValue = "10") int limit) {
+        User targetUser = userService.getUserOrNull(targetUsername);
+        if (targetUser == null) {
+            return ResponseEntity.badRequest().build();
+        }
 
+        List<Integer> analystIds = similarAnalystIndex.findSimilar(targetUser.getId(), Math.min(limit, 50));
+        feedNameDictionary.loadAnalystNames(analystIds);
+        List<ProfileDTO> profiles = new ArrayList<>(analystIds.size());
+        for (Integer analystId : analystIds) {
+            String username = feedNameDictionary.analystName(analystId);
+            if (username != null) {
+                profiles.add(new ProfileDTO(username, analystId));
             }
         }
-
-        if (suggestions.isEmpty()) {
+        if (profiles.isEmpty()) {
             return ResponseEntity.noContent().build();
         }
 
-        return ResponseEntity.ok().body(suggestions);
+        return ResponseEntity.ok().body(profiles);
     }
 
     /**
-     * Returns the profiles of the 7 most subscribed-to analysts.
+     * Returns the stocks that have been posted about the most within a recent time window.
+     * Counts are estimates and only cover posts made since the server started.
      *
-     * @param principal the logged-in user
-     * @return List with the 7 most subscribed-to users
+     * @param window the time window, one of 1h, 24h and 7d
+     * @param limit  maximum number of stocks to return, at most 50
+     * @return Bad request if the window is unknown, else List of trending stocks with the most posted about first
      */
-    @GetMapping("/by-subscription-count-7")
-    public ResponseEntity<Set<ProfileDTO>> byTop7SubscriptionCount(Principal principal) {
-        User fetchingUser = userService.getUserOrException(principal.getName());
+    @GetMapping("/trending-stocks")
+    public ResponseEntity<List<TrendingDTO>> trendingStocks(@RequestParam(defaultValue = "24h") String window,
+                                                            @RequestParam(defaultValue = "10") int limit) {
+        Optional<TrendingService.Window> trendingWindow = TrendingService.Window.fromLabel(window);
+        if (trendingWindow.isEmpty()) {
+            return ResponseEntity.badRequest().build();
+        }
 
-        List<String> top7MostSubscribedUsernames = subscriptionController.getMostSubscribedUsernames();
-        top7MostSubscribedUsernames.remove(fetchingUser.getUsername());
+        List<Map.Entry<Integer, Integer>> trending = trendingService.findTrendingStocks(trendingWindow.get(), Math.min(limit, 50));
+        feedNameDictionary.loadStockNames(trending.stream().map(Map.Entry::getKey).toList());
+        List<TrendingDTO> trendingStocks = new ArrayList<>(trending.size());
+        for (Map.Entry<Integer, Integer> entry : trending) {
+            trendingStocks.add(new TrendingDTO(entry.getKey(), feedNameDictionary.stockName(entry.getKey()), entry.getValue()));
+        }
 
-        Set<ProfileDTO> profiles = userService.getProfilesFromUsernames(top7MostSubscribedUsernames);
+        return ResponseEntity.ok().body(trendingStocks);
+    }
 
-        if (profiles.isEmpty()) {
-            return ResponseEntity.noContent().build();
+    /**
+     * Returns the analysts that have gained the most subscribers within a recent time window.
+     * Counts are estimates and only cover subscriptions made since the server started.
+     *
+     * @param window the time window, one of 1h, 24h and 7d
+     * @param limit  maximum number of analysts to return, at most 50
+     * @return Bad request if the window is unknown, else List of trending analysts with the most subscribed to first
+     */
+    @GetMapping("/trending-analysts")
+    public ResponseEntity<List<TrendingDTO>> trendingAnalysts(@RequestParam(defaultValue = "24h") String window,
+                                                              @RequestParam(defaultValue = "10") int limit) {
+        Optional<TrendingService.Window> trendingWindow = TrendingService.Window.fromLabel(window);
+        if (trendingWindow.isEmpty()) {
+            return ResponseEntity.badRequest().build();
         }
 
-        return ResponseEntity.ok().body(profiles);
+        List<Map.Entry<Integer, Integer>> trending = trendingService.findTrendingAnalysts(trendingWindow.get(), Math.min(limit, 50));
+        feedNameDictionary.loadAnalystNames(trending.stream().map(Map.Entry::getKey).toList());
+        List<TrendingDTO> trendingAnalysts = new ArrayList<>(trending.size());
+        for (Map.Entry<Integer, Integer> entry : trending) {
+            trendingAnalysts.add(new TrendingDTO(entry.getKey(), feedNameDictionary.analystName(entry.getKey()), entry.getValue()));
+        }
+
+        return ResponseEntity.ok().body(trendingAnalysts);
     }
 
     /**
@@ -0,0 +1,10 @@
+package se.onlyfin.onlyfinbackend.event;
+
+/**
+ * Event published by the studio when a category or stock of an analyst's dashboard is renamed or deleted.
+ * Such changes can affect many feed cards at once, so listeners should drop what they cache about the analyst.
+ *
+ * @param analystId id of the analyst owning the dashboard
+ */
+public record DashboardChangeEvent(Integer analystId) {
+}
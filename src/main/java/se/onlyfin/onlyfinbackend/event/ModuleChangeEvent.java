@@ -0,0 +1,22 @@
+package se.onlyfin.onlyfinbackend.event;
+
+/**
+ * Event published by the studio whenever an analyst's module is created, updated or deleted.
+ * Listeners use it to keep feed related read models in sync with the module table.
+ *
+ * @param type      what happened to the module
+ * @param moduleId  id of the affected module (which is also the id of its feed card)
+ * @param analystId id of the analyst owning the module
+ */
+public record ModuleChangeEvent(Type type, Integer moduleId, Integer analystId) {
+
+    /**
+     * The kind of change that happened to a module.
+     */
+    public enum Type {
+        CREATED,
+        UPDATED,
+        DELETED
+    }
+
+}
@@ -0,0 +1,13 @@
+package se.onlyfin.onlyfinbackend.event;
+
+import java.time.Instant;
+
+/**
+ * Event published by the studio when a module is created with a publish time in the future.
+ *
+ * @param moduleId  id of the scheduled module
+ * @param analystId id of the analyst owning the module
+ * @param publishAt when the module is to be published
+ */
+public record ModuleScheduledEvent(Integer moduleId, Integer analystId, Instant publishAt) {
+}
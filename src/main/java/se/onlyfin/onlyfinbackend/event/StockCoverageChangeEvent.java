@@ -0,0 +1,10 @@
+package se.onlyfin.onlyfinbackend.event;
+
+/**
+ * Event published by the studio when a stock is added to or removed from an analyst's dashboard.
+ * Listeners use it to keep what they know about which stocks an analyst covers up to date.
+ *
+ * @param analystId id of the analyst owning the dashboard
+ */
+public record StockCoverageChangeEvent(Integer analystId) {
+}
@@ -0,0 +1,11 @@
+package se.onlyfin.onlyfinbackend.event;
+
+/**
+ * Event published whenever a user subscribes to or unsubscribes from another user.
+ *
+ * @param subscriberId   id of the subscribing user
+ * @param subscribedToId id of the subscribed-to user
+ * @param subscribed     true if the subscription was added, false if it was removed
+ */
+public record SubscriptionChangeEvent(Integer subscriberId, Integer subscribedToId, boolean subscribed) {
+}
@@ -0,0 +1,57 @@
+package se.onlyfin.onlyfinbackend.model;
+
+import jakarta.persistence.*;
+
+import java.time.Instant;
+
+/**
+ * This class represents the analyst feed version table in the database.
+ * An analyst feed version is a counter that is bumped in the same transaction as every change to the analyst's
+ * feed cards, so that the version of a feed can be read from one row per subscribed-to analyst.
+ */
+@Entity
+@Table(name = "analyst_feed_version")
+public class AnalystFeedVersion {
+    @Id
+    @Column(name = "analyst_id")
+    private Integer analystId;
+
+    @Column(name = "version", nullable = false)
+    private long version;
+
+    @Column(name = "last_updated", nullable = false)
+    private Instant lastUpdated;
+
+    public AnalystFeedVersion() {
+    }
+
+    public AnalystFeedVersion(Integer analystId, long version, Instant lastUpdated) {
+        this.analystId = analystId;
+        this.version = version;
+        this.lastUpdated = lastUpdated;
+    }
+
+    public Integer getAnalystId() {
+        return analystId;
+    }
+
+    public void setAnalystId(Integer analystId) {
+        this.analystId = analystId;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
+    public Instant getLastUpdated() {
+        return lastUpdated;
+    }
+
+    public void setLastUpdated(Instant lastUpdated) {
+        this.lastUpdated = lastUpdated;
+    }
+}
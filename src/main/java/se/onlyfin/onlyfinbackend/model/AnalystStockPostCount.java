@@ -0,0 +1,12 @@
+package se.onlyfin.onlyfinbackend.model;
+
+/**
+ * Projection of the number of feed cards an analyst has posted about a stock.
+ */
+public interface AnalystStockPostCount {
+    Integer getAnalystId();
+
+    Integer getStockRefId();
+
+    Integer getPostCount();
+}
@@ -1,27 +1,35 @@
 package se.onlyfin.onlyfinbackend.model;
 
-import com.fasterxml.jackson.databind.JsonNode;
 import jakarta.persistence.*;
-import org.hibernate.annotations.JdbcTypeCode;
-import org.hibernate.type.SqlTypes;
+import org.hibernate.annotations.ColumnTransformer;
 
 import java.time.Instant;
 
 /**
  * This class represents the feed card table in the database.
+ * Each row is a copy of a module together with the ids of its analyst and stock and the name of its category,
+ * kept up to date by the studio write path, so that feed reads never have to join the dashboard tables.
+ * The id is the id of the module. Analyst and stock names are looked up by id when feed cards are shown.
  */
 @Entity
-@Table(name = "feed_card")
+@Table(name = "feed_card",
+        indexes = {
+                @Index(name = "idx_feed_card_analyst_id_post_date", columnList = "analyst_id, post_date, id"),
+                @Index(name = "idx_feed_card_analyst_id_updated_date", columnList = "analyst_id, updated_date, id"),
+                @Index(name = "idx_feed_card_post_date", columnList = "post_date, id"),
+                @Index(name = "idx_feed_card_stock_ref_post_date", columnList = "stock_ref_id, post_date, id"),
+                @Index(name = "idx_feed_card_category_post_date", columnList = "category_id, post_date, id"),
+                @Index(name = "idx_feed_card_type_post_date", columnList = "module_type, post_date, id")
+        })
 public class FeedCard {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Integer id;
 
-    @Column(name = "analyst_username")
-    private String analystUsername;
+    @Column(name = "analyst_id")
+    private Integer analystId;
 
-    @Column(name = "stock_name")
-    private String stockName;
+    @Column(name = "stock_ref_id")
+    private Integer stockRefId;
 
     @Column(name = "category_name")
     private String categoryName;
@@ -32,9 +40,10 @@ public class FeedCard {
     @Column(name = "updated_date")
     private Instant updatedDate;
 
-    @Column(name = "content")
-    @JdbcTypeCode(SqlTypes.JSON)
-    private JsonNode content;
+    @Column(name = "content", columnDefinition = "jsonb")
+    @ColumnTransformer(read = "convert_to(CAST(content AS text), 'UTF8')", write = "CAST(convert_from(?, 'UTF8') AS jsonb)")
+    @Convert(converter = RawJson.DatabaseConverter.class)
+    private RawJson content;
 
     @Column(name = "module_type")
     private String moduleType;
@@ -50,20 +59,20 @@ public class FeedCard {
         this.id = id;
     }
 
-    public String getAnalystUsername() {
-        return analystUsername;
+    public Integer getAnalystId() {
+        return analystId;
     }
 
-    public void setAnalystUsername(String analystUsername) {
-        this.analystUsername = analystUsername;
+    public void setAnalystId(Integer analystId) {
+        this.analystId = analystId;
     }
 
-    public String getStockName() {
-        return stockName;
+    public Integer getStockRefId() {
+        return stockRefId;
     }
 
-    public void setStockName(String stockName) {
-        this.stockName = stockName;
+    public void setStockRefId(Integer stockRefId) {
+        this.stockRefId = stockRefId;
     }
 
     public String getCategoryName() {
@@ -90,11 +99,11 @@ public class FeedCard {
         this.updatedDate = updatedDate;
     }
 
-    public JsonNode getContent() {
+    public RawJson getContent() {
         return content;
     }
 
-    public void setContent(JsonNode content) {
+    public void setContent(RawJson content) {
         this.content = content;
     }
 
@@ -0,0 +1,12 @@
+package se.onlyfin.onlyfinbackend.model;
+
+/**
+ * Projection of a feed card's content as JSON text together with the hash of it.
+ */
+public interface FeedCardContent {
+    Integer getId();
+
+    String getContentHash();
+
+    String getContent();
+}
@@ -0,0 +1,27 @@
+package se.onlyfin.onlyfinbackend.model;
+
+import java.time.Instant;
+
+/**
+ * Projection of a feed card without its content.
+ * The content is replaced by a hash of it, so clients can tell when content they have cached is outdated.
+ */
+public interface FeedCardSummary {
+    Integer getId();
+
+    Integer getAnalystId();
+
+    Integer getStockRefId();
+
+    String getCategoryName();
+
+    Integer getCategoryId();
+
+    String getModuleType();
+
+    Instant getPostDate();
+
+    Instant getUpdatedDate();
+
+    String getContentHash();
+}
@@ -0,0 +1,57 @@
+package se.onlyfin.onlyfinbackend.model;
+
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.util.Base64;
+
+/**
+ * Position in a feed ordered by descending post-date and id.
+ * Sent to clients as an opaque string so that the next page can be fetched with a keyset query.
+ *
+ * @param postDate post-date of the last feed card on the previous page
+ * @param id       id of the last feed card on the previous page
+ */
+public record FeedCursor(Instant postDate, Integer id) {
+
+    /**
+     * Creates a cursor pointing at a feed card.
+     *
+     * @param feedCard the last feed card on a page
+     * @return cursor positioned after the feed card
+     */
+    public static FeedCursor after(FeedCard feedCard) {
+        return new FeedCursor(feedCard.getPostDate(), feedCard.getId());
+    }
+
+    /**
+     * Decodes a cursor previously created by {@link #encode()}.
+     *
+     * @param encodedCursor the opaque cursor string
+     * @return the decoded cursor
+     * @throws IllegalArgumentException if the cursor is malformed
+     */
+    public static FeedCursor decode(String encodedCursor) {
+        try {
+            String decoded = new String(Base64.getUrlDecoder().decode(encodedCursor), StandardCharsets.UTF_8);
+            String[] parts = decoded.split(":");
+            if (parts.length != 3) {
+                throw new IllegalArgumentException("Malformed feed cursor");
+            }
+
+            Instant postDate = Instant.ofEpochSecond(Long.parseLong(parts[0]), Long.parseLong(parts[1]));
+            return new FeedCursor(postDate, Integer.parseInt(parts[2]));
+        } catch (NumberFormatException | DateTimeException | ArithmeticException e) {
+            throw new IllegalArgumentException("Malformed feed cursor", e);
+        }
+    }
+
+    /**
+     * @return the cursor as an opaque URL-safe string
+     */
+    public String encode() {
+        String raw = postDate.getEpochSecond() + ":" + postDate.getNano() + ":" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+}
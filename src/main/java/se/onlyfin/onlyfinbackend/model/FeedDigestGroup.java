@@ -0,0 +1,24 @@
+package se.onlyfin.onlyfinbackend.model;
+
+import java.time.Instant;
+
+/**
+ * Projection of a group of feed cards that an analyst posted on the same stock, or in the same category,
+ * within one time bucket.
+ */
+public interface FeedDigestGroup {
+    Integer getAnalystId();
+
+    Integer getStockRefId();
+
+    /**
+     * @return id of the category, null if the feed cards are grouped by stock only
+     */
+    Integer getCategoryId();
+
+    Instant getBucketStart();
+
+    Long getCardCount();
+
+    Integer getNewestId();
+}
@@ -0,0 +1,56 @@
+package se.onlyfin.onlyfinbackend.model;
+
+import org.springframework.lang.Nullable;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Base64;
+
+/**
+ * Identifies the feed cards of one digest group.
+ * Sent to clients as an opaque string so that they can expand the group later.
+ *
+ * @param analystId   id of the analyst who posted the feed cards
+ * @param stockRefId  id of the stock reference
+ * @param categoryId  id of the category, null if the group covers the whole stock
+ * @param bucketStart start of the time bucket, inclusive
+ * @param bucketEnd   end of the time bucket, exclusive
+ */
+public record FeedDigestKey(Integer analystId, Integer stockRefId, @Nullable Integer categoryId,
+                            Instant bucketStart, Instant bucketEnd) {
+    private static final String PREFIX = "digest";
+    private static final String NO_CATEGORY = "-";
+
+    /**
+     * Decodes a digest key previously created by {@link #encode()}.
+     *
+     * @param encodedKey the opaque key string
+     * @return the decoded digest key
+     * @throws IllegalArgumentException if the key is malformed
+     */
+    public static FeedDigestKey decode(String encodedKey) {
+        try {
+            String decoded = new String(Base64.getUrlDecoder().decode(encodedKey), StandardCharsets.UTF_8);
+            String[] parts = decoded.split(":");
+            if (parts.length != 6 || !PREFIX.equals(parts[0])) {
+                throw new IllegalArgumentException("Malformed digest key");
+            }
+
+            Integer categoryId = NO_CATEGORY.equals(parts[2]) ? null : Integer.valueOf(parts[2]);
+            return new FeedDigestKey(Integer.valueOf(parts[1]), Integer.valueOf(parts[5]), categoryId,
+                    Instant.ofEpochSecond(Long.parseLong(parts[3])), Instant.ofEpochSecond(Long.parseLong(parts[4])));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Malformed digest key", e);
+        }
+    }
+
+    /**
+     * @return the digest key as an opaque URL-safe string
+     */
+    public String encode() {
+        String raw = PREFIX + ":" + analystId + ":" + ((categoryId == null) ? NO_CATEGORY : categoryId) + ":" +
+                bucketStart.getEpochSecond() + ":" + bucketEnd.getEpochSecond() + ":" + stockRefId;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+}
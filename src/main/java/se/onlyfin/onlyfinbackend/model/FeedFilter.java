@@ -0,0 +1,22 @@
+package se.onlyfin.onlyfinbackend.model;
+
+import org.springframework.lang.Nullable;
+
+/**
+ * Narrows a feed down to feed cards about one stock, in one category or of one module type.
+ * Filters that are null are not applied.
+ *
+ * @param stockRefId id of the stock reference
+ * @param categoryId id of the category
+ * @param moduleType type of the module
+ */
+public record FeedFilter(@Nullable Integer stockRefId, @Nullable Integer categoryId, @Nullable String moduleType) {
+
+    /**
+     * @return true if no filter is applied
+     */
+    public boolean isEmpty() {
+        return stockRefId == null && categoryId == null && moduleType == null;
+    }
+
+}
@@ -0,0 +1,71 @@
+package se.onlyfin.onlyfinbackend.model;
+
+import jakarta.persistence.*;
+
+import java.time.Instant;
+
+/**
+ * This class represents the feed interaction table in the database.
+ * A feed interaction row counts how often a user has opened feed cards posted by a specific analyst.
+ */
+@Entity
+@Table(name = "feed_interaction",
+        uniqueConstraints = @UniqueConstraint(name = "uk_feed_interaction_user_analyst",
+                columnNames = {"user_id", "analyst_id"}))
+public class FeedInteraction {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "user_id", nullable = false)
+    private Integer userId;
+
+    @Column(name = "analyst_id", nullable = false)
+    private Integer analystId;
+
+    @Column(name = "interaction_count", nullable = false)
+    private Integer interactionCount;
+
+    @Column(name = "last_interaction", nullable = false)
+    private Instant lastInteraction;
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public Integer getUserId() {
+        return userId;
+    }
+
+    public void setUserId(Integer userId) {
+        this.userId = userId;
+    }
+
+    public Integer getAnalystId() {
+        return analystId;
+    }
+
+    public void setAnalystId(Integer analystId) {
+        this.analystId = analystId;
+    }
+
+    public Integer getInteractionCount() {
+        return interactionCount;
+    }
+
+    public void setInteractionCount(Integer interactionCount) {
+        this.interactionCount = interactionCount;
+    }
+
+    public Instant getLastInteraction() {
+        return lastInteraction;
+    }
+
+    public void setLastInteraction(Instant lastInteraction) {
+        this.lastInteraction = lastInteraction;
+    }
+}
@@ -0,0 +1,59 @@
+package se.onlyfin.onlyfinbackend.model;
+
+import jakarta.persistence.*;
+
+import java.time.Instant;
+
+/**
+ * This class represents the feed read state table in the database.
+ * A feed read state holds the ids of all modules a user has read, as one serialized roaring bitmap, and the date
+ * before which every module counts as read because the user marked the whole feed read.
+ */
+@Entity
+@Table(name = "feed_read_state")
+public class FeedReadState {
+    @Id
+    @Column(name = "user_id")
+    private Integer userId;
+
+    @Column(name = "read_modules", nullable = false)
+    private byte[] readModules;
+
+    @Column(name = "updated_date", nullable = false)
+    private Instant updatedDate;
+
+    @Column(name = "read_before")
+    private Instant readBefore;
+
+    public Integer getUserId() {
+        return userId;
+    }
+
+    public void setUserId(Integer userId) {
+        this.userId = userId;
+    }
+
+    public byte[] getReadModules() {
+        return readModules;
+    }
+
+    public void setReadModules(byte[] readModules) {
+        this.readModules = readModules;
+    }
+
+    public Instant getUpdatedDate() {
+        return updatedDate;
+    }
+
+    public void setUpdatedDate(Instant updatedDate) {
+        this.updatedDate = updatedDate;
+    }
+
+    public Instant getReadBefore() {
+        return readBefore;
+    }
+
+    public void setReadBefore(Instant readBefore) {
+        this.readBefore = readBefore;
+    }
+}
@@ -0,0 +1,75 @@
+package se.onlyfin.onlyfinbackend.model;
+
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collection;
+
+/**
+ * Position in the stream of feed card changes ordered by ascending updated-date and id.
+ * Sent to clients as an opaque string so that they can later fetch only what changed since.
+ * A position is only meaningful for the subscriptions it was created with: feed cards of a newly subscribed-to
+ * analyst can be older than the position, so the token also carries a hash of the subscription set.
+ *
+ * @param updatedDate      updated-date of the last feed card the client has received
+ * @param id               id of the last feed card the client has received
+ * @param subscriptionHash hash of the ids of the subscribed-to analysts the token was created for
+ */
+public record FeedSyncToken(Instant updatedDate, Integer id, int subscriptionHash) {
+    private static final String PREFIX = "sync";
+
+    /**
+     * Creates a sync token pointing at a feed card.
+     *
+     * @param feedCard         the last feed card sent to the client
+     * @param subscriptionHash hash of the subscription set the feed card was synced for
+     * @return sync token positioned after the feed card
+     */
+    public static FeedSyncToken after(FeedCard feedCard, int subscriptionHash) {
+        return new FeedSyncToken(feedCard.getUpdatedDate(), feedCard.getId(), subscriptionHash);
+    }
+
+    /**
+     * Hashes a set of subscribed-to analysts independently of their order.
+     *
+     * @param analystIds ids of the subscribed-to analysts
+     * @return the hash of the subscription set
+     */
+    public static int subscriptionHash(Collection<Integer> analystIds) {
+        return Arrays.hashCode(analystIds.stream().mapToInt(Integer::intValue).sorted().toArray());
+    }
+
+    /**
+     * Decodes a sync token previously created by {@link #encode()}.
+     *
+     * @param encodedToken the opaque token string
+     * @return the decoded sync token
+     * @throws IllegalArgumentException if the token is malformed
+     */
+    public static FeedSyncToken decode(String encodedToken) {
+        try {
+            String decoded = new String(Base64.getUrlDecoder().decode(encodedToken), StandardCharsets.UTF_8);
+            String[] parts = decoded.split(":");
+            if (parts.length != 5 || !PREFIX.equals(parts[0])) {
+                throw new IllegalArgumentException("Malformed sync token");
+            }
+
+            Instant updatedDate = Instant.ofEpochSecond(Long.parseLong(parts[1]), Long.parseLong(parts[2]));
+            return new FeedSyncToken(updatedDate, Integer.parseInt(parts[3]), Integer.parseInt(parts[4]));
+        } catch (NumberFormatException | DateTimeException | ArithmeticException e) {
+            throw new IllegalArgumentException("Malformed sync token", e);
+        }
+    }
+
+    /**
+     * @return the sync token as an opaque URL-safe string
+     */
+    public String encode() {
+        String raw = PREFIX + ":" + updatedDate.getEpochSecond() + ":" + updatedDate.getNano() + ":" + id + ":" +
+                subscriptionHash;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+}
@@ -0,0 +1,10 @@
+package se.onlyfin.onlyfinbackend.model;
+
+/**
+ * Projection of the id and display name of a user or a stock.
+ */
+public interface NameById {
+    Integer getId();
+
+    String getName();
+}
@@ -0,0 +1,28 @@
+package se.onlyfin.onlyfinbackend.model;
+
+import jakarta.persistence.*;
+
+/**
+ * This class represents the pulled analyst table in the database.
+ * An analyst has a row while some of their feed cards were posted without being fanned out to their subscribers'
+ * timelines, because they had too many subscribers at the time. The row is removed once the analyst is back under
+ * the fan-out threshold and the missing cards have been copied into the timelines.
+ */
+@Entity
+@Table(name = "pulled_analyst")
+public class PulledAnalyst {
+    @Id
+    @Column(name = "analyst_id")
+    private Integer analystId;
+
+    public PulledAnalyst() {
+    }
+
+    public Integer getAnalystId() {
+        return analystId;
+    }
+
+    public void setAnalystId(Integer analystId) {
+        this.analystId = analystId;
+    }
+}
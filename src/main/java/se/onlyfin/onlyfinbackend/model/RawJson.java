@@ -0,0 +1,181 @@
+package se.onlyfin.onlyfinbackend.model;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.JsonSerializable;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.jsontype.TypeSerializer;
+import jakarta.persistence.AttributeConverter;
+import jakarta.persistence.Converter;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A JSON value kept as the UTF-8 bytes it was read from the database as.
+ * It is written into responses verbatim, so module content never has to be parsed into a tree on the way out.
+ * Incoming JSON is parsed once to check that it is well-formed and stored in its compact form.
+ * The bytes are shared and must not be modified.
+ */
+@JsonDeserialize(using = RawJson.Deserializer.class)
+public final class RawJson implements JsonSerializable, SerializableString {
+    private final byte[] utf8;
+
+    private RawJson(byte[] utf8) {
+        this.utf8 = utf8;
+    }
+
+    /**
+     * @param utf8 UTF-8 encoded JSON, must not be modified afterwards
+     * @return the raw JSON
+     */
+    public static RawJson ofUtf8(byte[] utf8) {
+        return new RawJson(utf8);
+    }
+
+    /**
+     * @param json JSON text
+     * @return the raw JSON
+     */
+    public static RawJson of(String json) {
+        return new RawJson(json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public void serialize(JsonGenerator gen, SerializerProvider serializers) throws IOException {
+        gen.writeRawValue(this);
+    }
+
+    @Override
+    public void serializeWithType(JsonGenerator gen, SerializerProvider serializers, TypeSerializer typeSer) throws IOException {
+        serialize(gen, serializers);
+    }
+
+    @Override
+    public String getValue() {
+        return new String(utf8, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public int charLength() {
+        return getValue().length();
+    }
+
+    @Override
+    public byte[] asUnquotedUTF8() {
+        return utf8;
+    }
+
+    @Override
+    public int appendUnquotedUTF8(byte[] buffer, int offset) {
+        if (offset + utf8.length > buffer.length) {
+            return -1;
+        }
+        System.arraycopy(utf8, 0, buffer, offset, utf8.length);
+        return utf8.length;
+    }
+
+    @Override
+    public int writeUnquotedUTF8(OutputStream out) throws IOException {
+        out.write(utf8);
+        return utf8.length;
+    }
+
+    @Override
+    public int putUnquotedUTF8(ByteBuffer buffer) {
+        if (utf8.length > buffer.remaining()) {
+            return -1;
+        }
+        buffer.put(utf8);
+        return utf8.length;
+    }
+
+    @Override
+    public int appendUnquoted(char[] buffer, int offset) {
+        return new SerializedString(getValue()).appendUnquoted(buffer, offset);
+    }
+
+    // the quoted forms are only used when writing the value as a JSON string, which a raw value never is
+
+    @Override
+    public char[] asQuotedChars() {
+        return new SerializedString(getValue()).asQuotedChars();
+    }
+
+    @Override
+    public byte[] asQuotedUTF8() {
+        return new SerializedString(getValue()).asQuotedUTF8();
+    }
+
+    @Override
+    public int appendQuotedUTF8(byte[] buffer, int offset) {
+        return new SerializedString(getValue()).appendQuotedUTF8(buffer, offset);
+    }
+
+    @Override
+    public int appendQuoted(char[] buffer, int offset) {
+        return new SerializedString(getValue()).appendQuoted(buffer, offset);
+    }
+
+    @Override
+    public int writeQuotedUTF8(OutputStream out) throws IOException {
+        return new SerializedString(getValue()).writeQuotedUTF8(out);
+    }
+
+    @Override
+    public int putQuotedUTF8(ByteBuffer buffer) {
+        return new SerializedString(getValue()).putQuotedUTF8(buffer);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof RawJson other && Arrays.equals(utf8, other.utf8);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(utf8);
+    }
+
+    @Override
+    public String toString() {
+        return getValue();
+    }
+
+    /**
+     * Reads any JSON value from a request body and keeps it in its compact form.
+     */
+    public static final class Deserializer extends JsonDeserializer<RawJson> {
+        @Override
+        public RawJson deserialize(JsonParser p, DeserializationContext ctxt) throws IOException {
+            return new RawJson(ctxt.readTree(p).toString().getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * Maps raw JSON to the bytes of a jsonb column.
+     * The column has to be read with convert_to(CAST(column AS text), 'UTF8') and written with
+     * CAST(convert_from(?, 'UTF8') AS jsonb), so that the driver hands over bytes without decoding them.
+     */
+    @Converter
+    public static final class DatabaseConverter implements AttributeConverter<RawJson, byte[]> {
+        @Override
+        public byte[] convertToDatabaseColumn(RawJson attribute) {
+            return (attribute == null) ? null : attribute.utf8;
+        }
+
+        @Override
+        public RawJson convertToEntityAttribute(byte[] dbData) {
+            return (dbData == null) ? null : new RawJson(dbData);
+        }
+    }
+
+}
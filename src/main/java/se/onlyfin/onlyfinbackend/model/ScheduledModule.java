@@ -0,0 +1,62 @@
+package se.onlyfin.onlyfinbackend.model;
+
+import jakarta.persistence.*;
+
+import java.time.Instant;
+
+/**
+ * This class represents the scheduled module table in the database.
+ * A scheduled module is a module that has been created but is hidden from the feed and the dashboard until its
+ * publish time. The row is removed when the module is published.
+ */
+@Entity
+@Table(name = "scheduled_module",
+        indexes = {
+                @Index(name = "idx_scheduled_module_publish_at", columnList = "publish_at"),
+                @Index(name = "idx_scheduled_module_analyst", columnList = "analyst_id, publish_at")
+        })
+public class ScheduledModule {
+    @Id
+    @Column(name = "module_id")
+    private Integer moduleId;
+
+    @Column(name = "analyst_id", nullable = false)
+    private Integer analystId;
+
+    @Column(name = "publish_at", nullable = false)
+    private Instant publishAt;
+
+    public ScheduledModule() {
+    }
+
+    public ScheduledModule(Integer moduleId, Integer analystId, Instant publishAt) {
+        this.moduleId = moduleId;
+        this.analystId = analystId;
+        this.publishAt = publishAt;
+    }
+
+    public Integer getModuleId() {
+        return moduleId;
+    }
+
+    public void setModuleId(Integer moduleId) {
+        this.moduleId = moduleId;
+    }
+
+    public Integer getAnalystId() {
+        return analystId;
+    }
+
+    public void setAnalystId(Integer analystId) {
+        this.analystId = analystId;
+    }
+
+    public Instant getPublishAt() {
+        return publishAt;
+    }
+
+    public void setPublishAt(Instant publishAt) {
+        this.publishAt = publishAt;
+    }
+
+}
@@ -0,0 +1,10 @@
+package se.onlyfin.onlyfinbackend.model;
+
+/**
+ * Projection of the number of subscribers an analyst has.
+ */
+public interface SubscriberCount {
+    Integer getAnalystId();
+
+    Long getSubscriberCount();
+}
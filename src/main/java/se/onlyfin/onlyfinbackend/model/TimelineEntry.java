@@ -0,0 +1,75 @@
+package se.onlyfin.onlyfinbackend.model;
+
+import jakarta.persistence.*;
+
+import java.time.Instant;
+
+/**
+ * This class represents the timeline entry table in the database.
+ * A timeline entry is a pointer from a subscriber's feed inbox to a feed card posted by a subscribed-to analyst.
+ */
+@Entity
+@Table(name = "timeline_entry",
+        uniqueConstraints = @UniqueConstraint(name = "uk_timeline_entry_subscriber_card",
+                columnNames = {"subscriber_id", "feed_card_id"}),
+        indexes = {
+                @Index(name = "idx_timeline_entry_subscriber_post_date", columnList = "subscriber_id, post_date DESC"),
+                @Index(name = "idx_timeline_entry_analyst", columnList = "analyst_id")
+        })
+public class TimelineEntry {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "subscriber_id", nullable = false)
+    private Integer subscriberId;
+
+    @Column(name = "analyst_id", nullable = false)
+    private Integer analystId;
+
+    @Column(name = "feed_card_id", nullable = false)
+    private Integer feedCardId;
+
+    @Column(name = "post_date", nullable = false)
+    private Instant postDate;
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public Integer getSubscriberId() {
+        return subscriberId;
+    }
+
+    public void setSubscriberId(Integer subscriberId) {
+        this.subscriberId = subscriberId;
+    }
+
+    public Integer getAnalystId() {
+        return analystId;
+    }
+
+    public void setAnalystId(Integer analystId) {
+        this.analystId = analystId;
+    }
+
+    public Integer getFeedCardId() {
+        return feedCardId;
+    }
+
+    public void setFeedCardId(Integer feedCardId) {
+        this.feedCardId = feedCardId;
+    }
+
+    public Instant getPostDate() {
+        return postDate;
+    }
+
+    public void setPostDate(Instant postDate) {
+        this.postDate = postDate;
+    }
+}
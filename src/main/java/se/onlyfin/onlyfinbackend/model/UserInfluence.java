@@ -0,0 +1,57 @@
+package se.onlyfin.onlyfinbackend.model;
+
+import jakarta.persistence.*;
+
+import java.time.Instant;
+
+/**
+ * This class represents the user influence table in the database.
+ * A user influence holds the PageRank of one user in the subscription graph, computed in the background and scaled
+ * so that the average user has an influence score of 1.
+ */
+@Entity
+@Table(name = "user_influence")
+public class UserInfluence {
+    @Id
+    @Column(name = "user_id")
+    private Integer userId;
+
+    @Column(name = "influence_score", nullable = false)
+    private double influenceScore;
+
+    @Column(name = "computed_date", nullable = false)
+    private Instant computedDate;
+
+    public UserInfluence() {
+    }
+
+    public UserInfluence(Integer userId, double influenceScore, Instant computedDate) {
+        this.userId = userId;
+        this.influenceScore = influenceScore;
+        this.computedDate = computedDate;
+    }
+
+    public Integer getUserId() {
+        return userId;
+    }
+
+    public void setUserId(Integer userId) {
+        this.userId = userId;
+    }
+
+    public double getInfluenceScore() {
+        return influenceScore;
+    }
+
+    public void setInfluenceScore(double influenceScore) {
+        this.influenceScore = influenceScore;
+    }
+
+    public Instant getComputedDate() {
+        return computedDate;
+    }
+
+    public void setComputedDate(Instant computedDate) {
+        this.computedDate = computedDate;
+    }
+}
@@ -0,0 +1,74 @@
+package se.onlyfin.onlyfinbackend.model;
+
+import jakarta.persistence.*;
+import org.hibernate.annotations.ColumnTransformer;
+
+import java.time.Instant;
+
+/**
+ * This class represents the user recommendation table in the database.
+ * A user recommendation holds the analyst suggestions for one user, computed in the background and stored as
+ * the JSON the suggestion endpoints respond with. A column is null if there is nothing to suggest.
+ */
+@Entity
+@Table(name = "user_recommendation")
+public class UserRecommendation {
+    @Id
+    @Column(name = "user_id")
+    private Integer userId;
+
+    @Column(name = "stock_suggestions", columnDefinition = "jsonb")
+    @ColumnTransformer(read = "convert_to(CAST(stock_suggestions AS text), 'UTF8')", write = "CAST(convert_from(?, 'UTF8') AS jsonb)")
+    @Convert(converter = RawJson.DatabaseConverter.class)
+    private RawJson stockSuggestions;
+
+    @Column(name = "popular_profiles", columnDefinition = "jsonb")
+    @ColumnTransformer(read = "convert_to(CAST(popular_profiles AS text), 'UTF8')", write = "CAST(convert_from(?, 'UTF8') AS jsonb)")
+    @Convert(converter = RawJson.DatabaseConverter.class)
+    private RawJson popularProfiles;
+
+    @Column(name = "computed_date", nullable = false)
+    private Instant computedDate;
+
+    public UserRecommendation() {
+    }
+
+    public UserRecommendation(Integer userId, RawJson stockSuggestions, RawJson popularProfiles, Instant computedDate) {
+        this.userId = userId;
+        this.stockSuggestions = stockSuggestions;
+        this.popularProfiles = popularProfiles;
+        this.computedDate = computedDate;
+    }
+
+    public Integer getUserId() {
+        return userId;
+    }
+
+    public void setUserId(Integer userId) {
+        this.userId = userId;
+    }
+
+    public RawJson getStockSuggestions() {
+        return stockSuggestions;
+    }
+
+    public void setStockSuggestions(RawJson stockSuggestions) {
+        this.stockSuggestions = stockSuggestions;
+    }
+
+    public RawJson getPopularProfiles() {
+        return popularProfiles;
+    }
+
+    public void setPopularProfiles(RawJson popularProfiles) {
+        this.popularProfiles = popularProfiles;
+    }
+
+    public Instant getComputedDate() {
+        return computedDate;
+    }
+
+    public void setComputedDate(Instant computedDate) {
+        this.computedDate = computedDate;
+    }
+}
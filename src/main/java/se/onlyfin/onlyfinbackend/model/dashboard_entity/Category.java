@@ -1,6 +1,7 @@
 package se.onlyfin.onlyfinbackend.model.dashboard_entity;
 
 import jakarta.persistence.*;
+import org.hibernate.annotations.Where;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -9,7 +10,8 @@ import java.util.List;
  * This class represents the category table in the database.
  */
 @Entity
-@Table(name = "category")
+@Table(name = "category",
+        indexes = @Index(name = "idx_category_stock", columnList = "stock_id"))
 public class Category {
 
     public Category() {
@@ -30,7 +32,9 @@ public class Category {
     @Column(name = "name")
     private String name;
 
+    // modules that are scheduled to be published later stay hidden until they are published
     @OneToMany(mappedBy = "category_id", cascade = CascadeType.ALL, orphanRemoval = true)
+    @Where(clause = "id NOT IN (SELECT sm.module_id FROM scheduled_module sm)")
     private List<ModuleEntity> moduleEntities = new ArrayList<>();
 
     public String getName() {
@@ -1,9 +1,10 @@
 package se.onlyfin.onlyfinbackend.model.dashboard_entity;
 
+import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.databind.JsonNode;
 import jakarta.persistence.*;
-import org.hibernate.annotations.JdbcTypeCode;
-import org.hibernate.type.SqlTypes;
+import org.hibernate.annotations.ColumnTransformer;
+import se.onlyfin.onlyfinbackend.model.RawJson;
 
 import java.time.Instant;
 
@@ -11,7 +12,12 @@ import java.time.Instant;
  * This class represents the module table in the database.
  */
 @Entity
-@Table(name = "module")
+@Table(name = "module",
+        indexes = {
+                @Index(name = "idx_module_category_updated_date", columnList = "category_id, updated_date, id"),
+                @Index(name = "idx_module_category_post_date", columnList = "category_id, post_date, id"),
+                @Index(name = "idx_module_type_post_date", columnList = "module_type, post_date, id")
+        })
 public class ModuleEntity {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -21,9 +27,10 @@ public class ModuleEntity {
     @JoinColumn(name = "category_id")
     private Category category_id;
 
-    @Column(name = "content")
-    @JdbcTypeCode(SqlTypes.JSON)
-    private JsonNode content;
+    @Column(name = "content", columnDefinition = "jsonb")
+    @ColumnTransformer(read = "convert_to(CAST(content AS text), 'UTF8')", write = "CAST(convert_from(?, 'UTF8') AS jsonb)")
+    @Convert(converter = RawJson.DatabaseConverter.class)
+    private RawJson content;
 
     @Column(name = "module_type")
     private String module_type;
@@ -37,6 +44,13 @@ public class ModuleEntity {
     @Column(name = "feed_card_id", insertable = false, updatable = false)
     private String feedCardId;
 
+    /**
+     * When to publish the module, if it is created ahead of time. Only read from requests, not stored here.
+     */
+    @Transient
+    @JsonProperty(access = JsonProperty.Access.WRITE_ONLY)
+    private Instant publishAt;
+
     public int getId() {
         return id;
     }
@@ -45,7 +59,7 @@ public class ModuleEntity {
         return category_id.getId();
     }
 
-    public JsonNode getContent() {
+    public RawJson getContent() {
         return content;
     }
 
@@ -53,7 +67,7 @@ public class ModuleEntity {
         return module_type;
     }
 
-    public void setContent(JsonNode content) {
+    public void setContent(RawJson content) {
         this.content = content;
     }
 
@@ -85,6 +99,14 @@ public class ModuleEntity {
         this.updatedDate = updatedDate;
     }
 
+    public Instant getPublishAt() {
+        return publishAt;
+    }
+
+    public void setPublishAt(Instant publishAt) {
+        this.publishAt = publishAt;
+    }
+
     public void setCategoryId(Category categoryId) {
         this.category_id = categoryId;
     }
@@ -11,7 +11,11 @@ import java.util.List;
  * This class represents the stock table in the database.
  */
 @Entity
-@Table(name = "stock")
+@Table(name = "stock",
+        indexes = {
+                @Index(name = "idx_stock_dashboard", columnList = "dashboard_id"),
+                @Index(name = "idx_stock_ref_dashboard", columnList = "stock_ref_id, dashboard_id")
+        })
 public class Stock {
 
     public Stock() {
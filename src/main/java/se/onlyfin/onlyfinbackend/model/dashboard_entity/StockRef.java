@@ -9,7 +9,8 @@ import java.util.List;
  * This class represents the stock reference table in the database.
  */
 @Entity
-@Table(name = "stock_ref")
+@Table(name = "stock_ref",
+        indexes = @Index(name = "idx_stock_ref_name", columnList = "name"))
 public class StockRef {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -0,0 +1,46 @@
+package se.onlyfin.onlyfinbackend.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import se.onlyfin.onlyfinbackend.model.AnalystFeedVersion;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Repository mapping for the analyst feed version table.
+ */
+public interface AnalystFeedVersionRepository extends JpaRepository<AnalystFeedVersion, Integer> {
+
+    /**
+     * @param analystIds ids of the analysts
+     * @return the feed versions of the analysts that have one
+     */
+    List<AnalystFeedVersion> findByAnalystIdIn(Collection<Integer> analystIds);
+
+    /**
+     * Bumps the feed version of an analyst, creating it if the analyst doesn't have one yet.
+     * Must run in the transaction that changes the analyst's feed cards.
+     *
+     * @param analystId id of the analyst
+     */
+    @Modifying
+    @Query(value = "INSERT INTO analyst_feed_version (analyst_id, version, last_updated) " +
+            "VALUES (:analystId, 1, now()) ON CONFLICT (analyst_id) DO UPDATE SET " +
+            "version = analyst_feed_version.version + 1, last_updated = now()", nativeQuery = true)
+    void bump(Integer analystId);
+
+    /**
+     * Bumps the feed version of every analyst that has feed cards or had them, after the feed card table has
+     * been refilled.
+     */
+    @Modifying
+    @Query(value = "INSERT INTO analyst_feed_version (analyst_id, version, last_updated) " +
+            "SELECT a.analyst_id, 1, now() FROM (SELECT analyst_id FROM feed_card WHERE analyst_id IS NOT NULL " +
+            "UNION SELECT analyst_id FROM analyst_feed_version) a " +
+            "ON CONFLICT (analyst_id) DO UPDATE SET " +
+            "version = analyst_feed_version.version + 1, last_updated = now()", nativeQuery = true)
+    void bumpAll();
+
+}
@@ -1,6 +1,7 @@
 package se.onlyfin.onlyfinbackend.repository;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 import se.onlyfin.onlyfinbackend.model.dashboard_entity.DashboardLayout;
 
 import java.util.List;
@@ -18,4 +19,14 @@ public interface DashboardLayoutRepository extends JpaRepository<DashboardLayout
      */
     List<DashboardLayout> findByCategoryId(Integer categoryId);
 
+    /**
+     * Finds the dashboard layouts of the published modules in a category.
+     *
+     * @param categoryId target category id
+     * @return dashboard layouts, without those of modules that are scheduled to be published later
+     */
+    @Query("SELECT l FROM DashboardLayout l WHERE l.categoryId = :categoryId " +
+            "AND NOT EXISTS (SELECT sm FROM ScheduledModule sm WHERE sm.moduleId = l.moduleId)")
+    List<DashboardLayout> findPublishedByCategoryId(Integer categoryId);
+
 }
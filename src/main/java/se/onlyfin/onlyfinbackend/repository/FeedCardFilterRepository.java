@@ -0,0 +1,30 @@
+package se.onlyfin.onlyfinbackend.repository;
+
+import org.springframework.lang.Nullable;
+import se.onlyfin.onlyfinbackend.model.FeedCard;
+import se.onlyfin.onlyfinbackend.model.FeedCursor;
+import se.onlyfin.onlyfinbackend.model.FeedFilter;
+import se.onlyfin.onlyfinbackend.model.User;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Feed card queries whose conditions depend on which filters are set.
+ */
+public interface FeedCardFilterRepository {
+    /**
+     * Finds the feed cards of a subscriber's feed that match a filter.
+     * Only the conditions of the filters that are set end up in the query, so the database can use the index
+     * that matches them.
+     *
+     * @param subscriber the subscribing user
+     * @param filter     the filter to apply
+     * @param cutoffDate only include feed cards posted after this date, null for no cutoff
+     * @param before     only include feed cards that come after this cursor, null to start from the newest
+     * @param limit      maximum number of feed cards to return, null for no limit
+     * @return feed cards ordered by descending post-date and id
+     */
+    List<FeedCard> findFilteredSubscriptionFeed(User subscriber, FeedFilter filter, @Nullable Instant cutoffDate,
+                                                @Nullable FeedCursor before, @Nullable Integer limit);
+}
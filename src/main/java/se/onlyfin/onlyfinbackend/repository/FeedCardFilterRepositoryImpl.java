@@ -0,0 +1,66 @@
+package se.onlyfin.onlyfinbackend.repository;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.TypedQuery;
+import org.springframework.lang.Nullable;
+import se.onlyfin.onlyfinbackend.model.FeedCard;
+import se.onlyfin.onlyfinbackend.model.FeedCursor;
+import se.onlyfin.onlyfinbackend.model.FeedFilter;
+import se.onlyfin.onlyfinbackend.model.User;
+
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds the JPQL for {@link FeedCardFilterRepository} from the filters that are set.
+ * Writing "(:param IS NULL OR column = :param)" instead would let a cached generic plan ignore the indexes.
+ */
+public class FeedCardFilterRepositoryImpl implements FeedCardFilterRepository {
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public List<FeedCard> findFilteredSubscriptionFeed(User subscriber, FeedFilter filter, @Nullable Instant cutoffDate,
+                                                       @Nullable FeedCursor before, @Nullable Integer limit) {
+        StringBuilder jpql = new StringBuilder("SELECT f FROM Subscription s " +
+                "JOIN FeedCard f ON f.analystId = s.subscribedTo.id " +
+                "WHERE s.subscriber = :subscriber");
+        Map<String, Object> parameters = new HashMap<>();
+        parameters.put("subscriber", subscriber);
+
+        if (filter.stockRefId() != null) {
+            jpql.append(" AND f.stockRefId = :stockRefId");
+            parameters.put("stockRefId", filter.stockRefId());
+        }
+        if (filter.categoryId() != null) {
+            jpql.append(" AND f.categoryId = :categoryId");
+            parameters.put("categoryId", filter.categoryId());
+        }
+        if (filter.moduleType() != null) {
+            jpql.append(" AND f.moduleType = :moduleType");
+            parameters.put("moduleType", filter.moduleType());
+        }
+        if (cutoffDate != null) {
+            jpql.append(" AND f.postDate > :cutoffDate");
+            parameters.put("cutoffDate", cutoffDate);
+        }
+        if (before != null) {
+            jpql.append(" AND (f.postDate, f.id) < (:postDate, :id)");
+            parameters.put("postDate", before.postDate());
+            parameters.put("id", before.id());
+        }
+        jpql.append(" ORDER BY f.postDate DESC, f.id DESC");
+
+        TypedQuery<FeedCard> query = entityManager.createQuery(jpql.toString(), FeedCard.class);
+        parameters.forEach(query::setParameter);
+        if (limit != null) {
+            query.setMaxResults(limit);
+        }
+
+        return query.getResultList();
+    }
+
+}
@@ -2,61 +2,365 @@ package se.onlyfin.onlyfinbackend.repository;
 
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import se.onlyfin.onlyfinbackend.model.AnalystStockPostCount;
 import se.onlyfin.onlyfinbackend.model.FeedCard;
+import se.onlyfin.onlyfinbackend.model.FeedCardContent;
+import se.onlyfin.onlyfinbackend.model.FeedCardSummary;
+import se.onlyfin.onlyfinbackend.model.FeedDigestGroup;
+import se.onlyfin.onlyfinbackend.model.User;
 
 import java.time.Instant;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
 /**
  * Repository mapping for the feed card table.
  */
-public interface FeedCardRepository extends JpaRepository<FeedCard, Integer> {
+public interface FeedCardRepository extends JpaRepository<FeedCard, Integer>, FeedCardFilterRepository {
+    /**
+     * Selects the feed card rows of published modules from the dashboard tables, in the column order of
+     * {@link #FEED_CARD_COLUMNS}. Modules that are scheduled to be published later are left out.
+     * Only the write path and rebuilds read from here.
+     */
+    String FEED_CARD_SOURCE = "SELECT m.id, s.dashboard_id, s.stock_ref_id, c.name, c.id, m.module_type, m.content, " +
+            "m.post_date, m.updated_date " +
+            "FROM module m JOIN category c ON c.id = m.category_id JOIN stock s ON s.id = c.stock_id " +
+            "WHERE NOT EXISTS (SELECT 1 FROM scheduled_module sm WHERE sm.module_id = m.id)";
+
+    /**
+     * The columns of the feed card table.
+     */
+    String FEED_CARD_COLUMNS = "id, analyst_id, stock_ref_id, category_name, category_id, module_type, " +
+            "content, post_date, updated_date";
+
     /**
      * Find all feed cards for a given analyst.
      *
-     * @param name The name of the analyst
+     * @param analystId The id of the analyst
      * @return A list of feed cards for the given analyst
      */
-    List<FeedCard> findByAnalystUsername(String name);
+    List<FeedCard> findByAnalystId(Integer analystId);
 
     /**
      * Find all feed cards for a given analyst after a given date.
      *
-     * @param username   The name of the analyst
+     * @param analystId  The id of the analyst
      * @param cutoffDate The date to start searching from
      * @return A list of feed cards for the given analyst after the given date
      */
-    List<FeedCard> findByAnalystUsernameAndPostDateAfterOrderByPostDateDesc(String username, Instant cutoffDate);
+    List<FeedCard> findByAnalystIdAndPostDateAfterOrderByPostDateDesc(Integer analystId, Instant cutoffDate);
 
     /**
-     * @param username The name of the analyst
+     * @param analystId The id of the analyst
      * @return A list of feed cards for the given analyst ordered by descending post-date
      */
-    List<FeedCard> findByAnalystUsernameOrderByPostDateDesc(String username);
+    List<FeedCard> findByAnalystIdOrderByPostDateDesc(Integer analystId);
 
     /**
-     * @param analystUsername The name of the analyst
-     * @param pageable        The page to return
+     * @param analystId The id of the analyst
+     * @param pageable  The page to return
      * @return A page of feed cards for the given analyst ordered by descending post-date
      */
-    Page<FeedCard> findByAnalystUsernameOrderByPostDateDesc(String analystUsername, Pageable pageable);
+    Page<FeedCard> findByAnalystIdOrderByPostDateDesc(Integer analystId, Pageable pageable);
+
+    /**
+     * Finds the latest feed cards for a given analyst without counting the total.
+     *
+     * @param analystId The id of the analyst
+     * @param pageable  The number of feed cards to return
+     * @return A list of feed cards for the given analyst ordered by descending post-date and id
+     */
+    List<FeedCard> findByAnalystIdOrderByPostDateDescIdDesc(Integer analystId, Pageable pageable);
+
+    /**
+     * Finds the latest feed cards of all analysts without counting the total.
+     *
+     * @param pageable The number of feed cards to return
+     * @return A list of feed cards ordered by descending post-date and id
+     */
+    List<FeedCard> findAllByOrderByPostDateDescIdDesc(Pageable pageable);
 
     /**
      * Finds the latest feed card for a target analyst.
      *
-     * @param username name of the target analyst
+     * @param analystId id of the target analyst
      * @return the latest feed card for the target analyst
      */
-    Optional<FeedCard> findFirstByAnalystUsernameOrderByPostDateDesc(String username);
+    Optional<FeedCard> findFirstByAnalystIdOrderByPostDateDesc(Integer analystId);
 
     /**
      * Finds the most recently updated feed card for a target analyst.
      *
-     * @param username name of the target analyst
+     * @param analystId id of the target analyst
      * @return the most recently updated feed card for the target analyst
      */
-    Optional<FeedCard> findFirstByAnalystUsernameOrderByUpdatedDateDesc(String username);
+    Optional<FeedCard> findFirstByAnalystIdOrderByUpdatedDateDesc(Integer analystId);
+
+    /**
+     * Find all feed cards for a set of analysts after a given date.
+     *
+     * @param analystIds The ids of the analysts
+     * @param cutoffDate The date to start searching from
+     * @return A list of feed cards for the given analysts ordered by descending post-date
+     */
+    List<FeedCard> findByAnalystIdInAndPostDateAfterOrderByPostDateDesc(Collection<Integer> analystIds, Instant cutoffDate);
+
+    /**
+     * Finds the feed cards in a subscriber's timeline that were posted after a given date.
+     *
+     * @param subscriberId id of the subscriber
+     * @param cutoffDate   the date to start searching from
+     * @return the subscriber's timeline ordered by descending post-date
+     */
+    @Query("SELECT f FROM TimelineEntry t JOIN FeedCard f ON f.id = t.feedCardId " +
+            "WHERE t.subscriberId = :subscriberId AND t.postDate > :cutoffDate " +
+            "ORDER BY t.postDate DESC")
+    List<FeedCard> findTimelineForSubscriber(Integer subscriberId, Instant cutoffDate);
+
+    /**
+     * Finds the first page of a subscriber's feed.
+     * Joins the subscriber's subscriptions to the feed cards in a single query and does not count the total.
+     *
+     * @param subscriber the subscribing user
+     * @param pageable   the page size, the page number is ignored
+     * @return a slice of feed cards ordered by descending post-date and id
+     */
+    @Query("SELECT f FROM Subscription s JOIN FeedCard f ON f.analystId = s.subscribedTo.id " +
+            "WHERE s.subscriber = :subscriber " +
+            "ORDER BY f.postDate DESC, f.id DESC")
+    Slice<FeedCard> findSubscriptionFeed(User subscriber, Pageable pageable);
+
+    /**
+     * Finds the page of a subscriber's feed that comes after a cursor position.
+     *
+     * @param subscriber the subscribing user
+     * @param postDate   post-date of the last feed card on the previous page
+     * @param id         id of the last feed card on the previous page
+     * @param pageable   the page size, the page number is ignored
+     * @return a slice of feed cards ordered by descending post-date and id
+     */
+    @Query("SELECT f FROM Subscription s JOIN FeedCard f ON f.analystId = s.subscribedTo.id " +
+            "WHERE s.subscriber = :subscriber AND (f.postDate, f.id) < (:postDate, :id) " +
+            "ORDER BY f.postDate DESC, f.id DESC")
+    Slice<FeedCard> findSubscriptionFeedBefore(User subscriber, Instant postDate, Integer id, Pageable pageable);
+
+    /**
+     * Finds the feed cards in a subscriber's feed that were created or updated after a sync position.
+     * Changes newer than settledBefore are left for the next sync, since transactions that started earlier
+     * may still commit rows with an earlier updated-date.
+     *
+     * @param subscriber    the subscribing user
+     * @param updatedDate   updated-date of the last feed card the client has received
+     * @param id            id of the last feed card the client has received
+     * @param settledBefore only include changes made before this date
+     * @param pageable      the page size, the page number is ignored
+     * @return a slice of feed cards ordered by ascending updated-date and id
+     */
+    @Query("SELECT f FROM Subscription s JOIN FeedCard f ON f.analystId = s.subscribedTo.id " +
+            "WHERE s.subscriber = :subscriber AND (f.updatedDate, f.id) > (:updatedDate, :id) " +
+            "AND f.updatedDate < :settledBefore " +
+            "ORDER BY f.updatedDate ASC, f.id ASC")
+    Slice<FeedCard> findSubscriptionFeedChangesAfter(User subscriber, Instant updatedDate, Integer id,
+                                                     Instant settledBefore, Pageable pageable);
+
+    /**
+     * Finds the first page of a subscriber's feed without the content of the feed cards.
+     *
+     * @param subscriberId id of the subscriber
+     * @param pageable     the page size, the page number is ignored
+     * @return a slice of feed card summaries ordered by descending post-date and id
+     */
+    @Query(value = "SELECT f.id AS id, f.analyst_id AS analystId, f.stock_ref_id AS stockRefId, " +
+            "f.category_name AS categoryName, f.category_id AS categoryId, " +
+            "f.module_type AS moduleType, f.post_date AS postDate, f.updated_date AS updatedDate, " +
+            "md5(CAST(f.content AS text)) AS contentHash " +
+            "FROM subscription s JOIN feed_card f ON f.analyst_id = s.subscribed_to_id " +
+            "WHERE s.subscriber_id = :subscriberId " +
+            "ORDER BY f.post_date DESC, f.id DESC", nativeQuery = true)
+    Slice<FeedCardSummary> findSubscriptionFeedSummaries(Integer subscriberId, Pageable pageable);
+
+    /**
+     * Finds the page of a subscriber's feed summaries that comes after a cursor position.
+     *
+     * @param subscriberId id of the subscriber
+     * @param postDate     post-date of the last feed card on the previous page
+     * @param id           id of the last feed card on the previous page
+     * @param pageable     the page size, the page number is ignored
+     * @return a slice of feed card summaries ordered by descending post-date and id
+     */
+    @Query(value = "SELECT f.id AS id, f.analyst_id AS analystId, f.stock_ref_id AS stockRefId, " +
+            "f.category_name AS categoryName, f.category_id AS categoryId, " +
+            "f.module_type AS moduleType, f.post_date AS postDate, f.updated_date AS updatedDate, " +
+            "md5(CAST(f.content AS text)) AS contentHash " +
+            "FROM subscription s JOIN feed_card f ON f.analyst_id = s.subscribed_to_id " +
+            "WHERE s.subscriber_id = :subscriberId AND (f.post_date, f.id) < (:postDate, :id) " +
+            "ORDER BY f.post_date DESC, f.id DESC", nativeQuery = true)
+    Slice<FeedCardSummary> findSubscriptionFeedSummariesBefore(Integer subscriberId, Instant postDate, Integer id,
+                                                               Pageable pageable);
+
+    /**
+     * Finds the content of a set of feed cards.
+     *
+     * @param ids ids of the feed cards
+     * @return the content of the feed cards as JSON text together with its hash, ordered by id
+     */
+    @Query(value = "SELECT f.id AS id, md5(CAST(f.content AS text)) AS contentHash, CAST(f.content AS text) AS content " +
+            "FROM feed_card f WHERE f.id IN (:ids) ORDER BY f.id", nativeQuery = true)
+    List<FeedCardContent> findContentByIdIn(Collection<Integer> ids);
+
+    /**
+     * Groups a subscriber's feed cards by analyst, stock and time bucket in a single aggregation.
+     * Buckets are aligned to the given offset from UTC, so that daily buckets start at local midnight.
+     *
+     * @param subscriberId        id of the subscriber
+     * @param cutoffDate          the date to start grouping from
+     * @param bucketSeconds       length of a time bucket in seconds
+     * @param bucketOffsetSeconds offset from UTC to align the buckets to, in seconds
+     * @param byCategory          true to also group by category, false to group by stock only
+     * @param pageable            the page to return
+     * @return a slice of digest groups ordered by their newest feed card
+     */
+    @Query(value = "SELECT f.analyst_id AS analystId, f.stock_ref_id AS stockRefId, " +
+            "CASE WHEN :byCategory THEN f.category_id END AS categoryId, " +
+            "to_timestamp(floor((extract(epoch FROM f.post_date) + :bucketOffsetSeconds) / :bucketSeconds) " +
+            "* :bucketSeconds - :bucketOffsetSeconds) AS bucketStart, " +
+            "count(*) AS cardCount, max(f.post_date) AS newestPostDate, " +
+            "(array_agg(f.id ORDER BY f.post_date DESC, f.id DESC))[1] AS newestId " +
+            "FROM subscription s JOIN feed_card f ON f.analyst_id = s.subscribed_to_id " +
+            "WHERE s.subscriber_id = :subscriberId AND f.post_date > :cutoffDate " +
+            "GROUP BY 1, 2, 3, 4 " +
+            "ORDER BY newestPostDate DESC, newestId DESC", nativeQuery = true)
+    Slice<FeedDigestGroup> findSubscriptionFeedDigest(Integer subscriberId, Instant cutoffDate, long bucketSeconds,
+                                                      long bucketOffsetSeconds, boolean byCategory, Pageable pageable);
+
+    /**
+     * Finds the feed cards of one digest group.
+     *
+     * @param analystId  id of the analyst
+     * @param stockRefId id of the stock reference
+     * @param categoryId id of the category, null for all categories of the stock
+     * @param from       start of the time bucket, inclusive
+     * @param to         end of the time bucket, exclusive
+     * @param pageable   the page to return
+     * @return a slice of feed cards ordered by descending post-date and id
+     */
+    @Query("SELECT f FROM FeedCard f " +
+            "WHERE f.analystId = :analystId AND f.stockRefId = :stockRefId " +
+            "AND (:categoryId IS NULL OR f.categoryId = :categoryId) " +
+            "AND f.postDate >= :from AND f.postDate < :to " +
+            "ORDER BY f.postDate DESC, f.id DESC")
+    Slice<FeedCard> findDigestMembers(Integer analystId, Integer stockRefId, Integer categoryId,
+                                      Instant from, Instant to, Pageable pageable);
+
+    /**
+     * Finds the ids of the feed cards in a subscriber's feed that were posted after a given date.
+     *
+     * @param subscriberId id of the subscriber
+     * @param cutoffDate   the date to start searching from
+     * @return ids of the feed cards
+     */
+    @Query(value = "SELECT f.id FROM subscription s JOIN feed_card f ON f.analyst_id = s.subscribed_to_id " +
+            "WHERE s.subscriber_id = :subscriberId AND f.post_date > :cutoffDate", nativeQuery = true)
+    List<Integer> findSubscriptionFeedIdsPostedAfter(Integer subscriberId, Instant cutoffDate);
+
+    /**
+     * Finds which of a set of feed cards are in a subscriber's feed.
+     *
+     * @param subscriberId id of the subscriber
+     * @param ids          ids of the feed cards
+     * @return ids of the feed cards that are in the subscriber's feed
+     */
+    @Query(value = "SELECT f.id FROM subscription s JOIN feed_card f ON f.analyst_id = s.subscribed_to_id " +
+            "WHERE s.subscriber_id = :subscriberId AND f.id IN (:ids)", nativeQuery = true)
+    List<Integer> findSubscriptionFeedIdsIn(Integer subscriberId, Collection<Integer> ids);
+
+    /**
+     * Counts the feed cards of every analyst per stock. Users that are not analysts are left out.
+     *
+     * @return one row per analyst and stock they have posted about
+     */
+    @Query(value = "SELECT f.analyst_id AS analystId, f.stock_ref_id AS stockRefId, CAST(count(*) AS integer) AS postCount " +
+            "FROM feed_card f JOIN users u ON u.id = f.analyst_id " +
+            "WHERE u.is_analyst AND f.stock_ref_id IS NOT NULL " +
+            "GROUP BY f.analyst_id, f.stock_ref_id", nativeQuery = true)
+    List<AnalystStockPostCount> findAnalystStockPostCounts();
+
+    /**
+     * Counts the feed cards of a single analyst per stock.
+     *
+     * @param analystId id of the analyst
+     * @return one row per stock the analyst has posted about, or none if the user is not an analyst
+     */
+    @Query(value = "SELECT f.analyst_id AS analystId, f.stock_ref_id AS stockRefId, CAST(count(*) AS integer) AS postCount " +
+            "FROM feed_card f JOIN users u ON u.id = f.analyst_id " +
+            "WHERE f.analyst_id = :analystId AND u.is_analyst AND f.stock_ref_id IS NOT NULL " +
+            "GROUP BY f.analyst_id, f.stock_ref_id", nativeQuery = true)
+    List<AnalystStockPostCount> findStockPostCountsByAnalystId(Integer analystId);
+
+    /**
+     * @param moduleId id of the module
+     * @return id of the stock reference the module's feed card is about, if the module has a feed card
+     */
+    @Query("SELECT f.stockRefId FROM FeedCard f WHERE f.id = :moduleId")
+    Optional<Integer> findStockRefIdByModuleId(Integer moduleId);
+
+    /**
+     * Copies a module into the feed card table, or refreshes its copy.
+     *
+     * @param moduleId id of the module
+     */
+    @Modifying
+    @Query(value = "INSERT INTO feed_card (" + FEED_CARD_COLUMNS + ") " + FEED_CARD_SOURCE + " AND m.id = :moduleId " +
+            "ON CONFLICT (id) DO UPDATE SET analyst_id = EXCLUDED.analyst_id, " +
+            "stock_ref_id = EXCLUDED.stock_ref_id, category_name = EXCLUDED.category_name, " +
+            "category_id = EXCLUDED.category_id, module_type = EXCLUDED.module_type, content = EXCLUDED.content, " +
+            "post_date = EXCLUDED.post_date, updated_date = EXCLUDED.updated_date", nativeQuery = true)
+    void refreshFromModule(Integer moduleId);
+
+    /**
+     * Removes the feed card of a deleted module.
+     *
+     * @param moduleId id of the module
+     */
+    @Modifying
+    @Query("DELETE FROM FeedCard f WHERE f.id = :moduleId")
+    void deleteByModuleId(Integer moduleId);
+
+    /**
+     * Removes the feed cards of a deleted category.
+     *
+     * @param categoryId id of the category
+     */
+    @Modifying
+    @Query("DELETE FROM FeedCard f WHERE f.categoryId = :categoryId")
+    void deleteByCategoryId(Integer categoryId);
+
+    /**
+     * Removes the feed cards of a stock that is about to be deleted.
+     * Must run before the stock is deleted, since its categories are deleted along with it.
+     *
+     * @param stockId id of the stock
+     */
+    @Modifying
+    @Query(value = "DELETE FROM feed_card f USING category c WHERE c.id = f.category_id AND c.stock_id = :stockId",
+            nativeQuery = true)
+    void deleteByStockId(Integer stockId);
+
+    /**
+     * Renames the category of all feed cards in a category.
+     * Counts as an update of the feed cards, so that syncing clients pick up the new name.
+     *
+     * @param categoryId   id of the category
+     * @param categoryName new name of the category
+     */
+    @Modifying
+    @Query("UPDATE FeedCard f SET f.categoryName = :categoryName, f.updatedDate = CURRENT_TIMESTAMP " +
+            "WHERE f.categoryId = :categoryId")
+    void renameCategory(Integer categoryId, String categoryName);
 
 }
@@ -0,0 +1,158 @@
+package se.onlyfin.onlyfinbackend.repository;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import se.onlyfin.onlyfinbackend.model.RawJson;
+
+import javax.sql.DataSource;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * Reads feed cards row by row instead of loading them all at once.
+ * Content is read as the bytes of its JSON text, so it can be written out without being decoded or parsed.
+ * PostgreSQL only uses a server-side cursor when the fetch size is set and the connection is not in autocommit
+ * mode, so rows are read in a read-only transaction and never more than one fetch is held in memory.
+ * The transaction, and with it a pooled connection, stays open for as long as the client takes to read the stream.
+ * To keep slow readers from exhausting the pool, only a limited number of streams can be open at once, and a
+ * stream is aborted once it has been open for longer than the maximum stream duration. A client whose stream is
+ * aborted receives a truncated stream and has to fall back to the paginated feed endpoints.
+ */
+@Repository
+public class FeedCardStreamRepository {
+    private static final String SUBSCRIPTION_FEED_QUERY =
+            "SELECT f.id, f.analyst_id, f.stock_ref_id, f.category_name, f.category_id, " +
+                    "f.post_date, f.updated_date, convert_to(CAST(f.content AS text), 'UTF8') AS content " +
+                    "FROM subscription s " +
+                    "JOIN feed_card f ON f.analyst_id = s.subscribed_to_id " +
+                    "WHERE s.subscriber_id = ? AND f.post_date > ? " +
+                    "ORDER BY f.post_date DESC, f.id DESC";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final Semaphore streamPermits;
+    private final long maxStreamNanos;
+
+    public FeedCardStreamRepository(DataSource dataSource, PlatformTransactionManager transactionManager,
+                                    @Value("${onlyfin.feed.ndjson.fetch-size:200}") int fetchSize,
+                                    @Value("${onlyfin.feed.ndjson.max-concurrent-streams:8}") int maxConcurrentStreams,
+                                    @Value("${onlyfin.feed.ndjson.max-stream-seconds:60}") int maxStreamSeconds) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.jdbcTemplate.setFetchSize(fetchSize);
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setReadOnly(true);
+        this.transactionTemplate.setTimeout(maxStreamSeconds);
+        this.streamPermits = new Semaphore(maxConcurrentStreams);
+        this.maxStreamNanos = TimeUnit.SECONDS.toNanos(maxStreamSeconds);
+    }
+
+    /**
+     * Reserves one of the open stream slots for reading a subscriber's feed.
+     * The slot is released when the returned stream has been read or closed, whichever happens first, so a stream
+     * that is never read must be closed.
+     *
+     * @param subscriberId id of the subscriber
+     * @param cutoffDate   the date to start reading from
+     * @return the feed stream, or empty if the maximum number of streams is already open
+     */
+    public Optional<FeedStream> openSubscriptionFeed(Integer subscriberId, Instant cutoffDate) {
+        if (!streamPermits.tryAcquire()) {
+            return Optional.empty();
+        }
+
+        return Optional.of(new FeedStream(subscriberId, cutoffDate));
+    }
+
+    /**
+     * Reads a subscriber's feed and hands each row to a consumer as soon as it has been fetched.
+     *
+     * @throws QueryTimeoutException if reading takes longer than the maximum stream duration
+     */
+    private void streamSubscriptionFeed(Integer subscriberId, Instant cutoffDate, Consumer<FeedCardRow> consumer) {
+        long deadlineNanos = System.nanoTime() + maxStreamNanos;
+        transactionTemplate.executeWithoutResult((status) ->
+                jdbcTemplate.query(SUBSCRIPTION_FEED_QUERY, (resultSet) -> {
+                    if (System.nanoTime() - deadlineNanos > 0) {
+                        throw new QueryTimeoutException("Feed stream was open for longer than the maximum duration");
+                    }
+                    byte[] content = resultSet.getBytes("content");
+                    consumer.accept(new FeedCardRow(
+                            resultSet.getInt("id"),
+                            resultSet.getInt("analyst_id"),
+                            resultSet.getInt("stock_ref_id"),
+                            resultSet.getString("category_name"),
+                            resultSet.getInt("category_id"),
+                            resultSet.getTimestamp("post_date").toInstant(),
+                            resultSet.getTimestamp("updated_date").toInstant(),
+                            (content == null) ? null : RawJson.ofUtf8(content)));
+                }, subscriberId, Timestamp.from(cutoffDate)));
+    }
+
+    /**
+     * A subscriber's feed that has a stream slot reserved for it.
+     * The slot is released exactly once, either after the feed has been read or when the stream is closed.
+     */
+    public final class FeedStream implements AutoCloseable {
+        private final Integer subscriberId;
+        private final Instant cutoffDate;
+        private final AtomicBoolean closed = new AtomicBoolean(false);
+
+        private FeedStream(Integer subscriberId, Instant cutoffDate) {
+            this.subscriberId = subscriberId;
+            this.cutoffDate = cutoffDate;
+        }
+
+        /**
+         * Reads the feed and releases the stream slot. Does nothing if the stream has already been closed.
+         *
+         * @param consumer receives the rows ordered by descending post-date and id
+         */
+        public void forEach(Consumer<FeedCardRow> consumer) {
+            if (closed.get()) {
+                return;
+            }
+
+            try {
+                streamSubscriptionFeed(subscriberId, cutoffDate, consumer);
+            } finally {
+                close();
+            }
+        }
+
+        /**
+         * Releases the stream slot unless it has already been released.
+         */
+        @Override
+        public void close() {
+            if (closed.compareAndSet(false, true)) {
+                streamPermits.release();
+            }
+        }
+    }
+
+    /**
+     * A feed card row with its content left as JSON text so it can be written out without being parsed.
+     *
+     * @param id              id of the feed card
+     * @param analystId       id of the analyst who posted the feed card
+     * @param stockRefId   id of the stock reference
+     * @param categoryName name of the category
+     * @param categoryId   id of the category
+     * @param postDate     the date the feed card was posted
+     * @param updatedDate  the date the feed card was last updated
+     * @param content      the content as UTF-8 encoded JSON
+     */
+    public record FeedCardRow(Integer id, Integer analystId, Integer stockRefId, String categoryName,
+                              Integer categoryId, Instant postDate, Instant updatedDate, RawJson content) {
+    }
+
+}
@@ -0,0 +1,34 @@
+package se.onlyfin.onlyfinbackend.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import se.onlyfin.onlyfinbackend.model.FeedInteraction;
+
+import java.util.List;
+
+/**
+ * Repository mapping for the feed interaction table.
+ */
+public interface FeedInteractionRepository extends JpaRepository<FeedInteraction, Long> {
+
+    /**
+     * @param userId id of the user
+     * @return the user's interaction counts, one per analyst the user has interacted with
+     */
+    List<FeedInteraction> findByUserId(Integer userId);
+
+    /**
+     * Counts one interaction of a user with a feed card posted by an analyst.
+     *
+     * @param userId    id of the user
+     * @param analystId id of the analyst who posted the feed card
+     */
+    @Modifying
+    @Query(value = "INSERT INTO feed_interaction (user_id, analyst_id, interaction_count, last_interaction) " +
+            "VALUES (:userId, :analystId, 1, now()) " +
+            "ON CONFLICT (user_id, analyst_id) DO UPDATE " +
+            "SET interaction_count = feed_interaction.interaction_count + 1, last_interaction = now()", nativeQuery = true)
+    void recordInteraction(Integer userId, Integer analystId);
+
+}
@@ -0,0 +1,51 @@
+package se.onlyfin.onlyfinbackend.repository;
+
+import jakarta.persistence.LockModeType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import se.onlyfin.onlyfinbackend.model.FeedReadState;
+
+import java.util.Optional;
+
+/**
+ * Repository mapping for the feed read state table.
+ */
+public interface FeedReadStateRepository extends JpaRepository<FeedReadState, Integer> {
+
+    /**
+     * Finds a user's read state and locks it until the transaction ends.
+     *
+     * @param userId id of the user
+     * @return the read state if the user has one
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT r FROM FeedReadState r WHERE r.userId = :userId")
+    Optional<FeedReadState> findForUpdate(Integer userId);
+
+    /**
+     * Creates a read state for a user unless there already is one.
+     *
+     * @param userId      id of the user
+     * @param readModules the serialized bitmap to start with
+     */
+    @Modifying
+    @Query(value = "INSERT INTO feed_read_state (user_id, read_modules, updated_date) " +
+            "VALUES (:userId, :readModules, now()) ON CONFLICT (user_id) DO NOTHING", nativeQuery = true)
+    void insertIfMissing(Integer userId, byte[] readModules);
+
+    /**
+     * Marks every module posted until now read for a user, and replaces the bitmap of read modules, which only
+     * needs to hold modules posted after that.
+     *
+     * @param userId      id of the user
+     * @param readModules the serialized bitmap to start over with
+     */
+    @Modifying
+    @Query(value = "INSERT INTO feed_read_state (user_id, read_modules, updated_date, read_before) " +
+            "VALUES (:userId, :readModules, now(), now()) ON CONFLICT (user_id) DO UPDATE SET " +
+            "read_modules = EXCLUDED.read_modules, updated_date = now(), read_before = now()", nativeQuery = true)
+    void markAllRead(Integer userId, byte[] readModules);
+
+}
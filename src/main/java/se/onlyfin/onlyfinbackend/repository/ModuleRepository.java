@@ -1,10 +1,13 @@
 package se.onlyfin.onlyfinbackend.repository;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import se.onlyfin.onlyfinbackend.model.dashboard_entity.Dashboard;
 import se.onlyfin.onlyfinbackend.model.dashboard_entity.ModuleEntity;
 
+import java.time.Instant;
+
 /**
  * Repository mapping for the module table.
  */
@@ -12,4 +15,15 @@ public interface ModuleRepository extends JpaRepository<ModuleEntity, Integer> {
 
     @Query("SELECT s.dashboard_id FROM ModuleEntity m JOIN m.category_id c JOIN c.stock_id s WHERE m.id = :moduleId")
     Dashboard findDashboardByModuleId(Integer moduleId);
+
+    /**
+     * Dates a scheduled module at its publish time when it is released.
+     *
+     * @param moduleId id of the module
+     * @param postDate the time the module was scheduled to be published at
+     * @return the number of modules updated, 0 if the module has been deleted
+     */
+    @Modifying
+    @Query(value = "UPDATE module SET post_date = :postDate, updated_date = now() WHERE id = :moduleId", nativeQuery = true)
+    int markPublished(Integer moduleId, Instant postDate);
 }
@@ -0,0 +1,63 @@
+package se.onlyfin.onlyfinbackend.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import se.onlyfin.onlyfinbackend.model.ScheduledModule;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Repository mapping for the scheduled module table.
+ */
+public interface ScheduledModuleRepository extends JpaRepository<ScheduledModule, Integer> {
+
+    /**
+     * Finds the modules that are due to be published before a given time, including overdue ones.
+     *
+     * @param horizon the time to look ahead to
+     * @return scheduled modules ordered by ascending publish time
+     */
+    List<ScheduledModule> findByPublishAtBeforeOrderByPublishAt(Instant horizon);
+
+    /**
+     * @param analystId id of the analyst
+     * @return the analyst's scheduled modules ordered by ascending publish time
+     */
+    List<ScheduledModule> findByAnalystIdOrderByPublishAt(Integer analystId);
+
+    /**
+     * Removes a module's schedule. Whoever removes the row is the one who publishes the module, so a module is
+     * published once even if several instances release it at the same time.
+     *
+     * @param moduleId id of the module
+     * @return 1 if the schedule was removed, 0 if it was already gone
+     */
+    @Modifying
+    @Query("DELETE FROM ScheduledModule sm WHERE sm.moduleId = :moduleId")
+    int removeSchedule(Integer moduleId);
+
+    /**
+     * Removes the schedules of all modules in a category that is being deleted.
+     *
+     * @param categoryId id of the category
+     * @return the number of schedules removed
+     */
+    @Modifying
+    @Query(value = "DELETE FROM scheduled_module sm USING module m " +
+            "WHERE m.id = sm.module_id AND m.category_id = :categoryId", nativeQuery = true)
+    int removeSchedulesByCategoryId(Integer categoryId);
+
+    /**
+     * Removes the schedules of all modules under a stock that is being deleted.
+     *
+     * @param stockId id of the stock
+     * @return the number of schedules removed
+     */
+    @Modifying
+    @Query(value = "DELETE FROM scheduled_module sm USING module m, category c " +
+            "WHERE m.id = sm.module_id AND c.id = m.category_id AND c.stock_id = :stockId", nativeQuery = true)
+    int removeSchedulesByStockId(Integer stockId);
+
+}
@@ -1,8 +1,11 @@
 package se.onlyfin.onlyfinbackend.repository;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import se.onlyfin.onlyfinbackend.model.NameById;
 import se.onlyfin.onlyfinbackend.model.dashboard_entity.StockRef;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -34,4 +37,13 @@ public interface StockRefRepository extends JpaRepository<StockRef, Integer> {
      * @return StockRef if it exists
      */
     Optional<StockRef> findStockRefByName(String stockName);
+
+    /**
+     * Returns the names of all StockRef's with any of the given ids
+     *
+     * @param ids ids of the target StockRefs
+     * @return the ids and names of the StockRefs that were found
+     */
+    @Query("SELECT r.id AS id, r.name AS name FROM StockRef r WHERE r.id IN :ids")
+    List<NameById> findNamesByIdIn(Collection<Integer> ids);
 }
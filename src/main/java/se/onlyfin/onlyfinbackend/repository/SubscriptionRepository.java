@@ -2,9 +2,11 @@ package se.onlyfin.onlyfinbackend.repository;
 
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
+import se.onlyfin.onlyfinbackend.model.SubscriberCount;
 import se.onlyfin.onlyfinbackend.model.Subscription;
 import se.onlyfin.onlyfinbackend.model.User;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -67,17 +69,48 @@ public interface SubscriptionRepository extends CrudRepository<Subscription, Int
     void deleteAllBySubscribedTo(User targetUser);
 
     /**
-     * Finds the 7 most subscribed-to analysts
+     * Counts the subscribers of every analyst in a single query.
      *
-     * @return the 7 most subscribed-to analysts
+     * @return the number of subscribers per analyst, including analysts without subscribers
      */
-    @Query("SELECT subscription.subscriber.username " +
-            "FROM Subscription subscription " +
-            "JOIN subscription.subscriber user " +
+    @Query("SELECT user.id AS analystId, COUNT(subscription) AS subscriberCount " +
+            "FROM User user " +
+            "LEFT JOIN Subscription subscription ON subscription.subscribedTo = user " +
             "WHERE user.isAnalyst = true " +
-            "GROUP BY subscription.subscriber.username " +
-            "ORDER BY COUNT(subscription.subscriber) DESC " +
-            "LIMIT 7")
-    List<String> findTop7SubscribedAnalystUsernames();
+            "GROUP BY user.id")
+    List<SubscriberCount> countSubscribersOfAllAnalysts();
+
+    /**
+     * @param subscribedToId id of the target user
+     * @return the number of subscribers for the target user
+     */
+    long countBySubscribedToId(Integer subscribedToId);
+
+    /**
+     * Finds the users that a subscriber is subscribed to which have at least a given number of subscribers.
+     *
+     * @param subscriber the subscribing user
+     * @param threshold  the minimum number of subscribers
+     * @return ids of the subscribed-to users that have at least threshold subscribers
+     */
+    @Query("SELECT subscription.subscribedTo.id " +
+            "FROM Subscription subscription " +
+            "WHERE subscription.subscribedTo IN " +
+            "(SELECT own.subscribedTo FROM Subscription own WHERE own.subscriber = :subscriber) " +
+            "GROUP BY subscription.subscribedTo.id " +
+            "HAVING COUNT(subscription) >= :threshold")
+    List<Integer> findSubscribedToIdsWithAtLeastSubscribers(User subscriber, long threshold);
+
+    /**
+     * Counts the subscribers of a set of users in a single query.
+     *
+     * @param subscribedToIds ids of the target users
+     * @return the number of subscribers per target user, users without subscribers are left out
+     */
+    @Query("SELECT subscription.subscribedTo.id AS analystId, COUNT(subscription) AS subscriberCount " +
+            "FROM Subscription subscription " +
+            "WHERE subscription.subscribedTo.id IN :subscribedToIds " +
+            "GROUP BY subscription.subscribedTo.id")
+    List<SubscriberCount> countSubscribersBySubscribedToIdIn(Collection<Integer> subscribedToIds);
 
 }
@@ -0,0 +1,144 @@
+package se.onlyfin.onlyfinbackend.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import se.onlyfin.onlyfinbackend.model.TimelineEntry;
+
+/**
+ * Repository mapping for the timeline entry table.
+ */
+public interface TimelineEntryRepository extends JpaRepository<TimelineEntry, Long> {
+
+    /**
+     * Pushes a feed card into the timeline of every subscriber of the analyst who posted it.
+     * Runs as a single INSERT ... SELECT and ignores subscribers that already have the card.
+     *
+     * @param analystId  id of the analyst who posted the card
+     * @param feedCardId id of the feed card to push
+     * @return the number of timelines the card was pushed to
+     */
+    @Modifying
+    @Query(value = "INSERT INTO timeline_entry (subscriber_id, analyst_id, feed_card_id, post_date) " +
+            "SELECT s.subscriber_id, :analystId, f.id, f.post_date " +
+            "FROM subscription s JOIN feed_card f ON f.id = :feedCardId " +
+            "WHERE s.subscribed_to_id = :analystId " +
+            "ON CONFLICT (subscriber_id, feed_card_id) DO NOTHING", nativeQuery = true)
+    int fanOutToSubscribers(Integer analystId, Integer feedCardId);
+
+    /**
+     * Copies every feed card of an analyst into the timeline of a single subscriber.
+     * Used when a new subscription is added.
+     *
+     * @param subscriberId id of the subscriber
+     * @param analystId    id of the subscribed-to analyst
+     * @return the number of feed cards copied
+     */
+    @Modifying
+    @Query(value = "INSERT INTO timeline_entry (subscriber_id, analyst_id, feed_card_id, post_date) " +
+            "SELECT :subscriberId, f.analyst_id, f.id, f.post_date " +
+            "FROM feed_card f " +
+            "WHERE f.analyst_id = :analystId " +
+            "ON CONFLICT (subscriber_id, feed_card_id) DO NOTHING", nativeQuery = true)
+    int backfillFromAnalyst(Integer subscriberId, Integer analystId);
+
+    /**
+     * Copies every feed card of an analyst into the timeline of every subscriber of the analyst.
+     * Used when an analyst drops back under the fan-out threshold.
+     *
+     * @param analystId id of the analyst
+     * @return the number of timeline entries added
+     */
+    @Modifying
+    @Query(value = "INSERT INTO timeline_entry (subscriber_id, analyst_id, feed_card_id, post_date) " +
+            "SELECT s.subscriber_id, f.analyst_id, f.id, f.post_date " +
+            "FROM subscription s JOIN feed_card f ON f.analyst_id = s.subscribed_to_id " +
+            "WHERE s.subscribed_to_id = :analystId " +
+            "ON CONFLICT (subscriber_id, feed_card_id) DO NOTHING", nativeQuery = true)
+    int backfillToSubscribers(Integer analystId);
+
+    /**
+     * Copies the feed cards of every analyst with fewer subscribers than the threshold into the timelines of their
+     * subscribers. Idempotent, so it can run on every start to fill timelines for subscriptions that existed
+     * before the timeline table, or that were changed without an event.
+     *
+     * @param threshold the fan-out threshold
+     * @return the number of timeline entries added
+     */
+    @Modifying
+    @Query(value = "INSERT INTO timeline_entry (subscriber_id, analyst_id, feed_card_id, post_date) " +
+            "SELECT s.subscriber_id, f.analyst_id, f.id, f.post_date " +
+            "FROM subscription s JOIN feed_card f ON f.analyst_id = s.subscribed_to_id " +
+            "WHERE s.subscribed_to_id IN " +
+            "(SELECT c.subscribed_to_id FROM subscription c GROUP BY c.subscribed_to_id HAVING count(*) < :threshold) " +
+            "ON CONFLICT (subscriber_id, feed_card_id) DO NOTHING", nativeQuery = true)
+    int backfillAll(long threshold);
+
+    /**
+     * Records that an analyst has feed cards that were not fanned out.
+     *
+     * @param analystId id of the analyst
+     */
+    @Modifying
+    @Query(value = "INSERT INTO pulled_analyst (analyst_id) VALUES (:analystId) ON CONFLICT (analyst_id) DO NOTHING",
+            nativeQuery = true)
+    void markPulled(Integer analystId);
+
+    /**
+     * Records every analyst with at least the threshold number of subscribers as pulled, since their feed cards
+     * are not in their subscribers' timelines.
+     *
+     * @param threshold the fan-out threshold
+     */
+    @Modifying
+    @Query(value = "INSERT INTO pulled_analyst (analyst_id) " +
+            "SELECT s.subscribed_to_id FROM subscription s GROUP BY s.subscribed_to_id HAVING count(*) >= :threshold " +
+            "ON CONFLICT (analyst_id) DO NOTHING", nativeQuery = true)
+    void markAllPulled(long threshold);
+
+    /**
+     * Removes the pulled analyst record of an analyst if the analyst has fewer subscribers than the threshold.
+     * Only one of several concurrent callers gets a count of 1, so only one of them backfills.
+     *
+     * @param analystId id of the analyst
+     * @param threshold the fan-out threshold
+     * @return 1 if the record was removed, 0 otherwise
+     */
+    @Modifying
+    @Query(value = "DELETE FROM pulled_analyst p WHERE p.analyst_id = :analystId " +
+            "AND (SELECT count(*) FROM subscription s WHERE s.subscribed_to_id = :analystId) < :threshold",
+            nativeQuery = true)
+    int releasePulled(Integer analystId, long threshold);
+
+    /**
+     * Removes the pulled analyst records of every analyst with fewer subscribers than the threshold.
+     * Must run in the same transaction as {@link #backfillAll(long)}.
+     *
+     * @param threshold the fan-out threshold
+     */
+    @Modifying
+    @Query(value = "DELETE FROM pulled_analyst p " +
+            "WHERE (SELECT count(*) FROM subscription s WHERE s.subscribed_to_id = p.analyst_id) < :threshold",
+            nativeQuery = true)
+    void releaseAllPulled(long threshold);
+
+    /**
+     * Removes all of an analyst's feed cards from a subscriber's timeline.
+     *
+     * @param subscriberId id of the subscriber
+     * @param analystId    id of the analyst
+     */
+    @Modifying
+    @Query("DELETE FROM TimelineEntry t WHERE t.subscriberId = :subscriberId AND t.analystId = :analystId")
+    void deleteBySubscriberIdAndAnalystId(Integer subscriberId, Integer analystId);
+
+    /**
+     * Removes a feed card from every timeline it has been pushed to.
+     *
+     * @param feedCardId id of the feed card
+     */
+    @Modifying
+    @Query("DELETE FROM TimelineEntry t WHERE t.feedCardId = :feedCardId")
+    void deleteByFeedCardId(Integer feedCardId);
+
+}
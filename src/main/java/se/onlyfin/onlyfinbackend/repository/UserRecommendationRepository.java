@@ -0,0 +1,10 @@
+package se.onlyfin.onlyfinbackend.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import se.onlyfin.onlyfinbackend.model.UserRecommendation;
+
+/**
+ * Repository mapping for the user recommendation table.
+ */
+public interface UserRecommendationRepository extends JpaRepository<UserRecommendation, Integer> {
+}
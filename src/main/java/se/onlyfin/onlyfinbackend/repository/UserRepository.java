@@ -1,8 +1,11 @@
 package se.onlyfin.onlyfinbackend.repository;
 
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
+import se.onlyfin.onlyfinbackend.model.NameById;
 import se.onlyfin.onlyfinbackend.model.User;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -64,4 +67,13 @@ public interface UserRepository extends CrudRepository<User, Integer> {
      * @return up to 7 analysts that start with the given search term
      */
     List<User> findByisAnalystIsTrueAndUsernameIgnoreCaseStartsWith(String search);
+
+    /**
+     * Find the usernames of all users with any of the given ids
+     *
+     * @param ids the ids of the users
+     * @return the ids and usernames of the users that were found
+     */
+    @Query("SELECT u.id AS id, u.username AS name FROM User u WHERE u.id IN :ids")
+    List<NameById> findUsernamesByIdIn(Collection<Integer> ids);
 }
@@ -0,0 +1,233 @@
+package se.onlyfin.onlyfinbackend.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+import se.onlyfin.onlyfinbackend.event.DashboardChangeEvent;
+import se.onlyfin.onlyfinbackend.event.ModuleChangeEvent;
+import se.onlyfin.onlyfinbackend.model.AnalystStockPostCount;
+import se.onlyfin.onlyfinbackend.repository.FeedCardRepository;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.ToIntFunction;
+
+/**
+ * This class keeps a sparse analyst by stock matrix of how many feed cards each analyst has posted about each
+ * stock, so that recommendations can be computed without querying the feed cards of every analyst.
+ * The matrix is stored twice, by analyst and by stock, as immutable pairs of sorted int arrays. Readers never
+ * lock; a change to an analyst's row replaces that row and the columns of the stocks whose counts changed.
+ * The matrix is built on startup with a single grouped query, and an analyst's row is reloaded whenever one of
+ * their modules is created or deleted, their dashboard changes, or their analyst status changes.
+ */
+@Service
+public class AnalystCoverageMatrix {
+    private static final Logger logger = LoggerFactory.getLogger(AnalystCoverageMatrix.class);
+    private final FeedCardRepository feedCardRepository;
+    private final InfluenceService influenceService;
+    private final ConcurrentHashMap<Integer, CoverageVector> rowsByAnalyst = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Integer, CoverageVector> columnsByStock = new ConcurrentHashMap<>();
+
+    public AnalystCoverageMatrix(FeedCardRepository feedCardRepository, InfluenceService influenceService) {
+        this.feedCardRepository = feedCardRepository;
+        this.influenceService = influenceService;
+    }
+
+    /**
+     * Builds the matrix from the feed card table.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void rebuild() {
+        HashMap<Integer, List<AnalystStockPostCount>> countsByAnalyst = new HashMap<>();
+        HashMap<Integer, List<AnalystStockPostCount>> countsByStock = new HashMap<>();
+        for (AnalystStockPostCount count : feedCardRepository.findAnalystStockPostCounts()) {
+            countsByAnalyst.computeIfAbsent(count.getAnalystId(), (key) -> new ArrayList<>()).add(count);
+            countsByStock.computeIfAbsent(count.getStockRefId(), (key) -> new ArrayList<>()).add(count);
+        }
+
+        rowsByAnalyst.clear();
+        columnsByStock.clear();
+        countsByAnalyst.forEach((analystId, counts) ->
+                rowsByAnalyst.put(analystId, CoverageVector.of(counts, AnalystStockPostCount::getStockRefId)));
+        countsByStock.forEach((stockRefId, counts) ->
+                columnsByStock.put(stockRefId, CoverageVector.of(counts, AnalystStockPostCount::getAnalystId)));
+        logger.info("Built coverage matrix for {} analysts and {} stocks", rowsByAnalyst.size(), columnsByStock.size());
+    }
+
+    /**
+     * Reloads an analyst's row from the feed card table.
+     *
+     * @param analystId id of the analyst
+     */
+    public synchronized void refreshAnalyst(Integer analystId) {
+        CoverageVector newRow = CoverageVector.of(feedCardRepository.findStockPostCountsByAnalystId(analystId),
+                AnalystStockPostCount::getStockRefId);
+        CoverageVector oldRow = rowsByAnalyst.getOrDefault(analystId, CoverageVector.EMPTY);
+
+        TreeSet<Integer> stockRefIds = new TreeSet<>();
+        for (int stockRefId : oldRow.keys) {
+            stockRefIds.add(stockRefId);
+        }
+        for (int stockRefId : newRow.keys) {
+            stockRefIds.add(stockRefId);
+        }
+        for (Integer stockRefId : stockRefIds) {
+            int postCount = newRow.get(stockRefId);
+            if (postCount != oldRow.get(stockRefId)) {
+                columnsByStock.compute(stockRefId, (key, column) ->
+                        Objects.requireNonNullElse(column, CoverageVector.EMPTY).with(analystId, postCount));
+            }
+        }
+
+        if (newRow.isEmpty()) {
+            rowsByAnalyst.remove(analystId);
+        } else {
+            rowsByAnalyst.put(analystId, newRow);
+        }
+    }
+
+    /**
+     * Adds up how many feed cards a group of analysts has posted about each stock.
+     *
+     * @param analystIds ids of the analysts
+     * @return map of stock reference ids to the number of feed cards about them
+     */
+    public HashMap<Integer, Integer> stockPostCounts(Collection<Integer> analystIds) {
+        HashMap<Integer, Integer> postCountsByStock = new HashMap<>();
+        for (Integer analystId : analystIds) {
+            CoverageVector row = rowsByAnalyst.get(analystId);
+            if (row == null) {
+                continue;
+            }
+            for (int i = 0; i < row.keys.length; i++) {
+                postCountsByStock.merge(row.keys[i], row.postCounts[i], Integer::sum);
+            }
+        }
+        return postCountsByStock;
+    }
+
+    /**
+     * Finds the analyst who has posted the most about a stock.
+     * Of analysts with the same number of posts, the most influential one is returned.
+     *
+     * @param stockRefId         id of the stock reference
+     * @param excludedAnalystIds analysts that must not be returned
+     * @return id of the analyst, or empty if no other analyst covers the stock
+     */
+    public Optional<Integer> findMostActiveAnalyst(Integer stockRefId, Set<Integer> excludedAnalystIds) {
+        CoverageVector column = columnsByStock.get(stockRefId);
+        if (column == null) {
+            return Optional.empty();
+        }
+
+        int highestPostCount = 0;
+        double highestInfluence = 0;
+        Integer mostActiveAnalystId = null;
+        for (int i = 0; i < column.keys.length; i++) {
+            if (column.postCounts[i] < highestPostCount || excludedAnalystIds.contains(column.keys[i])) {
+                continue;
+            }
+
+            double influence = influenceService.findInfluence(column.keys[i]);
+            if (column.postCounts[i] > highestPostCount || influence > highestInfluence) {
+                highestPostCount = column.postCounts[i];
+                highestInfluence = influence;
+                mostActiveAnalystId = column.keys[i];
+            }
+        }
+        return Optional.ofNullable(mostActiveAnalystId);
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onModuleChange(ModuleChangeEvent event) {
+        if (event.type() != ModuleChangeEvent.Type.UPDATED) {
+            refreshAnalyst(event.analystId());
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onDashboardChange(DashboardChangeEvent event) {
+        refreshAnalyst(event.analystId());
+    }
+
+    /**
+     * One row or column of the matrix: the ids of its non-zero cells in ascending order and their post counts.
+     * Never modified once created.
+     */
+    private static final class CoverageVector {
+        private static final CoverageVector EMPTY = new CoverageVector(new int[0], new int[0]);
+
+        private final int[] keys;
+        private final int[] postCounts;
+
+        private CoverageVector(int[] keys, int[] postCounts) {
+            this.keys = keys;
+            this.postCounts = postCounts;
+        }
+
+        private static CoverageVector of(List<AnalystStockPostCount> counts,
+                                         ToIntFunction<AnalystStockPostCount> keyFunction) {
+            List<AnalystStockPostCount> sortedCounts = new ArrayList<>(counts);
+            sortedCounts.sort(Comparator.comparingInt(keyFunction));
+
+            int[] keys = new int[sortedCounts.size()];
+            int[] postCounts = new int[sortedCounts.size()];
+            for (int i = 0; i < sortedCounts.size(); i++) {
+                keys[i] = keyFunction.applyAsInt(sortedCounts.get(i));
+                postCounts[i] = sortedCounts.get(i).getPostCount();
+            }
+            return new CoverageVector(keys, postCounts);
+        }
+
+        private boolean isEmpty() {
+            return keys.length == 0;
+        }
+
+        private int get(int key) {
+            int index = Arrays.binarySearch(keys, key);
+            return (index < 0) ? 0 : postCounts[index];
+        }
+
+        /**
+         * @return a copy with the cell set to the post count, removed if the count is zero, or null if the copy
+         * would be empty
+         */
+        private CoverageVector with(int key, int postCount) {
+            int index = Arrays.binarySearch(keys, key);
+            int[] newKeys;
+            int[] newPostCounts;
+            if (index >= 0 && postCount > 0) {
+                newKeys = keys;
+                newPostCounts = postCounts.clone();
+                newPostCounts[index] = postCount;
+            } else if (index >= 0) {
+                if (keys.length == 1) {
+                    return null;
+                }
+                newKeys = new int[keys.length - 1];
+                newPostCounts = new int[keys.length - 1];
+                System.arraycopy(keys, 0, newKeys, 0, index);
+                System.arraycopy(keys, index + 1, newKeys, index, keys.length - index - 1);
+                System.arraycopy(postCounts, 0, newPostCounts, 0, index);
+                System.arraycopy(postCounts, index + 1, newPostCounts, index, keys.length - index - 1);
+            } else if (postCount > 0) {
+                int insertionPoint = -index - 1;
+                newKeys = new int[keys.length + 1];
+                newPostCounts = new int[keys.length + 1];
+                System.arraycopy(keys, 0, newKeys, 0, insertionPoint);
+                System.arraycopy(postCounts, 0, newPostCounts, 0, insertionPoint);
+                newKeys[insertionPoint] = key;
+                newPostCounts[insertionPoint] = postCount;
+                System.arraycopy(keys, insertionPoint, newKeys, insertionPoint + 1, keys.length - insertionPoint);
+                System.arraycopy(postCounts, insertionPoint, newPostCounts, insertionPoint + 1, keys.length - insertionPoint);
+            } else {
+                return isEmpty() ? null : this;
+            }
+            return new CoverageVector(newKeys, newPostCounts);
+        }
+    }
+
+}
@@ -0,0 +1,357 @@
+package se.onlyfin.onlyfinbackend.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+import se.onlyfin.onlyfinbackend.event.SubscriptionChangeEvent;
+
+import java.util.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * This class recommends analysts from the subscription graph: "users who subscribe to A also subscribe to B".
+ * For every pair of analysts it counts the users subscribed to both, and scores a candidate by how often it is
+ * co-subscribed with the analysts the user already follows, normalized by how many subscribers both have.
+ * Candidates that are co-subscribed with the best of those candidates are added at a lower weight, which reaches
+ * analysts two hops away.
+ * The graph is loaded once on startup and then kept up to date by subscription changes. All counts are held in
+ * open-addressing int to int maps, so a recommendation is computed in memory and only looks at the neighbours of
+ * the user's subscriptions and of a bounded number of first-hop candidates.
+ */
+@Service
+public class CoSubscriptionRecommender {
+    private static final Logger logger = LoggerFactory.getLogger(CoSubscriptionRecommender.class);
+    private static final int MAX_SEEDS = 100;
+    private static final int MAX_SECOND_HOP_SEEDS = 10;
+    private static final double SECOND_HOP_WEIGHT = 0.5;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final HashMap<Integer, IntCountMap> subscriptionsByUser = new HashMap<>();
+    private final HashMap<Integer, IntCountMap> coSubscriptionsByAnalyst = new HashMap<>();
+    private final IntCountMap subscriberCounts = new IntCountMap();
+
+    public CoSubscriptionRecommender(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Loads the subscription graph and counts co-subscriptions.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        HashMap<Integer, List<Integer>> subscribedToIdsBySubscriber = new HashMap<>();
+        try {
+            jdbcTemplate.query("SELECT subscriber_id, subscribed_to_id FROM subscription", (resultSet) -> {
+                subscribedToIdsBySubscriber
+                        .computeIfAbsent(resultSet.getInt("subscriber_id"), (key) -> new ArrayList<>())
+                        .add(resultSet.getInt("subscribed_to_id"));
+            });
+        } catch (DataAccessException e) {
+            logger.error("Could not load subscription graph", e);
+            return;
+        }
+
+        lock.writeLock().lock();
+        try {
+            subscriptionsByUser.clear();
+            coSubscriptionsByAnalyst.clear();
+            subscriberCounts.clear();
+            subscribedToIdsBySubscriber.forEach((subscriberId, subscribedToIds) -> {
+                for (Integer subscribedToId : subscribedToIds) {
+                    addSubscription(subscriberId, subscribedToId);
+                }
+            });
+        } finally {
+            lock.writeLock().unlock();
+        }
+        logger.info("Loaded subscription graph with {} subscribers", subscribedToIdsBySubscriber.size());
+    }
+
+    /**
+     * Updates co-subscription counts when a user subscribes or unsubscribes.
+     *
+     * @param event the subscription change
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onSubscriptionChange(SubscriptionChangeEvent event) {
+        lock.writeLock().lock();
+        try {
+            if (event.subscribed()) {
+                addSubscription(event.subscriberId(), event.subscribedToId());
+            } else {
+                removeSubscription(event.subscriberId(), event.subscribedToId());
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Recommends analysts that are often subscribed to together with the user's subscriptions.
+     *
+     * @param userId id of the user
+     * @param limit  maximum number of analysts to recommend
+     * @return ids of the recommended analysts, best first, or empty if the user isn't subscribed to anyone
+     */
+    public List<Integer> recommend(Integer userId, int limit) {
+        lock.readLock().lock();
+        try {
+            IntCountMap subscriptions = subscriptionsByUser.get(userId);
+            if (subscriptions == null || subscriptions.size() == 0) {
+                return List.of();
+            }
+
+            // the user's most subscribed-to analysts are the strongest signals
+            List<Integer> seeds = subscriptions.keys();
+            if (seeds.size() > MAX_SEEDS) {
+                seeds.sort(Comparator.comparingInt(subscriberCounts::get).reversed());
+                seeds = seeds.subList(0, MAX_SEEDS);
+            }
+
+            HashMap<Integer, Double> firstHopScores = new HashMap<>();
+            for (Integer seed : seeds) {
+                addNeighbourScores(userId, subscriptions, seed, 1.0, firstHopScores);
+            }
+
+            HashMap<Integer, Double> scores = new HashMap<>(firstHopScores);
+            for (Map.Entry<Integer, Double> firstHop : topK(firstHopScores, MAX_SECOND_HOP_SEEDS)) {
+                addNeighbourScores(userId, subscriptions, firstHop.getKey(),
+                        SECOND_HOP_WEIGHT * firstHop.getValue(), scores);
+            }
+
+            List<Integer> recommendedIds = new ArrayList<>(Math.min(limit, scores.size()));
+            for (Map.Entry<Integer, Double> candidate : topK(scores, limit)) {
+                recommendedIds.add(candidate.getKey());
+            }
+            return recommendedIds;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Adds the weighted cosine similarity between an analyst and each of its co-subscribed analysts to their
+     * scores, skipping the user and analysts the user is already subscribed to.
+     */
+    private void addNeighbourScores(Integer userId, IntCountMap subscriptions, int analystId, double weight,
+                                    HashMap<Integer, Double> scores) {
+        IntCountMap coSubscriptions = coSubscriptionsByAnalyst.get(analystId);
+        if (coSubscriptions == null) {
+            return;
+        }
+
+        double analystSubscribers = subscriberCounts.get(analystId);
+        coSubscriptions.forEach((candidateId, coSubscriberCount) -> {
+            if (candidateId == userId || subscriptions.get(candidateId) > 0) {
+                return;
+            }
+            double similarity = coSubscriberCount / Math.sqrt(analystSubscribers * subscriberCounts.get(candidateId));
+            scores.merge(candidateId, weight * similarity, Double::sum);
+        });
+    }
+
+    private void addSubscription(int subscriberId, int subscribedToId) {
+        IntCountMap subscriptions = subscriptionsByUser.computeIfAbsent(subscriberId, (key) -> new IntCountMap());
+        if (subscriptions.get(subscribedToId) > 0) {
+            return;
+        }
+
+        subscriptions.forEach((otherId, ignored) -> {
+            coSubscriptionsByAnalyst.computeIfAbsent(subscribedToId, (key) -> new IntCountMap()).add(otherId, 1);
+            coSubscriptionsByAnalyst.computeIfAbsent(otherId, (key) -> new IntCountMap()).add(subscribedToId, 1);
+        });
+        subscriptions.add(subscribedToId, 1);
+        subscriberCounts.add(subscribedToId, 1);
+    }
+
+    private void removeSubscription(int subscriberId, int subscribedToId) {
+        IntCountMap subscriptions = subscriptionsByUser.get(subscriberId);
+        if (subscriptions == null || subscriptions.get(subscribedToId) == 0) {
+            return;
+        }
+
+        subscriptions.add(subscribedToId, -1);
+        subscriberCounts.add(subscribedToId, -1);
+        subscriptions.forEach((otherId, ignored) -> {
+            decrementCoSubscription(subscribedToId, otherId);
+            decrementCoSubscription(otherId, subscribedToId);
+        });
+        if (subscriptions.size() == 0) {
+            subscriptionsByUser.remove(subscriberId);
+        }
+    }
+
+    private void decrementCoSubscription(int analystId, int otherId) {
+        IntCountMap coSubscriptions = coSubscriptionsByAnalyst.get(analystId);
+        if (coSubscriptions == null) {
+            return;
+        }
+        coSubscriptions.add(otherId, -1);
+        if (coSubscriptions.size() == 0) {
+            coSubscriptionsByAnalyst.remove(analystId);
+        }
+    }
+
+    private static List<Map.Entry<Integer, Double>> topK(HashMap<Integer, Double> scores, int k) {
+        PriorityQueue<Map.Entry<Integer, Double>> best = new PriorityQueue<>(Math.max(1, k),
+                Map.Entry.comparingByValue());
+        for (Map.Entry<Integer, Double> entry : scores.entrySet()) {
+            if (best.size() < k) {
+                best.add(entry);
+            } else if (k > 0 && entry.getValue() > best.peek().getValue()) {
+                best.poll();
+                best.add(entry);
+            }
+        }
+
+        List<Map.Entry<Integer, Double>> sorted = new ArrayList<>(best);
+        sorted.sort(Map.Entry.<Integer, Double>comparingByValue().reversed());
+        return sorted;
+    }
+
+    /**
+     * Receives the entries of an {@link IntCountMap}.
+     */
+    @FunctionalInterface
+    interface IntCountConsumer {
+        void accept(int key, int count);
+    }
+
+    /**
+     * A map from int keys to positive int counts, stored in two arrays with linear probing.
+     * A count that drops to zero removes its key. Not thread-safe.
+     */
+    static final class IntCountMap {
+        private static final int FREE = Integer.MIN_VALUE;
+
+        private int[] keys;
+        private int[] counts;
+        private int size;
+
+        IntCountMap() {
+            clear();
+        }
+
+        void clear() {
+            keys = new int[4];
+            counts = new int[4];
+            Arrays.fill(keys, FREE);
+            size = 0;
+        }
+
+        int size() {
+            return size;
+        }
+
+        int get(int key) {
+            int mask = keys.length - 1;
+            for (int slot = slotOf(key, mask); keys[slot] != FREE; slot = (slot + 1) & mask) {
+                if (keys[slot] == key) {
+                    return counts[slot];
+                }
+            }
+            return 0;
+        }
+
+        /**
+         * Adds to the count of a key, inserting the key if it is missing and removing it if the count reaches zero.
+         */
+        void add(int key, int delta) {
+            int mask = keys.length - 1;
+            int slot = slotOf(key, mask);
+            while (keys[slot] != FREE && keys[slot] != key) {
+                slot = (slot + 1) & mask;
+            }
+
+            if (keys[slot] == FREE) {
+                if (delta <= 0) {
+                    return;
+                }
+                keys[slot] = key;
+                counts[slot] = delta;
+                if (++size * 2 > keys.length) {
+                    resize(keys.length * 2);
+                }
+                return;
+            }
+
+            counts[slot] += delta;
+            if (counts[slot] <= 0) {
+                removeAt(slot);
+            }
+        }
+
+        List<Integer> keys() {
+            List<Integer> presentKeys = new ArrayList<>(size);
+            for (int key : keys) {
+                if (key != FREE) {
+                    presentKeys.add(key);
+                }
+            }
+            return presentKeys;
+        }
+
+        void forEach(IntCountConsumer consumer) {
+            for (int slot = 0; slot < keys.length; slot++) {
+                if (keys[slot] != FREE) {
+                    consumer.accept(keys[slot], counts[slot]);
+                }
+            }
+        }
+
+        /**
+         * Empties a slot and moves later entries of the same probe run back, so that lookups never stop early.
+         */
+        private void removeAt(int slot) {
+            int mask = keys.length - 1;
+            keys[slot] = FREE;
+            size--;
+
+            int next = (slot + 1) & mask;
+            while (keys[next] != FREE) {
+                int home = slotOf(keys[next], mask);
+                // the entry can move into the gap unless its home lies cyclically after the gap
+                boolean homeAfterGap = (slot <= next) ? (slot < home && home <= next) : (slot < home || home <= next);
+                if (!homeAfterGap) {
+                    keys[slot] = keys[next];
+                    counts[slot] = counts[next];
+                    keys[next] = FREE;
+                    slot = next;
+                }
+                next = (next + 1) & mask;
+            }
+        }
+
+        private void resize(int capacity) {
+            int[] oldKeys = keys;
+            int[] oldCounts = counts;
+            keys = new int[capacity];
+            counts = new int[capacity];
+            Arrays.fill(keys, FREE);
+
+            int mask = capacity - 1;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != FREE) {
+                    int slot = slotOf(oldKeys[i], mask);
+                    while (keys[slot] != FREE) {
+                        slot = (slot + 1) & mask;
+                    }
+                    keys[slot] = oldKeys[i];
+                    counts[slot] = oldCounts[i];
+                }
+            }
+        }
+
+        private static int slotOf(int key, int mask) {
+            int hash = key * 0x9E3779B9;
+            return (hash ^ (hash >>> 16)) & mask;
+        }
+    }
+
+}
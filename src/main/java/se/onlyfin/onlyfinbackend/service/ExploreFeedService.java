@@ -0,0 +1,111 @@
+package se.onlyfin.onlyfinbackend.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.util.DigestUtils;
+import se.onlyfin.onlyfinbackend.DTO.FeedCardDTO;
+import se.onlyfin.onlyfinbackend.model.FeedCard;
+import se.onlyfin.onlyfinbackend.repository.FeedCardRepository;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * This class keeps the public explore feed, the latest feed cards of all analysts, as a ready-made response.
+ * The feed is read and serialized once per refresh interval into an immutable snapshot that every anonymous
+ * request shares, so the number of visitors doesn't affect how often the database is queried.
+ * Dates in the snapshot are formatted in the default timezone since the snapshot is the same for everyone.
+ */
+@Service
+public class ExploreFeedService {
+    private static final Logger logger = LoggerFactory.getLogger(ExploreFeedService.class);
+    private final FeedCardRepository feedCardRepository;
+    private final FeedNameDictionary feedNameDictionary;
+    private final ObjectMapper objectMapper;
+    private final int size;
+    private final Duration refreshInterval;
+    private final AtomicReference<Snapshot> currentSnapshot = new AtomicReference<>();
+
+    public ExploreFeedService(FeedCardRepository feedCardRepository, FeedNameDictionary feedNameDictionary,
+                              ObjectMapper objectMapper, @Value("${onlyfin.feed.explore.size:50}") int size,
+                              @Value("${onlyfin.feed.explore.refresh-millis:30000}") long refreshMillis) {
+        this.feedCardRepository = feedCardRepository;
+        this.feedNameDictionary = feedNameDictionary;
+        this.objectMapper = objectMapper;
+        this.size = size;
+        this.refreshInterval = Duration.ofMillis(refreshMillis);
+    }
+
+    /**
+     * @return how often the snapshot is replaced
+     */
+    public Duration getRefreshInterval() {
+        return refreshInterval;
+    }
+
+    /**
+     * @return the latest snapshot, built right away if there is none yet
+     */
+    public Snapshot currentSnapshot() {
+        Snapshot snapshot = currentSnapshot.get();
+        if (snapshot != null) {
+            return snapshot;
+        }
+
+        synchronized (this) {
+            snapshot = currentSnapshot.get();
+            if (snapshot == null) {
+                snapshot = buildSnapshot();
+                currentSnapshot.set(snapshot);
+            }
+            return snapshot;
+        }
+    }
+
+    /**
+     * Replaces the snapshot with a fresh one. The old snapshot is kept if the new one can't be built.
+     */
+    @Scheduled(fixedDelayString = "${onlyfin.feed.explore.refresh-millis:30000}")
+    public void refresh() {
+        try {
+            currentSnapshot.set(buildSnapshot());
+        } catch (DataAccessException | IllegalStateException e) {
+            logger.error("Could not refresh explore feed", e);
+        }
+    }
+
+    private Snapshot buildSnapshot() {
+        List<FeedCard> feedCards = feedCardRepository.findAllByOrderByPostDateDescIdDesc(PageRequest.ofSize(size));
+        List<FeedCardDTO> feedCardDTOs = feedNameDictionary.toFeedCardDTOs(feedCards, null);
+
+        byte[] body;
+        try {
+            body = objectMapper.writeValueAsBytes(feedCardDTOs);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not serialize explore feed", e);
+        }
+
+        return new Snapshot(body, DigestUtils.md5DigestAsHex(body), feedCardDTOs.size(), Instant.now());
+    }
+
+    /**
+     * A serialized explore feed. The body must not be modified.
+     *
+     * @param body          the feed cards as a JSON array
+     * @param eTag          hash of the body
+     * @param feedCardCount number of feed cards in the body
+     * @param createdAt     the date the snapshot was built
+     */
+    public record Snapshot(byte[] body, String eTag, int feedCardCount, Instant createdAt) {
+    }
+
+}
@@ -0,0 +1,126 @@
+package se.onlyfin.onlyfinbackend.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import se.onlyfin.onlyfinbackend.repository.FeedCardRepository;
+
+import java.util.List;
+
+/**
+ * This class owns the feed card table, a copy of every module together with its analyst id, stock id and category.
+ * The studio write path keeps the table up to date in the same transaction as the change to the module, and bumps
+ * the analyst's feed version along with it; a rebuild bumps the version of every analyst.
+ * On the first start where feed_card is still a view, or still a table keyed by analyst and stock names, it is
+ * replaced by a table filled from the dashboard tables. This happens once all beans are created, before scheduled
+ * jobs, ready listeners and the web server start, so nothing reads the old relation after startup.
+ * Starting the application with --rebuild-feed-cards refills the table from the dashboard tables once, which
+ * repairs rows that were changed outside the studio endpoints.
+ */
+@Service
+public class FeedCardProjectionService implements SmartInitializingSingleton {
+    private static final Logger logger = LoggerFactory.getLogger(FeedCardProjectionService.class);
+    private static final String REBUILD_OPTION = "rebuild-feed-cards";
+
+    private static final List<String> INDEX_DEFINITIONS = List.of(
+            "CREATE INDEX IF NOT EXISTS idx_feed_card_analyst_id_post_date ON feed_card (analyst_id, post_date, id)",
+            "CREATE INDEX IF NOT EXISTS idx_feed_card_analyst_id_updated_date ON feed_card (analyst_id, updated_date, id)",
+            "CREATE INDEX IF NOT EXISTS idx_feed_card_post_date ON feed_card (post_date, id)",
+            "CREATE INDEX IF NOT EXISTS idx_feed_card_stock_ref_post_date ON feed_card (stock_ref_id, post_date, id)",
+            "CREATE INDEX IF NOT EXISTS idx_feed_card_category_post_date ON feed_card (category_id, post_date, id)",
+            "CREATE INDEX IF NOT EXISTS idx_feed_card_type_post_date ON feed_card (module_type, post_date, id)");
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final FeedVersionService feedVersionService;
+    private final ApplicationArguments applicationArguments;
+
+    public FeedCardProjectionService(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+                                     FeedVersionService feedVersionService,
+                                     ApplicationArguments applicationArguments) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.feedVersionService = feedVersionService;
+        this.applicationArguments = applicationArguments;
+    }
+
+    /**
+     * Replaces an outdated feed_card view or table on startup, and rebuilds the table if asked to.
+     * A failed migration fails the startup, since every feed read depends on the table.
+     */
+    @Override
+    public void afterSingletonsInstantiated() {
+        String relationKind = jdbcTemplate.queryForObject(
+                "SELECT CAST(c.relkind AS text) FROM pg_class c WHERE c.oid = to_regclass('feed_card')", String.class);
+        if ("v".equals(relationKind) || hasNameColumns()) {
+            transactionTemplate.executeWithoutResult((status) -> recreateTable("v".equals(relationKind)));
+            logger.info("Recreated feed_card table keyed by analyst and stock ids");
+        } else if (applicationArguments.containsOption(REBUILD_OPTION)) {
+            logger.info("Rebuilt feed_card with {} rows", rebuild());
+        }
+    }
+
+    /**
+     * Refills the feed card table from the dashboard tables in a single transaction.
+     * Readers keep seeing the old rows until the rebuild commits, and studio writes wait for it.
+     *
+     * @return the number of feed cards
+     */
+    public int rebuild() {
+        Integer rowCount = transactionTemplate.execute((status) -> {
+            jdbcTemplate.execute("LOCK TABLE feed_card IN SHARE ROW EXCLUSIVE MODE");
+            jdbcTemplate.update("DELETE FROM feed_card");
+            int rowCount = fill();
+            feedVersionService.bumpAll();
+            return rowCount;
+        });
+        return (rowCount == null) ? 0 : rowCount;
+    }
+
+    /**
+     * @return whether feed_card still has the analyst_username column of the table that stored names
+     */
+    private boolean hasNameColumns() {
+        Integer columnCount = jdbcTemplate.queryForObject(
+                "SELECT count(*) FROM information_schema.columns " +
+                        "WHERE table_name = 'feed_card' AND column_name = 'analyst_username'", Integer.class);
+        return columnCount != null && columnCount > 0;
+    }
+
+    /**
+     * Drops the old feed_card view or table, creates the table keyed by ids and fills it.
+     * Must run inside a transaction so that a failure leaves the old relation in place.
+     *
+     * @param isView whether feed_card is currently a view
+     */
+    private void recreateTable(boolean isView) {
+        jdbcTemplate.execute(isView ? "DROP VIEW feed_card" : "DROP TABLE feed_card");
+        jdbcTemplate.execute("CREATE TABLE feed_card (" +
+                "id integer PRIMARY KEY, " +
+                "analyst_id integer, " +
+                "stock_ref_id integer, " +
+                "category_name varchar(255), " +
+                "category_id integer, " +
+                "module_type varchar(255), " +
+                "content jsonb, " +
+                "post_date timestamp(6) with time zone, " +
+                "updated_date timestamp(6) with time zone)");
+        fill();
+        feedVersionService.bumpAll();
+
+        for (String indexDefinition : INDEX_DEFINITIONS) {
+            jdbcTemplate.execute(indexDefinition);
+        }
+    }
+
+    private int fill() {
+        return jdbcTemplate.update("INSERT INTO feed_card (" + FeedCardRepository.FEED_CARD_COLUMNS + ") " +
+                FeedCardRepository.FEED_CARD_SOURCE);
+    }
+
+}
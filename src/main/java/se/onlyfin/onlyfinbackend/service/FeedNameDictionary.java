@@ -0,0 +1,163 @@
+package se.onlyfin.onlyfinbackend.service;
+
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Service;
+import se.onlyfin.onlyfinbackend.DTO.FeedCardDTO;
+import se.onlyfin.onlyfinbackend.model.FeedCard;
+import se.onlyfin.onlyfinbackend.model.NameById;
+import se.onlyfin.onlyfinbackend.repository.StockRefRepository;
+import se.onlyfin.onlyfinbackend.repository.UserRepository;
+
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * This class turns the analyst and stock ids that feed cards are keyed by into the names they are shown with.
+ * Every name is held once and shared by all feed cards that show it. Names that are missing are loaded in one
+ * query per batch of feed cards, so mapping a page of feed cards costs at most two small queries.
+ * Usernames and stock names don't change once created, so a name only has to be evicted when its user is deleted.
+ */
+@Service
+public class FeedNameDictionary {
+    private final UserRepository userRepository;
+    private final StockRefRepository stockRefRepository;
+    private final Map<Integer, String> analystNames = new ConcurrentHashMap<>();
+    private final Map<Integer, String> stockNames = new ConcurrentHashMap<>();
+    private final Map<String, Integer> stockIdsByName = new ConcurrentHashMap<>();
+
+    public FeedNameDictionary(UserRepository userRepository, StockRefRepository stockRefRepository) {
+        this.userRepository = userRepository;
+        this.stockRefRepository = stockRefRepository;
+    }
+
+    /**
+     * @param analystId id of the analyst
+     * @return the analyst's username, or null if there is no such user
+     */
+    public String analystName(Integer analystId) {
+        loadAnalystNames(List.of(analystId));
+        return analystNames.get(analystId);
+    }
+
+    /**
+     * @param stockRefId id of the stock reference
+     * @return the name of the stock, or null if there is no such stock
+     */
+    public String stockName(Integer stockRefId) {
+        loadStockNames(List.of(stockRefId));
+        return stockNames.get(stockRefId);
+    }
+
+    /**
+     * @param stockName exact name of the stock
+     * @return id of the stock reference with the name, if there is one
+     */
+    public Optional<Integer> findStockRefId(String stockName) {
+        Integer stockRefId = stockIdsByName.get(stockName);
+        if (stockRefId != null) {
+            return Optional.of(stockRefId);
+        }
+
+        return stockRefRepository.findStockRefByName(stockName).map((stockRef) -> {
+            stockNames.putIfAbsent(stockRef.getId(), stockRef.getName());
+            stockIdsByName.putIfAbsent(stockRef.getName(), stockRef.getId());
+            return stockRef.getId();
+        });
+    }
+
+    /**
+     * Forgets an analyst's name, so that it is looked up again the next time it is shown.
+     *
+     * @param analystId id of the analyst
+     */
+    public void evictAnalyst(Integer analystId) {
+        analystNames.remove(analystId);
+    }
+
+    /**
+     * Loads the names of any of the given analysts that are not known yet.
+     *
+     * @param analystIds ids of the analysts
+     */
+    public void loadAnalystNames(Collection<Integer> analystIds) {
+        load(analystIds, analystNames, userRepository::findUsernamesByIdIn);
+    }
+
+    /**
+     * Loads the names of any of the given stocks that are not known yet.
+     *
+     * @param stockRefIds ids of the stock references
+     */
+    public void loadStockNames(Collection<Integer> stockRefIds) {
+        load(stockRefIds, stockNames, (missingIds) -> {
+            List<NameById> names = stockRefRepository.findNamesByIdIn(missingIds);
+            for (NameById name : names) {
+                stockIdsByName.putIfAbsent(name.getName(), name.getId());
+            }
+            return names;
+        });
+    }
+
+    /**
+     * Creates a feed card DTO, looking up the names it shows.
+     *
+     * @param feedCard the feed card
+     * @param zoneId   timezone to format dates in
+     * @return the feed card DTO
+     */
+    public FeedCardDTO toFeedCardDTO(FeedCard feedCard, @Nullable ZoneId zoneId) {
+        return FeedCardDTO.fromFeedCard(feedCard, analystName(feedCard.getAnalystId()),
+                stockName(feedCard.getStockRefId()), zoneId);
+    }
+
+    /**
+     * Creates feed card DTOs, loading the missing names of all feed cards at once.
+     *
+     * @param feedCards the feed cards
+     * @param zoneId    timezone to format dates in
+     * @return the feed card DTOs in the same order
+     */
+    public List<FeedCardDTO> toFeedCardDTOs(List<FeedCard> feedCards, @Nullable ZoneId zoneId) {
+        Set<Integer> analystIds = new HashSet<>();
+        Set<Integer> stockRefIds = new HashSet<>();
+        for (FeedCard feedCard : feedCards) {
+            analystIds.add(feedCard.getAnalystId());
+            stockRefIds.add(feedCard.getStockRefId());
+        }
+        loadAnalystNames(analystIds);
+        loadStockNames(stockRefIds);
+
+        List<FeedCardDTO> feedCardDTOs = new ArrayList<>(feedCards.size());
+        for (FeedCard feedCard : feedCards) {
+            feedCardDTOs.add(FeedCardDTO.fromFeedCard(feedCard, analystNames.get(feedCard.getAnalystId()),
+                    stockNames.get(feedCard.getStockRefId()), zoneId));
+        }
+        return feedCardDTOs;
+    }
+
+    private static void load(Collection<Integer> ids, Map<Integer, String> names,
+                             Function<Collection<Integer>, List<NameById>> loader) {
+        Set<Integer> missingIds = new HashSet<>();
+        for (Integer id : ids) {
+            if (id != null && !names.containsKey(id)) {
+                missingIds.add(id);
+            }
+        }
+        if (missingIds.isEmpty()) {
+            return;
+        }
+
+        for (NameById name : loader.apply(missingIds)) {
+            names.putIfAbsent(name.getId(), name.getName());
+        }
+    }
+
+}
@@ -0,0 +1,266 @@
+package se.onlyfin.onlyfinbackend.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.event.TransactionalEventListener;
+import se.onlyfin.onlyfinbackend.event.ModuleChangeEvent;
+import se.onlyfin.onlyfinbackend.event.SubscriptionChangeEvent;
+import se.onlyfin.onlyfinbackend.model.FeedCard;
+import se.onlyfin.onlyfinbackend.model.FeedInteraction;
+import se.onlyfin.onlyfinbackend.model.SubscriberCount;
+import se.onlyfin.onlyfinbackend.model.Subscription;
+import se.onlyfin.onlyfinbackend.model.User;
+import se.onlyfin.onlyfinbackend.repository.FeedCardRepository;
+import se.onlyfin.onlyfinbackend.repository.FeedInteractionRepository;
+import se.onlyfin.onlyfinbackend.repository.SubscriptionRepository;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+
+/**
+ * This class ranks a subscriber's feed by relevance instead of by post-date.
+ * A feed card's relevance is its analyst's weight decayed by the card's age, where the weight grows with the
+ * analyst's number of subscribers and with how often the subscriber has opened the analyst's cards before.
+ * Scores are kept as logarithms relative to the epoch, ln(weight) + ln(2) * postDate / halfLife, so the order
+ * of two cards never changes as time passes and a score only has to be computed once per card.
+ * Every subscriber that has read the ranked feed gets a bounded top-K of feed card ids. New posts are scored
+ * and offered to the top-Ks of the analyst's subscribers as they are created. Subscription changes and
+ * interactions change the weights, so they drop the subscriber's top-K and it is ranked again on the next read.
+ */
+@Service
+public class FeedRankingService {
+    private static final double LN_2 = Math.log(2);
+
+    private final FeedCardRepository feedCardRepository;
+    private final SubscriptionRepository subscriptionRepository;
+    private final FeedInteractionRepository feedInteractionRepository;
+    private final double halfLifeSeconds;
+    private final int topK;
+    private final int candidateLimit;
+    private final Duration timeToLive;
+    private final Map<Integer, RankedFeed> rankedFeeds;
+
+    public FeedRankingService(FeedCardRepository feedCardRepository, SubscriptionRepository subscriptionRepository,
+                              FeedInteractionRepository feedInteractionRepository,
+                              @Value("${onlyfin.feed.ranking.half-life-hours:24}") double halfLifeHours,
+                              @Value("${onlyfin.feed.ranking.top-k:200}") int topK,
+                              @Value("${onlyfin.feed.ranking.candidate-limit:1000}") int candidateLimit,
+                              @Value("${onlyfin.feed.ranking.ttl-minutes:30}") long timeToLiveMinutes,
+                              @Value("${onlyfin.feed.ranking.max-subscribers:10000}") int maxSubscribers) {
+        this.feedCardRepository = feedCardRepository;
+        this.subscriptionRepository = subscriptionRepository;
+        this.feedInteractionRepository = feedInteractionRepository;
+        this.halfLifeSeconds = halfLifeHours * 3600;
+        this.topK = topK;
+        this.candidateLimit = candidateLimit;
+        this.timeToLive = Duration.ofMinutes(timeToLiveMinutes);
+        this.rankedFeeds = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, RankedFeed> eldest) {
+                return size() > maxSubscribers;
+            }
+        });
+    }
+
+    /**
+     * Finds a slice of the ids of a subscriber's feed cards ordered by descending relevance.
+     * Only the top-K feed cards are ranked, so offsets past the top-K return nothing.
+     *
+     * @param subscriber    the subscribing user
+     * @param subscriptions the subscriber's subscriptions
+     * @param offset        number of feed cards to skip
+     * @param limit         maximum number of feed card ids to return
+     * @return feed card ids, most relevant first
+     */
+    public List<Integer> rankedFeedCardIds(User subscriber, List<Subscription> subscriptions, int offset, int limit) {
+        RankedFeed rankedFeed = rankedFeeds.get(subscriber.getId());
+        if (rankedFeed == null || rankedFeed.isExpired()) {
+            rankedFeed = rank(subscriber, subscriptions);
+        }
+
+        return rankedFeed.slice(offset, limit);
+    }
+
+    /**
+     * This method counts one interaction of a user with a feed card posted by an analyst.
+     * The user's top-K is dropped since the analyst's weight has changed.
+     *
+     * @param userId    id of the user
+     * @param analystId id of the analyst who posted the feed card
+     */
+    @Transactional
+    public void recordInteraction(Integer userId, Integer analystId) {
+        feedInteractionRepository.recordInteraction(userId, analystId);
+        rankedFeeds.remove(userId);
+    }
+
+    /**
+     * Offers created feed cards to the top-Ks of the analyst's subscribers and removes deleted ones.
+     * Updates don't change the post-date or the analyst, so they don't change the order.
+     *
+     * @param event the module change
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onModuleChange(ModuleChangeEvent event) {
+        List<RankedFeed> affectedFeeds = new ArrayList<>();
+        synchronized (rankedFeeds) {
+            for (RankedFeed rankedFeed : rankedFeeds.values()) {
+                if (rankedFeed.logWeightByAnalyst.containsKey(event.analystId())) {
+                    affectedFeeds.add(rankedFeed);
+                }
+            }
+        }
+        if (affectedFeeds.isEmpty()) {
+            return;
+        }
+
+        if (event.type() == ModuleChangeEvent.Type.DELETED) {
+            for (RankedFeed rankedFeed : affectedFeeds) {
+                if (rankedFeed.remove(event.moduleId()) && rankedFeed.truncated) {
+                    // the card that should move up into the top-K was never kept
+                    rankedFeeds.remove(rankedFeed.subscriberId);
+                }
+            }
+        } else if (event.type() == ModuleChangeEvent.Type.CREATED) {
+            Optional<FeedCard> feedCardOptional = feedCardRepository.findById(event.moduleId());
+            if (feedCardOptional.isEmpty()) {
+                return;
+            }
+            FeedCard feedCard = feedCardOptional.get();
+            for (RankedFeed rankedFeed : affectedFeeds) {
+                rankedFeed.offer(feedCard.getId(), score(rankedFeed.logWeightByAnalyst.get(event.analystId()), feedCard));
+            }
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onSubscriptionChange(SubscriptionChangeEvent event) {
+        rankedFeeds.remove(event.subscriberId());
+    }
+
+    /**
+     * Ranks the newest candidate feed cards of a subscriber and keeps the top-K.
+     * The top-K is registered before the candidates are read, so posts created meanwhile are offered to it
+     * and not lost.
+     *
+     * @param subscriber    the subscribing user
+     * @param subscriptions the subscriber's subscriptions
+     * @return the subscriber's top-K
+     */
+    private RankedFeed rank(User subscriber, List<Subscription> subscriptions) {
+        HashSet<Integer> analystIds = new HashSet<>();
+        for (Subscription subscription : subscriptions) {
+            analystIds.add(subscription.getSubscribedTo().getId());
+        }
+
+        HashMap<Integer, Long> subscriberCountByAnalyst = new HashMap<>();
+        if (!analystIds.isEmpty()) {
+            for (SubscriberCount subscriberCount : subscriptionRepository.countSubscribersBySubscribedToIdIn(analystIds)) {
+                subscriberCountByAnalyst.put(subscriberCount.getAnalystId(), subscriberCount.getSubscriberCount());
+            }
+        }
+        HashMap<Integer, Integer> interactionCountByAnalyst = new HashMap<>();
+        for (FeedInteraction interaction : feedInteractionRepository.findByUserId(subscriber.getId())) {
+            interactionCountByAnalyst.put(interaction.getAnalystId(), interaction.getInteractionCount());
+        }
+
+        HashMap<Integer, Double> logWeightByAnalyst = new HashMap<>();
+        for (Integer analystId : analystIds) {
+            double popularity = 1 + Math.log1p(subscriberCountByAnalyst.getOrDefault(analystId, 0L));
+            double affinity = 1 + Math.log1p(interactionCountByAnalyst.getOrDefault(analystId, 0));
+            logWeightByAnalyst.put(analystId, Math.log(popularity * affinity));
+        }
+
+        RankedFeed rankedFeed = new RankedFeed(subscriber.getId(), logWeightByAnalyst, topK, Instant.now().plus(timeToLive));
+        rankedFeeds.put(subscriber.getId(), rankedFeed);
+
+        if (!analystIds.isEmpty()) {
+            List<FeedCard> candidates = feedCardRepository.findSubscriptionFeed(
+                    subscriber, PageRequest.ofSize(candidateLimit)).getContent();
+            for (FeedCard candidate : candidates) {
+                Double logWeight = logWeightByAnalyst.get(candidate.getAnalystId());
+                if (logWeight != null) {
+                    rankedFeed.offer(candidate.getId(), score(logWeight, candidate));
+                }
+            }
+        }
+
+        return rankedFeed;
+    }
+
+    private double score(double logWeight, FeedCard feedCard) {
+        Instant postDate = (feedCard.getPostDate() == null) ? Instant.now() : feedCard.getPostDate();
+        return logWeight + LN_2 * postDate.getEpochSecond() / halfLifeSeconds;
+    }
+
+    /**
+     * The top-K feed cards of one subscriber ordered by score, ties broken by the newer id.
+     */
+    private static final class RankedFeed {
+        private static final Comparator<ScoredCard> LEAST_RELEVANT_FIRST =
+                Comparator.comparingDouble(ScoredCard::score).thenComparing(ScoredCard::feedCardId);
+
+        private final Integer subscriberId;
+        private final Map<Integer, Double> logWeightByAnalyst;
+        private final int capacity;
+        private final Instant expiresAt;
+        private final TreeSet<ScoredCard> scoredCards = new TreeSet<>(LEAST_RELEVANT_FIRST);
+        private final HashMap<Integer, ScoredCard> scoredCardById = new HashMap<>();
+        private volatile boolean truncated;
+
+        private RankedFeed(Integer subscriberId, Map<Integer, Double> logWeightByAnalyst, int capacity, Instant expiresAt) {
+            this.subscriberId = subscriberId;
+            this.logWeightByAnalyst = logWeightByAnalyst;
+            this.capacity = capacity;
+            this.expiresAt = expiresAt;
+        }
+
+        private synchronized void offer(Integer feedCardId, double score) {
+            if (scoredCardById.containsKey(feedCardId)) {
+                return;
+            }
+
+            ScoredCard scoredCard = new ScoredCard(score, feedCardId);
+            if (scoredCards.size() >= capacity) {
+                truncated = true;
+                if (LEAST_RELEVANT_FIRST.compare(scoredCard, scoredCards.first()) <= 0) {
+                    return;
+                }
+                scoredCardById.remove(scoredCards.pollFirst().feedCardId());
+            }
+            scoredCards.add(scoredCard);
+            scoredCardById.put(feedCardId, scoredCard);
+        }
+
+        /**
+         * @return true if the feed card was in the top-K
+         */
+        private synchronized boolean remove(Integer feedCardId) {
+            ScoredCard scoredCard = scoredCardById.remove(feedCardId);
+            return scoredCard != null && scoredCards.remove(scoredCard);
+        }
+
+        private synchronized List<Integer> slice(int offset, int limit) {
+            List<Integer> feedCardIds = new ArrayList<>(Math.min(limit, scoredCards.size()));
+            Iterator<ScoredCard> mostRelevantFirst = scoredCards.descendingIterator();
+            for (int i = 0; mostRelevantFirst.hasNext() && feedCardIds.size() < limit; i++) {
+                ScoredCard scoredCard = mostRelevantFirst.next();
+                if (i >= offset) {
+                    feedCardIds.add(scoredCard.feedCardId());
+                }
+            }
+            return feedCardIds;
+        }
+
+        private boolean isExpired() {
+            return Instant.now().isAfter(expiresAt);
+        }
+
+        private record ScoredCard(double score, Integer feedCardId) {
+        }
+    }
+
+}
@@ -0,0 +1,215 @@
+package se.onlyfin.onlyfinbackend.service;
+
+import org.roaringbitmap.RoaringBitmap;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import se.onlyfin.onlyfinbackend.model.FeedCard;
+import se.onlyfin.onlyfinbackend.model.FeedCursor;
+import se.onlyfin.onlyfinbackend.model.FeedFilter;
+import se.onlyfin.onlyfinbackend.model.FeedReadState;
+import se.onlyfin.onlyfinbackend.model.User;
+import se.onlyfin.onlyfinbackend.repository.FeedCardRepository;
+import se.onlyfin.onlyfinbackend.repository.FeedReadStateRepository;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+
+/**
+ * This class keeps track of which feed cards each user has read.
+ * All module ids a user has read are kept in a single roaring bitmap stored as one row per user, so marking a
+ * whole page read is one row update and checking a feed card is a bitmap lookup. Module ids are never reused,
+ * so ids of deleted modules can stay in the bitmap.
+ * Marking the whole feed read only moves a per-user date before which everything counts as read, and feed cards
+ * older than the unread window always count as read. Counting and listing unread feed cards therefore only read
+ * the feed cards posted after the later of the two, never the whole history.
+ */
+@Service
+public class FeedReadStateService {
+    private static final int UNREAD_SCAN_BATCH_SIZE = 200;
+
+    private final FeedReadStateRepository feedReadStateRepository;
+    private final FeedCardRepository feedCardRepository;
+    private final Duration unreadWindow;
+
+    public FeedReadStateService(FeedReadStateRepository feedReadStateRepository,
+                                FeedCardRepository feedCardRepository,
+                                @Value("${onlyfin.feed.unread-window-days:30}") int unreadWindowDays) {
+        this.feedReadStateRepository = feedReadStateRepository;
+        this.feedCardRepository = feedCardRepository;
+        this.unreadWindow = Duration.ofDays(unreadWindowDays);
+    }
+
+    /**
+     * @param userId id of the user
+     * @return ids of the modules the user has read
+     */
+    public RoaringBitmap readModules(Integer userId) {
+        return readModules(feedReadStateRepository.findById(userId));
+    }
+
+    /**
+     * @param userId id of the user
+     * @return the date after which feed cards can be unread for the user
+     */
+    public Instant unreadSince(Integer userId) {
+        return unreadSince(feedReadStateRepository.findById(userId));
+    }
+
+    /**
+     * @param userId id of the user
+     * @return when the user last marked something read, or the epoch if the user never has
+     */
+    public Instant lastReadDate(Integer userId) {
+        return feedReadStateRepository.findById(userId)
+                .map(FeedReadState::getUpdatedDate)
+                .orElse(Instant.EPOCH);
+    }
+
+    /**
+     * This method marks modules as read for a user.
+     * The user's row is locked while the bitmap is updated so that concurrent updates are not lost.
+     *
+     * @param userId    id of the user
+     * @param moduleIds ids of the modules that were read
+     * @return false, without marking anything read, if any of the modules is not in the user's feed
+     */
+    @Transactional
+    public boolean markRead(Integer userId, Collection<Integer> moduleIds) {
+        Set<Integer> distinctModuleIds = new HashSet<>(moduleIds);
+        if (feedCardRepository.findSubscriptionFeedIdsIn(userId, distinctModuleIds).size() != distinctModuleIds.size()) {
+            return false;
+        }
+
+        feedReadStateRepository.insertIfMissing(userId, serialize(new RoaringBitmap()));
+        FeedReadState readState = feedReadStateRepository.findForUpdate(userId).orElseThrow();
+
+        RoaringBitmap readModules = deserialize(readState.getReadModules());
+        int cardinalityBefore = readModules.getCardinality();
+        for (Integer moduleId : moduleIds) {
+            readModules.add(moduleId);
+        }
+        if (readModules.getCardinality() == cardinalityBefore) {
+            return true;
+        }
+
+        readModules.runOptimize();
+        readState.setReadModules(serialize(readModules));
+        readState.setUpdatedDate(Instant.now());
+        feedReadStateRepository.save(readState);
+        return true;
+    }
+
+    /**
+     * This method marks every feed card currently in a subscriber's feed as read.
+     *
+     * @param subscriberId id of the subscriber
+     */
+    @Transactional
+    public void markFeedRead(Integer subscriberId) {
+        feedReadStateRepository.markAllRead(subscriberId, serialize(new RoaringBitmap()));
+    }
+
+    /**
+     * Counts the feed cards in a subscriber's feed that the subscriber hasn't read.
+     * Only the ids of feed cards posted after {@link #unreadSince(Integer)} are read and the count is a bitmap
+     * difference, so no feed cards are loaded.
+     *
+     * @param subscriberId id of the subscriber
+     * @return number of unread feed cards
+     */
+    public int countUnread(Integer subscriberId) {
+        Optional<FeedReadState> readState = feedReadStateRepository.findById(subscriberId);
+        List<Integer> feedCardIds = feedCardRepository.findSubscriptionFeedIdsPostedAfter(
+                subscriberId, unreadSince(readState));
+        RoaringBitmap feedModules = new RoaringBitmap();
+        for (Integer feedCardId : feedCardIds) {
+            feedModules.add(feedCardId);
+        }
+
+        return (int) RoaringBitmap.andNotCardinality(feedModules, readModules(readState));
+    }
+
+    /**
+     * Finds the feed cards of a subscriber's feed that match a filter and that the subscriber hasn't read.
+     * The feed is read from the database in batches, newest first, and read feed cards are skipped with a bitmap
+     * lookup until enough unread ones are found. Reading stops at {@link #unreadSince(Integer)}.
+     *
+     * @param subscriber the subscribing user
+     * @param filter     the filter to apply
+     * @param before     only include feed cards that come after this cursor, null to start from the newest
+     * @param limit      maximum number of feed cards to return
+     * @return unread feed cards ordered by descending post-date and id
+     */
+    public List<FeedCard> findUnreadSubscriptionFeed(User subscriber, FeedFilter filter,
+                                                     @Nullable FeedCursor before, int limit) {
+        Optional<FeedReadState> readState = feedReadStateRepository.findById(subscriber.getId());
+        RoaringBitmap readModules = readModules(readState);
+        Instant unreadSince = unreadSince(readState);
+        List<FeedCard> unreadFeedCards = new ArrayList<>(limit);
+
+        FeedCursor batchCursor = before;
+        while (unreadFeedCards.size() < limit) {
+            List<FeedCard> batch = feedCardRepository.findFilteredSubscriptionFeed(
+                    subscriber, filter, unreadSince, batchCursor, UNREAD_SCAN_BATCH_SIZE);
+            for (FeedCard feedCard : batch) {
+                if (!readModules.contains(feedCard.getId())) {
+                    unreadFeedCards.add(feedCard);
+                    if (unreadFeedCards.size() == limit) {
+                        break;
+                    }
+                }
+            }
+            if (batch.size() < UNREAD_SCAN_BATCH_SIZE) {
+                break;
+            }
+            batchCursor = FeedCursor.after(batch.get(batch.size() - 1));
+        }
+
+        return unreadFeedCards;
+    }
+
+    private static RoaringBitmap readModules(Optional<FeedReadState> readState) {
+        return readState.map((state) -> deserialize(state.getReadModules())).orElseGet(RoaringBitmap::new);
+    }
+
+    /**
+     * @return the later of when the user last marked the whole feed read and the start of the unread window,
+     * rounded down to the hour so that it stays the same within the hour
+     */
+    private Instant unreadSince(Optional<FeedReadState> readState) {
+        Instant windowStart = Instant.now().minus(unreadWindow).truncatedTo(ChronoUnit.HOURS);
+        Instant readBefore = readState.map(FeedReadState::getReadBefore).orElse(null);
+        return (readBefore != null && readBefore.isAfter(windowStart)) ? readBefore : windowStart;
+    }
+
+    private static byte[] serialize(RoaringBitmap bitmap) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(bitmap.serializedSizeInBytes());
+        try {
+            bitmap.serialize(new DataOutputStream(bytes));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static RoaringBitmap deserialize(byte[] serialized) {
+        RoaringBitmap bitmap = new RoaringBitmap();
+        try {
+            bitmap.deserialize(new DataInputStream(new ByteArrayInputStream(serialized)));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bitmap;
+    }
+
+}
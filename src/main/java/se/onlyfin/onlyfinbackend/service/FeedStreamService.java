@@ -0,0 +1,272 @@
+package se.onlyfin.onlyfinbackend.service;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.lang.Nullable;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import se.onlyfin.onlyfinbackend.DTO.FeedCardDTO;
+import se.onlyfin.onlyfinbackend.event.ModuleChangeEvent;
+import se.onlyfin.onlyfinbackend.event.SubscriptionChangeEvent;
+import se.onlyfin.onlyfinbackend.model.FeedCard;
+import se.onlyfin.onlyfinbackend.repository.FeedCardRepository;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.ZoneId;
+import java.util.Collection;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * This class is responsible for pushing new and updated feed cards to connected clients over Server-Sent Events.
+ * Connections are kept in an in-memory registry keyed by the analysts they are subscribed to.
+ * Each connection is an asynchronous servlet response, so an idle connection does not hold a thread.
+ * Events are queued in a bounded per-connection buffer and written by a small shared pool of sender threads.
+ * A client that falls so far behind that its buffer fills up is disconnected and is expected to reconnect and
+ * catch up through the regular feed endpoints.
+ * Writes to the servlet response block until the client reads, so a watchdog also disconnects any client whose
+ * current write has taken longer than the send timeout. Completing the response with an error makes the container
+ * close the connection, which fails the blocked write and frees its sender thread, so a slow client can hold up
+ * others sharing the pool for at most about one send timeout.
+ */
+@Service
+public class FeedStreamService {
+    private static final long CONNECTION_TIMEOUT_MILLIS = Duration.ofMinutes(30).toMillis();
+
+    private final FeedCardRepository feedCardRepository;
+    private final FeedNameDictionary feedNameDictionary;
+    private final int bufferCapacity;
+    private final long sendTimeoutNanos;
+    private final ExecutorService senderPool;
+    private final ConcurrentHashMap<Integer, Set<FeedStreamConnection>> connectionsByAnalyst = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Integer, Set<FeedStreamConnection>> connectionsBySubscriber = new ConcurrentHashMap<>();
+
+    public FeedStreamService(FeedCardRepository feedCardRepository, FeedNameDictionary feedNameDictionary,
+                             @Value("${onlyfin.feed.stream.buffer-capacity:64}") int bufferCapacity,
+                             @Value("${onlyfin.feed.stream.sender-threads:4}") int senderThreads,
+                             @Value("${onlyfin.feed.stream.send-timeout-millis:5000}") long sendTimeoutMillis) {
+        this.feedCardRepository = feedCardRepository;
+        this.feedNameDictionary = feedNameDictionary;
+        this.bufferCapacity = bufferCapacity;
+        this.sendTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(sendTimeoutMillis);
+        this.senderPool = Executors.newFixedThreadPool(senderThreads);
+    }
+
+    /**
+     * Opens a feed stream for a subscriber.
+     *
+     * @param subscriberId id of the subscribing user
+     * @param analystIds   ids of the analysts the subscriber is subscribed to
+     * @param zoneId       timezone to format dates in
+     * @return the emitter backing the stream
+     */
+    public SseEmitter connect(Integer subscriberId, Collection<Integer> analystIds, @Nullable ZoneId zoneId) {
+        SseEmitter emitter = new SseEmitter(CONNECTION_TIMEOUT_MILLIS);
+        FeedStreamConnection connection = new FeedStreamConnection(subscriberId, emitter, zoneId);
+
+        emitter.onCompletion(() -> unregister(connection));
+        emitter.onTimeout(() -> unregister(connection));
+        emitter.onError((throwable) -> unregister(connection));
+
+        connectionsBySubscriber.computeIfAbsent(subscriberId, (key) -> ConcurrentHashMap.newKeySet()).add(connection);
+        for (Integer analystId : analystIds) {
+            follow(connection, analystId);
+        }
+
+        connection.enqueue(SseEmitter.event().comment("connected"));
+        return emitter;
+    }
+
+    /**
+     * Pushes created and updated feed cards to the streams of the analyst's subscribers.
+     *
+     * @param event the module change
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onModuleChange(ModuleChangeEvent event) {
+        Set<FeedStreamConnection> connections = connectionsByAnalyst.get(event.analystId());
+        if (connections == null || connections.isEmpty()) {
+            return;
+        }
+
+        if (event.type() == ModuleChangeEvent.Type.DELETED) {
+            for (FeedStreamConnection connection : connections) {
+                connection.enqueue(SseEmitter.event().name("feed-card-deleted").data(event.moduleId()));
+            }
+            return;
+        }
+
+        Optional<FeedCard> feedCardOptional = feedCardRepository.findById(event.moduleId());
+        if (feedCardOptional.isEmpty()) {
+            return;
+        }
+        FeedCard feedCard = feedCardOptional.get();
+
+        String eventName = (event.type() == ModuleChangeEvent.Type.CREATED) ? "feed-card-created" : "feed-card-updated";
+        for (FeedStreamConnection connection : connections) {
+            FeedCardDTO feedCardDTO = feedNameDictionary.toFeedCardDTO(feedCard, connection.zoneId);
+            connection.enqueue(SseEmitter.event().name(eventName).data(feedCardDTO));
+        }
+    }
+
+    /**
+     * Keeps open streams in sync with the subscriber's subscriptions.
+     *
+     * @param event the subscription change
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onSubscriptionChange(SubscriptionChangeEvent event) {
+        Set<FeedStreamConnection> connections = connectionsBySubscriber.get(event.subscriberId());
+        if (connections == null) {
+            return;
+        }
+
+        for (FeedStreamConnection connection : connections) {
+            if (event.subscribed()) {
+                follow(connection, event.subscribedToId());
+            } else {
+                unfollow(connection, event.subscribedToId());
+            }
+        }
+    }
+
+    /**
+     * Sends a comment to every open stream so that proxies keep idle connections open and dead ones are noticed.
+     */
+    @Scheduled(fixedRateString = "${onlyfin.feed.stream.heartbeat-millis:25000}")
+    public void sendHeartbeats() {
+        for (Set<FeedStreamConnection> connections : connectionsBySubscriber.values()) {
+            for (FeedStreamConnection connection : connections) {
+                connection.enqueue(SseEmitter.event().comment("heartbeat"));
+            }
+        }
+    }
+
+    /**
+     * Disconnects clients whose current write has been blocked for longer than the send timeout.
+     */
+    @Scheduled(fixedRateString = "${onlyfin.feed.stream.watchdog-millis:1000}")
+    public void disconnectStalledClients() {
+        long nowNanos = System.nanoTime();
+        for (Set<FeedStreamConnection> connections : connectionsBySubscriber.values()) {
+            for (FeedStreamConnection connection : connections) {
+                long sendStartedNanos = connection.sendStartedNanos;
+                if (sendStartedNanos != 0 && nowNanos - sendStartedNanos > sendTimeoutNanos) {
+                    unregister(connection);
+                    connection.emitter.completeWithError(new TimeoutException("Feed stream send timed out"));
+                }
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        senderPool.shutdownNow();
+    }
+
+    private void follow(FeedStreamConnection connection, Integer analystId) {
+        connection.analystIds.add(analystId);
+        connectionsByAnalyst.computeIfAbsent(analystId, (key) -> ConcurrentHashMap.newKeySet()).add(connection);
+    }
+
+    private void unfollow(FeedStreamConnection connection, Integer analystId) {
+        connection.analystIds.remove(analystId);
+        removeFromRegistry(connectionsByAnalyst, analystId, connection);
+    }
+
+    private void unregister(FeedStreamConnection connection) {
+        connection.closed.set(true);
+        connection.buffer.clear();
+        for (Integer analystId : connection.analystIds) {
+            removeFromRegistry(connectionsByAnalyst, analystId, connection);
+        }
+        removeFromRegistry(connectionsBySubscriber, connection.subscriberId, connection);
+    }
+
+    private static void removeFromRegistry(ConcurrentHashMap<Integer, Set<FeedStreamConnection>> registry,
+                                           Integer key, FeedStreamConnection connection) {
+        registry.computeIfPresent(key, (ignored, connections) -> {
+            connections.remove(connection);
+            return connections.isEmpty() ? null : connections;
+        });
+    }
+
+    /**
+     * A single open feed stream with its bounded buffer of events that have not been written yet.
+     */
+    private final class FeedStreamConnection {
+        private final Integer subscriberId;
+        private final SseEmitter emitter;
+        private final ZoneId zoneId;
+        private final Set<Integer> analystIds = ConcurrentHashMap.newKeySet();
+        private final BlockingQueue<SseEmitter.SseEventBuilder> buffer = new ArrayBlockingQueue<>(bufferCapacity);
+        private final AtomicBoolean draining = new AtomicBoolean(false);
+        private final AtomicBoolean closed = new AtomicBoolean(false);
+        // when the write in progress started, or 0 if no write is in progress
+        private volatile long sendStartedNanos;
+
+        private FeedStreamConnection(Integer subscriberId, SseEmitter emitter, @Nullable ZoneId zoneId) {
+            this.subscriberId = subscriberId;
+            this.emitter = emitter;
+            this.zoneId = zoneId;
+        }
+
+        /**
+         * Queues an event for sending. Disconnects the client if its buffer is full.
+         *
+         * @param event the event to send
+         */
+        private void enqueue(SseEmitter.SseEventBuilder event) {
+            if (closed.get()) {
+                return;
+            }
+
+            if (!buffer.offer(event)) {
+                unregister(this);
+                emitter.complete();
+                return;
+            }
+
+            scheduleDrain();
+        }
+
+        private void scheduleDrain() {
+            if (draining.compareAndSet(false, true)) {
+                try {
+                    senderPool.execute(this::drain);
+                } catch (RejectedExecutionException e) {
+                    draining.set(false);
+                }
+            }
+        }
+
+        private void drain() {
+            try {
+                SseEmitter.SseEventBuilder event;
+                while (!closed.get() && (event = buffer.poll()) != null) {
+                    sendStartedNanos = System.nanoTime();
+                    emitter.send(event);
+                    sendStartedNanos = 0;
+                }
+            } catch (IOException | IllegalStateException e) {
+                if (!closed.get()) {
+                    unregister(this);
+                    emitter.completeWithError(e);
+                }
+            } finally {
+                sendStartedNanos = 0;
+                draining.set(false);
+            }
+
+            if (!closed.get() && !buffer.isEmpty()) {
+                scheduleDrain();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,202 @@
+package se.onlyfin.onlyfinbackend.service;
+
+import jakarta.transaction.Transactional;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+import se.onlyfin.onlyfinbackend.event.ModuleChangeEvent;
+import se.onlyfin.onlyfinbackend.event.SubscriptionChangeEvent;
+import se.onlyfin.onlyfinbackend.model.FeedCard;
+import se.onlyfin.onlyfinbackend.model.User;
+import se.onlyfin.onlyfinbackend.repository.FeedCardRepository;
+import se.onlyfin.onlyfinbackend.repository.SubscriptionRepository;
+import se.onlyfin.onlyfinbackend.repository.TimelineEntryRepository;
+
+import java.time.Instant;
+import java.util.*;
+
+/**
+ * This class is responsible for maintaining and reading the per-subscriber feed timelines.
+ * New feed cards are pushed to the timeline of every subscriber of the posting analyst (fan-out-on-write).
+ * Analysts with more subscribers than the fan-out threshold are not pushed, instead their feed cards are
+ * pulled when a subscriber's timeline is read (fan-out-on-read). Such analysts are recorded as pulled, and when
+ * they drop back under the threshold their feed cards are copied into their subscribers' timelines, since they
+ * are no longer pulled on read.
+ * Starting the application with --backfill-timelines backfills the timelines from the feed card table once, which
+ * fills them for subscriptions that existed before the timeline table and repairs subscriptions that were changed
+ * without an event. This has to be done once when the timeline table is first deployed; after that the change
+ * events keep the timelines up to date.
+ */
+@Service
+public class FeedTimelineService {
+    private static final Logger logger = LoggerFactory.getLogger(FeedTimelineService.class);
+    private static final String BACKFILL_OPTION = "backfill-timelines";
+
+    private final TimelineEntryRepository timelineEntryRepository;
+    private final FeedCardRepository feedCardRepository;
+    private final SubscriptionRepository subscriptionRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final long fanOutThreshold;
+    private final ApplicationArguments applicationArguments;
+
+    public FeedTimelineService(TimelineEntryRepository timelineEntryRepository,
+                               FeedCardRepository feedCardRepository,
+                               SubscriptionRepository subscriptionRepository,
+                               PlatformTransactionManager transactionManager,
+                               @Value("${onlyfin.feed.fan-out-threshold:5000}") long fanOutThreshold,
+                               ApplicationArguments applicationArguments) {
+        this.timelineEntryRepository = timelineEntryRepository;
+        this.feedCardRepository = feedCardRepository;
+        this.subscriptionRepository = subscriptionRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.fanOutThreshold = fanOutThreshold;
+        this.applicationArguments = applicationArguments;
+    }
+
+    /**
+     * Copies the feed cards of every analyst under the fan-out threshold into their subscribers' timelines, and
+     * records every analyst over it as pulled, if the application was started with --backfill-timelines.
+     * Cards that are already in a timeline are skipped, so running it again is safe, but it reads every
+     * subscription and feed card in one transaction and is therefore not run on a regular start.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfillTimelines() {
+        if (!applicationArguments.containsOption(BACKFILL_OPTION)) {
+            return;
+        }
+
+        Integer addedCount = transactionTemplate.execute((status) -> {
+            int added = timelineEntryRepository.backfillAll(fanOutThreshold);
+            timelineEntryRepository.releaseAllPulled(fanOutThreshold);
+            timelineEntryRepository.markAllPulled(fanOutThreshold);
+            return added;
+        });
+        logger.info("Backfilled {} timeline entries", addedCount);
+    }
+
+    /**
+     * Fetches the feed cards posted after a cutoff date by the analysts a subscriber is subscribed to.
+     * Reads the subscriber's timeline with a single range scan and merges in the feed cards of subscribed-to
+     * analysts that are too popular to be fanned out on write.
+     *
+     * @param subscriber    the subscribing user
+     * @param subscribedTo  the analysts the subscriber is subscribed to
+     * @param cutoffDate    the date to start fetching from
+     * @return feed cards ordered by descending post-date
+     */
+    public List<FeedCard> fetchTimeline(User subscriber, List<User> subscribedTo, Instant cutoffDate) {
+        List<FeedCard> timeline = feedCardRepository.findTimelineForSubscriber(subscriber.getId(), cutoffDate);
+
+        List<Integer> pulledAnalystIds = findFanOutOnReadAnalysts(subscriber, subscribedTo);
+        if (pulledAnalystIds.isEmpty()) {
+            return timeline;
+        }
+
+        List<FeedCard> pulledFeedCards = feedCardRepository
+                .findByAnalystIdInAndPostDateAfterOrderByPostDateDesc(pulledAnalystIds, cutoffDate);
+
+        return mergeByPostDate(timeline, pulledFeedCards);
+    }
+
+    /**
+     * Keeps the timelines in sync when an analyst's module changes.
+     *
+     * @param event the module change
+     */
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    @TransactionalEventListener(fallbackExecution = true)
+    @Transactional(Transactional.TxType.REQUIRES_NEW)
+    public void onModuleChange(ModuleChangeEvent event) {
+        switch (event.type()) {
+            case CREATED, UPDATED -> {
+                if (subscriptionRepository.countBySubscribedToId(event.analystId()) < fanOutThreshold) {
+                    timelineEntryRepository.fanOutToSubscribers(event.analystId(), event.moduleId());
+                } else {
+                    timelineEntryRepository.markPulled(event.analystId());
+                }
+            }
+            case DELETED -> timelineEntryRepository.deleteByFeedCardId(event.moduleId());
+        }
+    }
+
+    /**
+     * Fills or clears a subscriber's timeline when a subscription is added or removed.
+     * When an unsubscription takes a pulled analyst under the fan-out threshold, the analyst's feed cards are
+     * copied into the timelines of their remaining subscribers.
+     *
+     * @param event the subscription change
+     */
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    @TransactionalEventListener(fallbackExecution = true)
+    @Transactional(Transactional.TxType.REQUIRES_NEW)
+    public void onSubscriptionChange(SubscriptionChangeEvent event) {
+        if (event.subscribed()) {
+            timelineEntryRepository.backfillFromAnalyst(event.subscriberId(), event.subscribedToId());
+        } else {
+            timelineEntryRepository.deleteBySubscriberIdAndAnalystId(event.subscriberId(), event.subscribedToId());
+            if (timelineEntryRepository.releasePulled(event.subscribedToId(), fanOutThreshold) > 0) {
+                timelineEntryRepository.backfillToSubscribers(event.subscribedToId());
+            }
+        }
+    }
+
+    /**
+     * @param subscriber   the subscribing user
+     * @param subscribedTo the analysts the subscriber is subscribed to
+     * @return ids of the subscribed-to analysts whose feed cards are not fanned out on write
+     */
+    private List<Integer> findFanOutOnReadAnalysts(User subscriber, List<User> subscribedTo) {
+        Set<Integer> pulledAnalystIds = new HashSet<>(
+                subscriptionRepository.findSubscribedToIdsWithAtLeastSubscribers(subscriber, fanOutThreshold));
+        if (pulledAnalystIds.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        List<Integer> subscribedToPulledIds = new ArrayList<>();
+        for (User analyst : subscribedTo) {
+            if (pulledAnalystIds.contains(analyst.getId())) {
+                subscribedToPulledIds.add(analyst.getId());
+            }
+        }
+        return subscribedToPulledIds;
+    }
+
+    /**
+     * Merges two lists of feed cards that are ordered by descending post-date, skipping duplicates.
+     *
+     * @param first  feed cards ordered by descending post-date
+     * @param second feed cards ordered by descending post-date
+     * @return a single list ordered by descending post-date
+     */
+    private static List<FeedCard> mergeByPostDate(List<FeedCard> first, List<FeedCard> second) {
+        List<FeedCard> merged = new ArrayList<>(first.size() + second.size());
+        Set<Integer> seenIds = new HashSet<>();
+
+        int i = 0;
+        int j = 0;
+        while (i < first.size() || j < second.size()) {
+            FeedCard next;
+            if (j >= second.size()
+                    || (i < first.size() && !first.get(i).getPostDate().isBefore(second.get(j).getPostDate()))) {
+                next = first.get(i++);
+            } else {
+                next = second.get(j++);
+            }
+
+            if (seenIds.add(next.getId())) {
+                merged.add(next);
+            }
+        }
+        return merged;
+    }
+
+}
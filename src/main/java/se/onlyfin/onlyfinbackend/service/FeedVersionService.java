@@ -0,0 +1,76 @@
+package se.onlyfin.onlyfinbackend.service;
+
+import org.springframework.stereotype.Service;
+import org.springframework.util.DigestUtils;
+import se.onlyfin.onlyfinbackend.model.AnalystFeedVersion;
+import se.onlyfin.onlyfinbackend.repository.AnalystFeedVersionRepository;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * This class creates ETags for feeds, so unchanged feeds can be answered with 304 Not Modified without reading
+ * any feed cards.
+ * Every analyst has a feed version that is bumped in the same transaction as every change to the analyst's feed
+ * cards, so a feed's version is read from one row per subscribed-to analyst, no matter how many feed cards they
+ * have. Since the versions are stored, ETags stay valid across restarts and across instances.
+ */
+@Service
+public class FeedVersionService {
+    private final AnalystFeedVersionRepository analystFeedVersionRepository;
+
+    public FeedVersionService(AnalystFeedVersionRepository analystFeedVersionRepository) {
+        this.analystFeedVersionRepository = analystFeedVersionRepository;
+    }
+
+    /**
+     * Marks an analyst's feed cards as changed.
+     * Must be called inside the transaction that creates, updates or deletes the feed cards.
+     *
+     * @param analystId id of the analyst
+     */
+    public void bump(Integer analystId) {
+        analystFeedVersionRepository.bump(analystId);
+    }
+
+    /**
+     * Marks the feed cards of every analyst as changed, after the feed card table has been refilled.
+     */
+    public void bumpAll() {
+        analystFeedVersionRepository.bumpAll();
+    }
+
+    /**
+     * Creates an ETag for a subscriber's feed.
+     *
+     * @param analystIds ids of the analysts the subscriber is subscribed to, at least one
+     * @param variant    anything else the response depends on, such as the endpoint, the timezone or a cutoff
+     * @return the ETag value
+     */
+    public String feedETag(Collection<Integer> analystIds, Object... variant) {
+        HashMap<Integer, AnalystFeedVersion> versionsByAnalyst = new HashMap<>();
+        for (AnalystFeedVersion analystFeedVersion : analystFeedVersionRepository.findByAnalystIdIn(analystIds)) {
+            versionsByAnalyst.put(analystFeedVersion.getAnalystId(), analystFeedVersion);
+        }
+
+        List<Integer> sortedAnalystIds = new ArrayList<>(analystIds);
+        sortedAnalystIds.sort(null);
+        StringBuilder versionKey = new StringBuilder();
+        for (Integer analystId : sortedAnalystIds) {
+            versionKey.append(analystId);
+            AnalystFeedVersion analystFeedVersion = versionsByAnalyst.get(analystId);
+            if (analystFeedVersion != null) {
+                // the timestamp tells a recreated row apart from the one it replaced
+                versionKey.append(':').append(analystFeedVersion.getVersion())
+                        .append(':').append(analystFeedVersion.getLastUpdated());
+            }
+            versionKey.append('|');
+        }
+        for (Object part : variant) {
+            versionKey.append('|').append(part);
+        }
+
+        return DigestUtils.md5DigestAsHex(versionKey.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+}
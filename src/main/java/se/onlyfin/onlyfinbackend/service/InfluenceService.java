@@ -0,0 +1,313 @@
+package se.onlyfin.onlyfinbackend.service;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Function;
+
+/**
+ * This class computes how influential every user is in the subscription graph, as the PageRank of the user where
+ * a subscription is a link from the subscriber to the subscribed-to user. An analyst with few but influential
+ * subscribers can therefore outrank one with many subscribers that nobody follows.
+ * A run takes a snapshot of the graph as compressed arrays of incoming links and runs a power iteration on a
+ * ForkJoin pool until the ranks converge. The scores are stored in the user influence table and kept in memory,
+ * together with the analysts ordered by influence, so ranking by influence needs no computation per request.
+ * Scores are scaled so that the average user scores 1.
+ */
+@Service
+public class InfluenceService {
+    private static final Logger logger = LoggerFactory.getLogger(InfluenceService.class);
+    private static final int WRITE_BATCH_SIZE = 500;
+    private static final int RANKED_ANALYSTS = 100;
+    private static final String UPSERT_SQL = "INSERT INTO user_influence (user_id, influence_score, computed_date) " +
+            "VALUES (?, ?, ?) " +
+            "ON CONFLICT (user_id) DO UPDATE SET influence_score = EXCLUDED.influence_score, " +
+            "computed_date = EXCLUDED.computed_date";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ForkJoinPool computePool;
+    private final double dampingFactor;
+    private final int maxIterations;
+    private final double tolerance;
+    private volatile Influence influence = new Influence(Map.of(), List.of());
+
+    public InfluenceService(JdbcTemplate jdbcTemplate,
+                            @Value("${onlyfin.influence.parallelism:0}") int parallelism,
+                            @Value("${onlyfin.influence.damping-factor:0.85}") double dampingFactor,
+                            @Value("${onlyfin.influence.max-iterations:100}") int maxIterations,
+                            @Value("${onlyfin.influence.tolerance:0.000001}") double tolerance) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.computePool = new ForkJoinPool((parallelism > 0) ? parallelism : Runtime.getRuntime().availableProcessors());
+        this.dampingFactor = dampingFactor;
+        this.maxIterations = maxIterations;
+        this.tolerance = tolerance;
+    }
+
+    /**
+     * @param userId id of the user
+     * @return the user's influence score, or 0 if it hasn't been computed yet
+     */
+    public double findInfluence(Integer userId) {
+        return influence.scoresByUser().getOrDefault(userId, 0.0);
+    }
+
+    /**
+     * @param limit maximum number of analysts to return, at most 100
+     * @return ids of the most influential analysts, most influential first
+     */
+    public List<Integer> findMostInfluentialAnalysts(int limit) {
+        List<Integer> rankedAnalystIds = influence.rankedAnalystIds();
+        return rankedAnalystIds.subList(0, Math.min(Math.max(limit, 0), rankedAnalystIds.size()));
+    }
+
+    /**
+     * Sorts profiles, or anything else identifying a user, by influence, most influential first.
+     * The sort is stable, so users with the same influence keep their order.
+     *
+     * @param items    the items to sort
+     * @param userIdOf function returning the id of the user an item belongs to
+     */
+    public <T> void sortByInfluence(List<T> items, Function<T, Integer> userIdOf) {
+        Map<Integer, Double> scoresByUser = influence.scoresByUser();
+        items.sort(Comparator.comparingDouble((T item) -> scoresByUser.getOrDefault(userIdOf.apply(item), 0.0))
+                .reversed());
+    }
+
+    /**
+     * Loads the scores of the last run, so that they can be used before the first run of this instance.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        HashMap<Integer, Double> scoresByUser = new HashMap<>();
+        Set<Integer> analystIds = new HashSet<>();
+        try {
+            jdbcTemplate.query("SELECT i.user_id, i.influence_score, u.is_analyst " +
+                    "FROM user_influence i JOIN users u ON u.id = i.user_id", (resultSet) -> {
+                scoresByUser.put(resultSet.getInt("user_id"), resultSet.getDouble("influence_score"));
+                if (resultSet.getBoolean("is_analyst")) {
+                    analystIds.add(resultSet.getInt("user_id"));
+                }
+            });
+        } catch (DataAccessException e) {
+            logger.error("Could not load influence scores", e);
+            return;
+        }
+        influence = toInfluence(scoresByUser, analystIds);
+    }
+
+    /**
+     * Recomputes the influence of every user and stores it.
+     */
+    @Scheduled(initialDelayString = "${onlyfin.influence.initial-delay-millis:60000}",
+            fixedDelayString = "${onlyfin.influence.refresh-millis:3600000}")
+    public synchronized void refresh() {
+        try {
+            SubscriptionGraph graph = loadGraph();
+            if (graph.userIds().length == 0) {
+                return;
+            }
+
+            double[] ranks = computePageRank(graph);
+            HashMap<Integer, Double> scoresByUser = new HashMap<>();
+            for (int node = 0; node < ranks.length; node++) {
+                scoresByUser.put(graph.userIds()[node], ranks[node] * ranks.length);
+            }
+            store(scoresByUser);
+            influence = toInfluence(scoresByUser, graph.analystIds());
+            logger.info("Computed influence of {} users", ranks.length);
+        } catch (DataAccessException e) {
+            logger.error("Could not compute influence", e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        computePool.shutdownNow();
+    }
+
+    /**
+     * Loads every user and subscription, and numbers the users from 0 so that the graph fits in arrays.
+     * The incoming links of a user are stored contiguously: the subscribers of the user numbered n are
+     * {@code subscriberNodes[subscriberOffsets[n]]} up to {@code subscriberNodes[subscriberOffsets[n + 1]]}.
+     */
+    private SubscriptionGraph loadGraph() {
+        List<Integer> userIds = new ArrayList<>();
+        Set<Integer> analystIds = new HashSet<>();
+        jdbcTemplate.query("SELECT id, is_analyst FROM users ORDER BY id", (resultSet) -> {
+            userIds.add(resultSet.getInt("id"));
+            if (resultSet.getBoolean("is_analyst")) {
+                analystIds.add(resultSet.getInt("id"));
+            }
+        });
+        HashMap<Integer, Integer> nodeByUser = new HashMap<>();
+        for (int node = 0; node < userIds.size(); node++) {
+            nodeByUser.put(userIds.get(node), node);
+        }
+
+        int userCount = userIds.size();
+        int[] subscriptionCounts = new int[userCount];
+        int[] subscriberOffsets = new int[userCount + 1];
+        List<int[]> links = new ArrayList<>();
+        jdbcTemplate.query("SELECT subscriber_id, subscribed_to_id FROM subscription", (resultSet) -> {
+            Integer subscriberNode = nodeByUser.get(resultSet.getInt("subscriber_id"));
+            Integer subscribedToNode = nodeByUser.get(resultSet.getInt("subscribed_to_id"));
+            if (subscriberNode != null && subscribedToNode != null && !subscriberNode.equals(subscribedToNode)) {
+                links.add(new int[]{subscriberNode, subscribedToNode});
+                subscriptionCounts[subscriberNode]++;
+                subscriberOffsets[subscribedToNode + 1]++;
+            }
+        });
+
+        for (int node = 0; node < userCount; node++) {
+            subscriberOffsets[node + 1] += subscriberOffsets[node];
+        }
+        int[] subscriberNodes = new int[links.size()];
+        int[] nextSlot = Arrays.copyOf(subscriberOffsets, userCount);
+        for (int[] link : links) {
+            subscriberNodes[nextSlot[link[1]]++] = link[0];
+        }
+
+        int[] userIdArray = userIds.stream().mapToInt(Integer::intValue).toArray();
+        return new SubscriptionGraph(userIdArray, analystIds, subscriptionCounts, subscriberOffsets, subscriberNodes);
+    }
+
+    /**
+     * Runs the power iteration. The rank of users that aren't subscribed to anyone is spread over every user,
+     * so that the ranks keep summing to 1.
+     *
+     * @return the rank of every node
+     */
+    double[] computePageRank(SubscriptionGraph graph) {
+        int userCount = graph.userIds().length;
+        double[] ranks = new double[userCount];
+        double[] nextRanks = new double[userCount];
+        Arrays.fill(ranks, 1.0 / userCount);
+
+        for (int iteration = 0; iteration < maxIterations; iteration++) {
+            double danglingRank = 0;
+            for (int node = 0; node < userCount; node++) {
+                if (graph.subscriptionCounts()[node] == 0) {
+                    danglingRank += ranks[node];
+                }
+            }
+            double baseRank = (1 - dampingFactor + dampingFactor * danglingRank) / userCount;
+
+            double change = computePool.invoke(
+                    new IterationTask(graph, ranks, nextRanks, dampingFactor, baseRank, 0, userCount));
+            double[] previousRanks = ranks;
+            ranks = nextRanks;
+            nextRanks = previousRanks;
+            if (change < tolerance) {
+                break;
+            }
+        }
+        return ranks;
+    }
+
+    /**
+     * Writes the scores in batches and removes the scores of users that no longer exist.
+     */
+    private void store(HashMap<Integer, Double> scoresByUser) {
+        Timestamp computedDate = Timestamp.from(Instant.now());
+        List<Object[]> batch = new ArrayList<>(WRITE_BATCH_SIZE);
+        for (Map.Entry<Integer, Double> score : scoresByUser.entrySet()) {
+            batch.add(new Object[]{score.getKey(), score.getValue(), computedDate});
+            if (batch.size() == WRITE_BATCH_SIZE) {
+                jdbcTemplate.batchUpdate(UPSERT_SQL, batch);
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            jdbcTemplate.batchUpdate(UPSERT_SQL, batch);
+        }
+        jdbcTemplate.update("DELETE FROM user_influence WHERE computed_date < ?", computedDate);
+    }
+
+    private static Influence toInfluence(HashMap<Integer, Double> scoresByUser, Set<Integer> analystIds) {
+        List<Integer> rankedAnalystIds = analystIds.stream()
+                .filter(scoresByUser::containsKey)
+                .sorted(Comparator.comparingDouble((Integer analystId) -> scoresByUser.get(analystId)).reversed())
+                .limit(RANKED_ANALYSTS)
+                .toList();
+        return new Influence(Collections.unmodifiableMap(scoresByUser), rankedAnalystIds);
+    }
+
+    /**
+     * Computes the next rank of a range of nodes from the ranks of their subscribers, splitting the range in
+     * half until it is small enough.
+     * Returns the sum of how much the ranks in the range changed.
+     */
+    private static final class IterationTask extends RecursiveTask<Double> {
+        private static final int SEQUENTIAL_THRESHOLD = 2048;
+
+        private final SubscriptionGraph graph;
+        private final double[] ranks;
+        private final double[] nextRanks;
+        private final double dampingFactor;
+        private final double baseRank;
+        private final int from;
+        private final int to;
+
+        private IterationTask(SubscriptionGraph graph, double[] ranks, double[] nextRanks, double dampingFactor,
+                              double baseRank, int from, int to) {
+            this.graph = graph;
+            this.ranks = ranks;
+            this.nextRanks = nextRanks;
+            this.dampingFactor = dampingFactor;
+            this.baseRank = baseRank;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Double compute() {
+            if (to - from > SEQUENTIAL_THRESHOLD) {
+                int middle = (from + to) >>> 1;
+                IterationTask left = new IterationTask(graph, ranks, nextRanks, dampingFactor, baseRank, from, middle);
+                IterationTask right = new IterationTask(graph, ranks, nextRanks, dampingFactor, baseRank, middle, to);
+                left.fork();
+                double rightChange = right.compute();
+                return left.join() + rightChange;
+            }
+
+            double change = 0;
+            for (int node = from; node < to; node++) {
+                double linkedRank = 0;
+                for (int slot = graph.subscriberOffsets()[node]; slot < graph.subscriberOffsets()[node + 1]; slot++) {
+                    int subscriberNode = graph.subscriberNodes()[slot];
+                    linkedRank += ranks[subscriberNode] / graph.subscriptionCounts()[subscriberNode];
+                }
+                nextRanks[node] = baseRank + dampingFactor * linkedRank;
+                change += Math.abs(nextRanks[node] - ranks[node]);
+            }
+            return change;
+        }
+    }
+
+    /**
+     * A snapshot of the subscription graph, with users numbered from 0 in the order of their ids.
+     */
+    record SubscriptionGraph(int[] userIds, Set<Integer> analystIds, int[] subscriptionCounts,
+                             int[] subscriberOffsets, int[] subscriberNodes) {
+    }
+
+    /**
+     * The scores of the last run. Replaced as a whole, so readers always see the scores of a single run.
+     */
+    private record Influence(Map<Integer, Double> scoresByUser, List<Integer> rankedAnalystIds) {
+    }
+
+}
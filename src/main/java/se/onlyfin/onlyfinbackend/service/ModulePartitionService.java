@@ -0,0 +1,215 @@
+package se.onlyfin.onlyfinbackend.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.*;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class keeps the module table range-partitioned by post-date, one partition per month.
+ * Feed queries that only look at recent weeks then only scan the newest partitions.
+ * Partitioning is turned on with onlyfin.module-partitioning.enabled. On the first start with it turned on,
+ * an unpartitioned module table is converted in a single transaction, and views, triggers, foreign keys and
+ * indexes on it are carried over. The conversion refuses to run while modules without a post-date exist, or while
+ * foreign keys of other tables reference the module table, since the primary key becomes (id, post_date) and
+ * nothing can reference the id alone anymore.
+ * After that, partitions are created ahead of time every day, and a default partition catches anything outside
+ * them. When a new partition is created for a month the default partition already holds rows for, the default
+ * partition is briefly detached so that the rows can be moved over, which locks the module table while they move.
+ * The feed card table is not partitioned. Feed reads go through its indexes on analyst and post-date, which
+ * already limit them to the requested window, and its copies are upserted by module id, which a partitioned table
+ * could not keep unique.
+ * Hibernate's schema update does not see the indexes and foreign keys of a partitioned table. It logs a
+ * warning on startup when it tries to create them again, and that warning can be ignored.
+ */
+@Service
+public class ModulePartitionService {
+    private static final Logger logger = LoggerFactory.getLogger(ModulePartitionService.class);
+    private static final DateTimeFormatter PARTITION_SUFFIX = DateTimeFormatter.ofPattern("yyyy_MM");
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean enabled;
+    private final int monthsAhead;
+
+    public ModulePartitionService(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+                                  @Value("${onlyfin.module-partitioning.enabled:false}") boolean enabled,
+                                  @Value("${onlyfin.module-partitioning.months-ahead:3}") int monthsAhead) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.enabled = enabled;
+        this.monthsAhead = monthsAhead;
+    }
+
+    /**
+     * Converts the module table on startup if needed and makes sure the upcoming partitions exist.
+     * A failed conversion fails the startup, with the module table left as it was.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        if (!enabled) {
+            return;
+        }
+
+        String tableKind = jdbcTemplate.queryForObject(
+                "SELECT CAST(c.relkind AS text) FROM pg_class c WHERE c.oid = to_regclass('module')", String.class);
+        if ("r".equals(tableKind)) {
+            transactionTemplate.executeWithoutResult((status) -> convertToPartitionedTable());
+            logger.info("Converted module table to monthly partitions");
+        }
+
+        createUpcomingPartitions();
+    }
+
+    /**
+     * Creates the partitions for the current month and the configured number of months ahead.
+     */
+    @Scheduled(cron = "${onlyfin.module-partitioning.cron:0 0 3 * * *}")
+    public void createUpcomingPartitions() {
+        if (!enabled) {
+            return;
+        }
+
+        YearMonth currentMonth = YearMonth.now(ZoneOffset.UTC);
+        for (int i = 0; i <= monthsAhead; i++) {
+            try {
+                createMonthlyPartition(currentMonth.plusMonths(i));
+            } catch (DataAccessException e) {
+                logger.error("Could not create module partition for {}", currentMonth.plusMonths(i), e);
+            }
+        }
+    }
+
+    /**
+     * Replaces the unpartitioned module table with a partitioned one holding the same rows.
+     * Must run inside a transaction so that a failure leaves the original table untouched.
+     */
+    private void convertToPartitionedTable() {
+        List<String> referencingForeignKeys = jdbcTemplate.queryForList(
+                "SELECT c.conname || ' on ' || CAST(CAST(c.conrelid AS regclass) AS text) FROM pg_constraint c " +
+                        "WHERE c.confrelid = CAST('module' AS regclass) AND c.contype = 'f'", String.class);
+        if (!referencingForeignKeys.isEmpty()) {
+            throw new IllegalStateException("Cannot partition the module table while foreign keys reference it: " +
+                    String.join(", ", referencingForeignKeys));
+        }
+        Long modulesWithoutPostDate = jdbcTemplate.queryForObject(
+                "SELECT count(*) FROM module WHERE post_date IS NULL", Long.class);
+        if (modulesWithoutPostDate != null && modulesWithoutPostDate > 0) {
+            throw new IllegalStateException("Cannot partition the module table while " + modulesWithoutPostDate +
+                    " modules have no post-date");
+        }
+
+        List<Map<String, Object>> dependentViews = jdbcTemplate.queryForList(
+                "SELECT DISTINCT CAST(CAST(v.oid AS regclass) AS text) AS name, pg_get_viewdef(v.oid) AS definition " +
+                        "FROM pg_depend d JOIN pg_rewrite r ON r.oid = d.objid JOIN pg_class v ON v.oid = r.ev_class " +
+                        "WHERE d.refobjid = CAST('module' AS regclass) AND v.relkind = 'v'");
+        List<String> triggerDefinitions = jdbcTemplate.queryForList(
+                "SELECT pg_get_triggerdef(t.oid) FROM pg_trigger t " +
+                        "WHERE t.tgrelid = CAST('module' AS regclass) AND NOT t.tgisinternal", String.class);
+        List<Map<String, Object>> foreignKeys = jdbcTemplate.queryForList(
+                "SELECT c.conname AS name, pg_get_constraintdef(c.oid) AS definition FROM pg_constraint c " +
+                        "WHERE c.conrelid = CAST('module' AS regclass) AND c.contype = 'f'");
+        List<String> indexDefinitions = jdbcTemplate.queryForList(
+                "SELECT pg_get_indexdef(i.indexrelid) FROM pg_index i " +
+                        "WHERE i.indrelid = CAST('module' AS regclass) AND NOT i.indisunique", String.class);
+        Timestamp oldestPostDate = jdbcTemplate.queryForObject("SELECT min(post_date) FROM module", Timestamp.class);
+
+        for (Map<String, Object> view : dependentViews) {
+            jdbcTemplate.execute("DROP VIEW " + view.get("name"));
+        }
+
+        jdbcTemplate.execute("ALTER TABLE module RENAME TO module_unpartitioned");
+        jdbcTemplate.execute("CREATE TABLE module (LIKE module_unpartitioned INCLUDING DEFAULTS INCLUDING IDENTITY " +
+                "INCLUDING GENERATED INCLUDING STORAGE INCLUDING COMMENTS) PARTITION BY RANGE (post_date)");
+        jdbcTemplate.execute("ALTER TABLE module ADD PRIMARY KEY (id, post_date)");
+        jdbcTemplate.execute("CREATE TABLE module_default PARTITION OF module DEFAULT");
+
+        YearMonth firstMonth = (oldestPostDate == null)
+                ? YearMonth.now(ZoneOffset.UTC)
+                : YearMonth.from(oldestPostDate.toInstant().atOffset(ZoneOffset.UTC));
+        YearMonth lastMonth = YearMonth.now(ZoneOffset.UTC).plusMonths(monthsAhead);
+        for (YearMonth month = firstMonth; !month.isAfter(lastMonth); month = month.plusMonths(1)) {
+            createMonthlyPartition(month);
+        }
+
+        jdbcTemplate.execute("INSERT INTO module OVERRIDING SYSTEM VALUE SELECT * FROM module_unpartitioned");
+
+        // a serial id keeps using the old sequence, which has to move over before the old table can be dropped
+        Boolean serialId = jdbcTemplate.queryForObject("SELECT a.attidentity = '' FROM pg_attribute a " +
+                "WHERE a.attrelid = CAST('module_unpartitioned' AS regclass) AND a.attname = 'id'", Boolean.class);
+        String idSequence = jdbcTemplate.queryForObject(
+                "SELECT pg_get_serial_sequence('module_unpartitioned', 'id')", String.class);
+        if (Boolean.TRUE.equals(serialId) && idSequence != null) {
+            jdbcTemplate.execute("ALTER SEQUENCE " + idSequence + " OWNED BY module.id");
+        }
+        jdbcTemplate.queryForObject("SELECT setval(pg_get_serial_sequence('module', 'id'), " +
+                "COALESCE(max(id), 0) + 1, false) FROM module", Long.class);
+        jdbcTemplate.execute("DROP TABLE module_unpartitioned");
+
+        for (String indexDefinition : indexDefinitions) {
+            jdbcTemplate.execute(indexDefinition);
+        }
+        for (String triggerDefinition : triggerDefinitions) {
+            jdbcTemplate.execute(triggerDefinition);
+        }
+        for (Map<String, Object> foreignKey : foreignKeys) {
+            jdbcTemplate.execute("ALTER TABLE module ADD CONSTRAINT " + foreignKey.get("name") + " " + foreignKey.get("definition"));
+        }
+        for (Map<String, Object> view : dependentViews) {
+            jdbcTemplate.execute("CREATE VIEW " + view.get("name") + " AS " + view.get("definition"));
+        }
+    }
+
+    /**
+     * Creates the partition for a month unless it exists, moving the month's rows out of the default partition.
+     */
+    private void createMonthlyPartition(YearMonth month) {
+        String partitionName = "module_p" + month.format(PARTITION_SUFFIX);
+        OffsetDateTime from = month.atDay(1).atStartOfDay().atOffset(ZoneOffset.UTC);
+        OffsetDateTime to = month.plusMonths(1).atDay(1).atStartOfDay().atOffset(ZoneOffset.UTC);
+        String createPartition = "CREATE TABLE " + partitionName + " PARTITION OF module " +
+                "FOR VALUES FROM ('" + from + "') TO ('" + to + "')";
+
+        Boolean partitionExists = jdbcTemplate.queryForObject(
+                "SELECT to_regclass(?) IS NOT NULL", Boolean.class, partitionName);
+        if (Boolean.TRUE.equals(partitionExists)) {
+            return;
+        }
+
+        Timestamp fromTimestamp = Timestamp.from(from.toInstant());
+        Timestamp toTimestamp = Timestamp.from(to.toInstant());
+        Boolean defaultHoldsRows = jdbcTemplate.queryForObject(
+                "SELECT EXISTS (SELECT 1 FROM module_default WHERE post_date >= ? AND post_date < ?)",
+                Boolean.class, fromTimestamp, toTimestamp);
+        if (!Boolean.TRUE.equals(defaultHoldsRows)) {
+            jdbcTemplate.execute(createPartition);
+            return;
+        }
+
+        // a partition cannot be created while the default partition holds rows that belong in it
+        transactionTemplate.executeWithoutResult((status) -> {
+            jdbcTemplate.execute("ALTER TABLE module DETACH PARTITION module_default");
+            jdbcTemplate.execute(createPartition);
+            int movedRows = jdbcTemplate.update("INSERT INTO module OVERRIDING SYSTEM VALUE " +
+                    "SELECT * FROM module_default WHERE post_date >= ? AND post_date < ?", fromTimestamp, toTimestamp);
+            jdbcTemplate.update("DELETE FROM module_default WHERE post_date >= ? AND post_date < ?",
+                    fromTimestamp, toTimestamp);
+            jdbcTemplate.execute("ALTER TABLE module ATTACH PARTITION module_default DEFAULT");
+            logger.info("Moved {} modules from the default partition to {}", movedRows, partitionName);
+        });
+    }
+
+}
@@ -0,0 +1,288 @@
+package se.onlyfin.onlyfinbackend.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+import se.onlyfin.onlyfinbackend.event.DashboardChangeEvent;
+import se.onlyfin.onlyfinbackend.event.ModuleChangeEvent;
+import se.onlyfin.onlyfinbackend.model.FeedCard;
+import se.onlyfin.onlyfinbackend.model.FeedCursor;
+import se.onlyfin.onlyfinbackend.model.User;
+import se.onlyfin.onlyfinbackend.repository.FeedCardRepository;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * This class keeps the latest feed cards of each analyst in memory so that the first pages of a feed can be
+ * served without querying the database.
+ * Every analyst gets a bounded ring buffer holding their newest feed cards in post-date order. Buffers are
+ * loaded the first time an analyst's feed cards are read and are then kept current by studio writes.
+ * A subscriber's feed is assembled by a k-way merge over the buffers of the subscribed-to analysts that stops
+ * as soon as the requested number of feed cards has been found.
+ */
+@Service
+public class RecentPostCache {
+    /**
+     * Feed order: descending post-date, ties broken by descending id.
+     */
+    public static final Comparator<FeedCard> NEWEST_FIRST =
+            Comparator.comparing(FeedCard::getPostDate).thenComparing(FeedCard::getId).reversed();
+
+    private final FeedCardRepository feedCardRepository;
+    private final int capacity;
+    private final ConcurrentHashMap<Integer, RecentPosts> postsByAnalyst = new ConcurrentHashMap<>();
+
+    public RecentPostCache(FeedCardRepository feedCardRepository,
+                           @Value("${onlyfin.feed.recent-posts.capacity:50}") int capacity) {
+        this.feedCardRepository = feedCardRepository;
+        this.capacity = capacity;
+    }
+
+    /**
+     * Merges the newest feed cards of a set of analysts.
+     * Only the buffers' heads are compared, so the cost depends on the limit and the number of analysts
+     * rather than on how much the analysts have posted.
+     *
+     * @param analysts the analysts to merge feed cards from
+     * @param before   only include feed cards that come after this cursor, null to start from the newest
+     * @param limit    maximum number of feed cards to return
+     * @return feed cards in feed order, or empty if the buffers don't reach far enough back and the database
+     * has to be queried instead
+     */
+    public Optional<List<FeedCard>> mergeLatest(Collection<User> analysts, @Nullable FeedCursor before, int limit) {
+        PriorityQueue<MergeSource> heads = new PriorityQueue<>(Math.max(1, analysts.size()),
+                (first, second) -> NEWEST_FIRST.compare(first.current, second.current));
+
+        for (User analyst : analysts) {
+            RecentPosts recentPosts = postsFor(analyst);
+            MergeSource source = recentPosts.readFrom(before);
+            if (source == null) {
+                return Optional.empty();
+            }
+            if (source.current != null) {
+                heads.add(source);
+            }
+        }
+
+        List<FeedCard> merged = new ArrayList<>(limit);
+        while (merged.size() < limit && !heads.isEmpty()) {
+            MergeSource source = heads.poll();
+            merged.add(source.current);
+
+            if (source.advance()) {
+                heads.add(source);
+            } else if (!source.recentPosts.fullHistory && merged.size() < limit) {
+                // older feed cards of this analyst are only in the database
+                return Optional.empty();
+            }
+        }
+
+        return Optional.of(merged);
+    }
+
+    /**
+     * Adds created feed cards to the analyst's buffer and replaces updated ones.
+     * Deleted feed cards drop the buffer so that it is reloaded on the next read.
+     *
+     * @param event the module change
+     */
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onModuleChange(ModuleChangeEvent event) {
+        if (event.type() == ModuleChangeEvent.Type.DELETED || !postsByAnalyst.containsKey(event.analystId())) {
+            postsByAnalyst.remove(event.analystId());
+            return;
+        }
+
+        Optional<FeedCard> feedCardOptional = feedCardRepository.findById(event.moduleId());
+        if (feedCardOptional.isEmpty()) {
+            postsByAnalyst.remove(event.analystId());
+            return;
+        }
+        FeedCard feedCard = feedCardOptional.get();
+
+        postsByAnalyst.computeIfPresent(event.analystId(), (analystId, recentPosts) -> {
+            boolean applied = (event.type() == ModuleChangeEvent.Type.CREATED)
+                    ? recentPosts.append(feedCard)
+                    : recentPosts.replace(feedCard);
+            return applied ? recentPosts : null;
+        });
+    }
+
+    /**
+     * Drops the analyst's buffer since renamed or deleted categories and stocks affect many feed cards at once.
+     *
+     * @param event the dashboard change
+     */
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onDashboardChange(DashboardChangeEvent event) {
+        postsByAnalyst.remove(event.analystId());
+    }
+
+    /**
+     * Returns the buffer of an analyst, loading it from the database if needed.
+     * Loading happens inside the map's compute so that studio writes for the same analyst wait for it.
+     *
+     * @param analyst the analyst
+     * @return the analyst's buffer
+     */
+    private RecentPosts postsFor(User analyst) {
+        return postsByAnalyst.computeIfAbsent(analyst.getId(), (analystId) -> {
+            List<FeedCard> newestFirst = feedCardRepository.findByAnalystIdOrderByPostDateDescIdDesc(
+                    analystId, PageRequest.ofSize(capacity));
+            return new RecentPosts(newestFirst, capacity);
+        });
+    }
+
+    /**
+     * Ring buffer of an analyst's newest feed cards.
+     * Every appended feed card gets an increasing sequence number and is stored in slot sequence % capacity,
+     * so the newest feed card always has the highest sequence number and the oldest one is overwritten first.
+     * Writers are serialized, readers don't lock and detect overwritten slots by their sequence number.
+     */
+    private static final class RecentPosts {
+        private final AtomicReferenceArray<Slot> slots;
+        private volatile long appended;
+        private volatile boolean fullHistory;
+
+        private RecentPosts(List<FeedCard> newestFirst, int capacity) {
+            this.slots = new AtomicReferenceArray<>(capacity);
+            this.fullHistory = newestFirst.size() < capacity;
+            for (int i = newestFirst.size() - 1; i >= 0; i--) {
+                slots.set((int) (appended % capacity), new Slot(appended, newestFirst.get(i)));
+                appended++;
+            }
+        }
+
+        /**
+         * Appends a new feed card.
+         *
+         * @param feedCard the feed card
+         * @return false if the feed card is not newer than the buffer's newest one and the buffer has to be reloaded
+         */
+        private synchronized boolean append(FeedCard feedCard) {
+            FeedCard newest = at(appended - 1);
+            if (newest != null && NEWEST_FIRST.compare(feedCard, newest) >= 0) {
+                return false;
+            }
+
+            if (appended >= slots.length()) {
+                fullHistory = false;
+            }
+            slots.set((int) (appended % slots.length()), new Slot(appended, feedCard));
+            appended++;
+            return true;
+        }
+
+        /**
+         * Replaces a buffered feed card with an updated copy.
+         *
+         * @param feedCard the updated feed card
+         * @return false if the feed card moved in the feed order and the buffer has to be reloaded
+         */
+        private synchronized boolean replace(FeedCard feedCard) {
+            for (long sequence = appended - 1; sequence >= oldestSequence(); sequence--) {
+                FeedCard buffered = at(sequence);
+                if (buffered != null && buffered.getId().equals(feedCard.getId())) {
+                    if (!buffered.getPostDate().equals(feedCard.getPostDate())) {
+                        return false;
+                    }
+                    slots.set((int) (sequence % slots.length()), new Slot(sequence, feedCard));
+                    return true;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Positions a reader at the newest buffered feed card that comes after a cursor.
+         *
+         * @param before the cursor, null to start from the newest feed card
+         * @return the reader, or null if the buffer can't tell what comes after the cursor
+         */
+        @Nullable
+        private MergeSource readFrom(@Nullable FeedCursor before) {
+            long newestSequence = appended - 1;
+            long low = oldestSequence();
+
+            if (before == null) {
+                return new MergeSource(this, newestSequence);
+            }
+
+            FeedCard cursorCard = new FeedCard();
+            cursorCard.setPostDate(before.postDate());
+            cursorCard.setId(before.id());
+
+            // binary search for the highest sequence whose feed card comes after the cursor in feed order
+            long high = newestSequence;
+            long found = low - 1;
+            while (low <= high) {
+                long middle = (low + high) >>> 1;
+                FeedCard feedCard = at(middle);
+                if (feedCard == null) {
+                    return null;
+                }
+                if (NEWEST_FIRST.compare(feedCard, cursorCard) > 0) {
+                    found = middle;
+                    low = middle + 1;
+                } else {
+                    high = middle - 1;
+                }
+            }
+
+            MergeSource source = new MergeSource(this, found);
+            if (source.current == null && !fullHistory) {
+                return null;
+            }
+            return source;
+        }
+
+        private long oldestSequence() {
+            return Math.max(0, appended - slots.length());
+        }
+
+        @Nullable
+        private FeedCard at(long sequence) {
+            if (sequence < 0) {
+                return null;
+            }
+            Slot slot = slots.get((int) (sequence % slots.length()));
+            return (slot != null && slot.sequence == sequence) ? slot.feedCard : null;
+        }
+
+        private record Slot(long sequence, FeedCard feedCard) {
+        }
+    }
+
+    /**
+     * Reads one buffer from newer to older feed cards during a merge.
+     */
+    private static final class MergeSource {
+        private final RecentPosts recentPosts;
+        private long sequence;
+        private FeedCard current;
+
+        private MergeSource(RecentPosts recentPosts, long sequence) {
+            this.recentPosts = recentPosts;
+            this.sequence = sequence;
+            this.current = recentPosts.at(sequence);
+        }
+
+        /**
+         * @return false if there are no more buffered feed cards to read
+         */
+        private boolean advance() {
+            sequence--;
+            current = recentPosts.at(sequence);
+            return current != null;
+        }
+    }
+
+}
@@ -0,0 +1,319 @@
+package se.onlyfin.onlyfinbackend.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.lang.Nullable;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+import se.onlyfin.onlyfinbackend.DTO.ProfileDTO;
+import se.onlyfin.onlyfinbackend.DTO.UserRecommendationStringDTO;
+import se.onlyfin.onlyfinbackend.event.DashboardChangeEvent;
+import se.onlyfin.onlyfinbackend.event.ModuleChangeEvent;
+import se.onlyfin.onlyfinbackend.event.SubscriptionChangeEvent;
+import se.onlyfin.onlyfinbackend.model.RawJson;
+import se.onlyfin.onlyfinbackend.model.UserRecommendation;
+import se.onlyfin.onlyfinbackend.repository.UserRecommendationRepository;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * This class computes the analyst suggestions of every user in the background and stores them in the user
+ * recommendation table, so that the suggestion endpoints only read one row.
+ * A full run recomputes every user on a ForkJoin pool. Between full runs, only users whose subscriptions changed,
+ * or whose subscribed-to analysts posted about a new stock or stopped covering one, are recomputed.
+ * Suggestions are computed from the in-memory {@link AnalystCoverageMatrix}, so the only queries are the ones
+ * loading subscriptions and names and the batched writes.
+ */
+@Service
+public class RecommendationService {
+    private static final Logger logger = LoggerFactory.getLogger(RecommendationService.class);
+    private static final String POPULAR_USER = "Popular user";
+    private static final int WRITE_BATCH_SIZE = 500;
+    private static final String UPSERT_SQL = "INSERT INTO user_recommendation " +
+            "(user_id, stock_suggestions, popular_profiles, computed_date) " +
+            "VALUES (?, CAST(? AS jsonb), CAST(? AS jsonb), ?) " +
+            "ON CONFLICT (user_id) DO UPDATE SET stock_suggestions = EXCLUDED.stock_suggestions, " +
+            "popular_profiles = EXCLUDED.popular_profiles, computed_date = EXCLUDED.computed_date";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedParameterJdbcTemplate;
+    private final UserRecommendationRepository userRecommendationRepository;
+    private final SubscriberLeaderboard subscriberLeaderboard;
+    private final AnalystCoverageMatrix analystCoverageMatrix;
+    private final FeedNameDictionary feedNameDictionary;
+    private final ObjectMapper objectMapper;
+    private final ForkJoinPool computePool;
+    private final Set<Integer> changedUserIds = ConcurrentHashMap.newKeySet();
+    private final Set<Integer> changedAnalystIds = ConcurrentHashMap.newKeySet();
+
+    public RecommendationService(JdbcTemplate jdbcTemplate,
+                                 UserRecommendationRepository userRecommendationRepository,
+                                 SubscriberLeaderboard subscriberLeaderboard,
+                                 AnalystCoverageMatrix analystCoverageMatrix, FeedNameDictionary feedNameDictionary,
+                                 ObjectMapper objectMapper,
+                                 @Value("${onlyfin.recommendations.parallelism:0}") int parallelism) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.namedParameterJdbcTemplate = new NamedParameterJdbcTemplate(jdbcTemplate);
+        this.userRecommendationRepository = userRecommendationRepository;
+        this.subscriberLeaderboard = subscriberLeaderboard;
+        this.analystCoverageMatrix = analystCoverageMatrix;
+        this.feedNameDictionary = feedNameDictionary;
+        this.objectMapper = objectMapper;
+        this.computePool = new ForkJoinPool((parallelism > 0) ? parallelism : Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Fetches a user's stored suggestions, computing them on the spot for a user that has none yet.
+     *
+     * @param userId id of the user
+     * @return the user's suggestions
+     */
+    public UserRecommendation findOrCompute(Integer userId) {
+        Optional<UserRecommendation> userRecommendation = userRecommendationRepository.findById(userId);
+        if (userRecommendation.isPresent()) {
+            return userRecommendation.get();
+        }
+
+        HashMap<Integer, List<Integer>> subscribedToIdsBySubscriber = loadSubscriptions(List.of(userId));
+        return store(Map.of(userId, subscribedToIdsBySubscriber.getOrDefault(userId, List.of()))).get(0);
+    }
+
+    /**
+     * Recomputes the suggestions of every user.
+     */
+    @Scheduled(initialDelayString = "${onlyfin.recommendations.initial-delay-millis:30000}",
+            fixedDelayString = "${onlyfin.recommendations.full-refresh-millis:3600000}")
+    public synchronized void refreshAll() {
+        changedUserIds.clear();
+        changedAnalystIds.clear();
+        try {
+            HashMap<Integer, List<Integer>> subscribedToIdsByUser = new HashMap<>();
+            for (Integer userId : jdbcTemplate.queryForList("SELECT id FROM users", Integer.class)) {
+                subscribedToIdsByUser.put(userId, new ArrayList<>());
+            }
+            jdbcTemplate.query("SELECT subscriber_id, subscribed_to_id FROM subscription", (resultSet) -> {
+                List<Integer> subscribedToIds = subscribedToIdsByUser.get(resultSet.getInt("subscriber_id"));
+                if (subscribedToIds != null) {
+                    subscribedToIds.add(resultSet.getInt("subscribed_to_id"));
+                }
+            });
+
+            logger.info("Computed recommendations for {} users", store(subscribedToIdsByUser).size());
+        } catch (DataAccessException | IllegalStateException e) {
+            logger.error("Could not compute recommendations", e);
+        }
+    }
+
+    /**
+     * Recomputes the suggestions of the users affected by changes since the last run.
+     */
+    @Scheduled(fixedDelayString = "${onlyfin.recommendations.incremental-millis:60000}")
+    public synchronized void refreshChanged() {
+        Set<Integer> userIds = drain(changedUserIds);
+        Set<Integer> analystIds = drain(changedAnalystIds);
+        try {
+            if (!analystIds.isEmpty()) {
+                userIds.addAll(namedParameterJdbcTemplate.queryForList(
+                        "SELECT DISTINCT subscriber_id FROM subscription WHERE subscribed_to_id IN (:analystIds)",
+                        Map.of("analystIds", analystIds), Integer.class));
+            }
+            if (userIds.isEmpty()) {
+                return;
+            }
+
+            HashMap<Integer, List<Integer>> subscribedToIdsByUser = loadSubscriptions(userIds);
+            for (Integer userId : userIds) {
+                subscribedToIdsByUser.putIfAbsent(userId, List.of());
+            }
+            store(subscribedToIdsByUser);
+        } catch (DataAccessException | IllegalStateException e) {
+            // try again on the next run
+            changedUserIds.addAll(userIds);
+            changedAnalystIds.addAll(analystIds);
+            logger.error("Could not update recommendations", e);
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onSubscriptionChange(SubscriptionChangeEvent event) {
+        changedUserIds.add(event.subscriberId());
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onModuleChange(ModuleChangeEvent event) {
+        if (event.type() != ModuleChangeEvent.Type.UPDATED) {
+            changedAnalystIds.add(event.analystId());
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onDashboardChange(DashboardChangeEvent event) {
+        changedAnalystIds.add(event.analystId());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        computePool.shutdownNow();
+    }
+
+    /**
+     * Computes the suggestions of a set of users in parallel and writes them in batches.
+     *
+     * @param subscribedToIdsByUser ids of the subscribed-to analysts of every user to compute
+     * @return the stored suggestions
+     */
+    private List<UserRecommendation> store(Map<Integer, List<Integer>> subscribedToIdsByUser) {
+        List<Integer> popularAnalystIds = subscriberLeaderboard.findTop(7);
+        feedNameDictionary.loadAnalystNames(popularAnalystIds);
+        List<ProfileDTO> popularProfiles = new ArrayList<>(popularAnalystIds.size());
+        for (Integer analystId : popularAnalystIds) {
+            popularProfiles.add(new ProfileDTO(feedNameDictionary.analystName(analystId), analystId));
+        }
+
+        List<Map.Entry<Integer, List<Integer>>> users = new ArrayList<>(subscribedToIdsByUser.entrySet());
+        List<StockSuggestions> computed = computePool.submit(() -> users.parallelStream()
+                .map((user) -> computeStockSuggestions(user.getKey(), user.getValue()))
+                .toList()).join();
+
+        Set<Integer> analystIds = new HashSet<>();
+        Set<Integer> stockRefIds = new HashSet<>();
+        for (StockSuggestions stockSuggestions : computed) {
+            stockRefIds.addAll(stockSuggestions.analystIdByStockRef().keySet());
+            analystIds.addAll(stockSuggestions.analystIdByStockRef().values());
+        }
+        feedNameDictionary.loadAnalystNames(analystIds);
+        feedNameDictionary.loadStockNames(stockRefIds);
+
+        Instant computedDate = Instant.now();
+        List<UserRecommendation> userRecommendations = new ArrayList<>(computed.size());
+        List<Object[]> batch = new ArrayList<>(WRITE_BATCH_SIZE);
+        for (StockSuggestions stockSuggestions : computed) {
+            UserRecommendation userRecommendation = toUserRecommendation(stockSuggestions, popularProfiles, computedDate);
+            userRecommendations.add(userRecommendation);
+            batch.add(new Object[]{
+                    userRecommendation.getUserId(),
+                    toText(userRecommendation.getStockSuggestions()),
+                    toText(userRecommendation.getPopularProfiles()),
+                    Timestamp.from(computedDate)});
+            if (batch.size() == WRITE_BATCH_SIZE) {
+                jdbcTemplate.batchUpdate(UPSERT_SQL, batch);
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            jdbcTemplate.batchUpdate(UPSERT_SQL, batch);
+        }
+        return userRecommendations;
+    }
+
+    /**
+     * For every stock the user's subscribed-to analysts post about, most posted-about first, finds the analyst
+     * the user isn't subscribed to who posts the most about it.
+     * Only reads the coverage matrix, so it is safe to run on many threads at once.
+     */
+    private StockSuggestions computeStockSuggestions(Integer userId, List<Integer> subscribedToIds) {
+        if (subscribedToIds.isEmpty()) {
+            return new StockSuggestions(userId, false, new LinkedHashMap<>());
+        }
+
+        List<Map.Entry<Integer, Integer>> stockPostCounts =
+                new ArrayList<>(analystCoverageMatrix.stockPostCounts(subscribedToIds).entrySet());
+        stockPostCounts.sort(Map.Entry.<Integer, Integer>comparingByValue().reversed());
+
+        Set<Integer> excludedAnalystIds = new HashSet<>(subscribedToIds);
+        excludedAnalystIds.add(userId);
+
+        LinkedHashMap<Integer, Integer> analystIdByStockRef = new LinkedHashMap<>();
+        for (Map.Entry<Integer, Integer> stockPostCount : stockPostCounts) {
+            analystCoverageMatrix.findMostActiveAnalyst(stockPostCount.getKey(), excludedAnalystIds)
+                    .ifPresent((analystId) -> analystIdByStockRef.put(stockPostCount.getKey(), analystId));
+        }
+        return new StockSuggestions(userId, true, analystIdByStockRef);
+    }
+
+    private UserRecommendation toUserRecommendation(StockSuggestions stockSuggestions, List<ProfileDTO> popularProfiles,
+                                                    Instant computedDate) {
+        Set<ProfileDTO> popularForUser = new LinkedHashSet<>();
+        for (ProfileDTO profile : popularProfiles) {
+            if (profile.id() != stockSuggestions.userId()) {
+                popularForUser.add(profile);
+            }
+        }
+
+        // users without subscriptions are suggested the popular analysts instead
+        Set<UserRecommendationStringDTO> suggestions = new LinkedHashSet<>();
+        if (stockSuggestions.hasSubscriptions()) {
+            stockSuggestions.analystIdByStockRef().forEach((stockRefId, analystId) -> suggestions.add(
+                    new UserRecommendationStringDTO(feedNameDictionary.stockName(stockRefId),
+                            new ProfileDTO(feedNameDictionary.analystName(analystId), analystId))));
+        } else {
+            for (ProfileDTO profile : popularForUser) {
+                suggestions.add(new UserRecommendationStringDTO(POPULAR_USER, profile));
+            }
+        }
+
+        return new UserRecommendation(stockSuggestions.userId(), toJsonOrNull(suggestions),
+                toJsonOrNull(popularForUser), computedDate);
+    }
+
+    private HashMap<Integer, List<Integer>> loadSubscriptions(Collection<Integer> subscriberIds) {
+        HashMap<Integer, List<Integer>> subscribedToIdsBySubscriber = new HashMap<>();
+        namedParameterJdbcTemplate.query(
+                "SELECT subscriber_id, subscribed_to_id FROM subscription WHERE subscriber_id IN (:subscriberIds)",
+                Map.of("subscriberIds", subscriberIds), (resultSet) -> {
+                    subscribedToIdsBySubscriber
+                            .computeIfAbsent(resultSet.getInt("subscriber_id"), (key) -> new ArrayList<>())
+                            .add(resultSet.getInt("subscribed_to_id"));
+                });
+        return subscribedToIdsBySubscriber;
+    }
+
+    private RawJson toJsonOrNull(Collection<?> values) {
+        if (values.isEmpty()) {
+            return null;
+        }
+
+        try {
+            return RawJson.ofUtf8(objectMapper.writeValueAsBytes(values));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not serialize recommendations", e);
+        }
+    }
+
+    private static String toText(@Nullable RawJson json) {
+        return (json == null) ? null : json.getValue();
+    }
+
+    private static Set<Integer> drain(Set<Integer> changedIds) {
+        Set<Integer> drained = new HashSet<>();
+        for (Iterator<Integer> iterator = changedIds.iterator(); iterator.hasNext(); ) {
+            drained.add(iterator.next());
+            iterator.remove();
+        }
+        return drained;
+    }
+
+    /**
+     * The suggested analyst per stock for one user, before names are looked up.
+     *
+     * @param userId              id of the user
+     * @param hasSubscriptions    whether the user is subscribed to anyone
+     * @param analystIdByStockRef suggested analyst ids keyed by stock reference id, in suggestion order
+     */
+    private record StockSuggestions(Integer userId, boolean hasSubscriptions,
+                                    LinkedHashMap<Integer, Integer> analystIdByStockRef) {
+    }
+
+}
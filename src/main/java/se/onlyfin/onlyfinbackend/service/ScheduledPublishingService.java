@@ -0,0 +1,301 @@
+package se.onlyfin.onlyfinbackend.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+import se.onlyfin.onlyfinbackend.event.ModuleChangeEvent;
+import se.onlyfin.onlyfinbackend.event.ModuleScheduledEvent;
+import se.onlyfin.onlyfinbackend.model.ScheduledModule;
+import se.onlyfin.onlyfinbackend.repository.FeedCardRepository;
+import se.onlyfin.onlyfinbackend.repository.ModuleRepository;
+import se.onlyfin.onlyfinbackend.repository.ScheduledModuleRepository;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class publishes modules that analysts have created with a publish time in the future.
+ * Until it is published, a module has a row in the scheduled module table, which keeps it out of the feed card
+ * table and the dashboard. The table is the durable record of what is due; every instance loads the modules that
+ * are due within the next few minutes into an in-memory hashed timer wheel, which releases them when they are due.
+ * At most a fixed number of modules is released per tick, in one transaction, so a burst of modules scheduled
+ * for the same moment is published over the following ticks instead of all at once.
+ * Releasing a module removes its row first, so a module is published once even if several instances are running.
+ */
+@Service
+public class ScheduledPublishingService {
+    private static final Logger logger = LoggerFactory.getLogger(ScheduledPublishingService.class);
+    private final ScheduledModuleRepository scheduledModuleRepository;
+    private final ModuleRepository moduleRepository;
+    private final FeedCardRepository feedCardRepository;
+    private final FeedVersionService feedVersionService;
+    private final ApplicationEventPublisher eventPublisher;
+    private final TransactionTemplate transactionTemplate;
+    private final long tickMillis;
+    private final Duration horizon;
+    private final int maxReleasesPerTick;
+    private final TimerWheel timerWheel;
+    private final ScheduledExecutorService ticker;
+
+    public ScheduledPublishingService(ScheduledModuleRepository scheduledModuleRepository,
+                                      ModuleRepository moduleRepository,
+                                      FeedCardRepository feedCardRepository,
+                                      FeedVersionService feedVersionService,
+                                      ApplicationEventPublisher eventPublisher,
+                                      PlatformTransactionManager transactionManager,
+                                      @Value("${onlyfin.scheduled-publishing.tick-millis:1000}") long tickMillis,
+                                      @Value("${onlyfin.scheduled-publishing.wheel-size:512}") int wheelSize,
+                                      @Value("${onlyfin.scheduled-publishing.horizon-minutes:5}") long horizonMinutes,
+                                      @Value("${onlyfin.scheduled-publishing.max-releases-per-tick:50}") int maxReleasesPerTick) {
+        this.scheduledModuleRepository = scheduledModuleRepository;
+        this.moduleRepository = moduleRepository;
+        this.feedCardRepository = feedCardRepository;
+        this.feedVersionService = feedVersionService;
+        this.eventPublisher = eventPublisher;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.tickMillis = tickMillis;
+        this.horizon = Duration.ofMinutes(horizonMinutes);
+        this.maxReleasesPerTick = maxReleasesPerTick;
+        this.timerWheel = new TimerWheel(tickMillis, wheelSize, System.currentTimeMillis());
+        this.ticker = Executors.newSingleThreadScheduledExecutor();
+    }
+
+    /**
+     * Starts advancing the timer wheel once the service is fully constructed.
+     */
+    @PostConstruct
+    public void start() {
+        ticker.scheduleAtFixedRate(this::tick, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Schedules a saved module to be published later.
+     * Must be called inside the transaction that created the module.
+     *
+     * @param moduleId  id of the module
+     * @param analystId id of the analyst owning the module
+     * @param publishAt when to publish the module
+     */
+    public void schedule(Integer moduleId, Integer analystId, Instant publishAt) {
+        scheduledModuleRepository.save(new ScheduledModule(moduleId, analystId, publishAt));
+        eventPublisher.publishEvent(new ModuleScheduledEvent(moduleId, analystId, publishAt));
+    }
+
+    /**
+     * @param moduleId id of the module
+     * @return whether the module is scheduled and not published yet
+     */
+    public boolean isScheduled(Integer moduleId) {
+        return scheduledModuleRepository.existsById(moduleId);
+    }
+
+    /**
+     * @param moduleId id of the module
+     * @return the module's schedule, or empty if the module is published or doesn't exist
+     */
+    public Optional<ScheduledModule> findSchedule(Integer moduleId) {
+        return scheduledModuleRepository.findById(moduleId);
+    }
+
+    /**
+     * Cancels the schedule of a module that is being deleted.
+     *
+     * @param moduleId id of the module
+     * @return whether the module was scheduled and not published yet
+     */
+    public boolean cancel(Integer moduleId) {
+        timerWheel.cancel(moduleId);
+        return scheduledModuleRepository.removeSchedule(moduleId) > 0;
+    }
+
+    /**
+     * Cancels the schedules of the modules in a category that is being deleted, so that the modules are deleted
+     * along with it. Their entries on the timer wheel are skipped when they come due.
+     *
+     * @param categoryId id of the category
+     */
+    public void cancelCategory(Integer categoryId) {
+        scheduledModuleRepository.removeSchedulesByCategoryId(categoryId);
+    }
+
+    /**
+     * Cancels the schedules of the modules under a stock that is being deleted.
+     *
+     * @param stockId id of the stock
+     */
+    public void cancelStock(Integer stockId) {
+        scheduledModuleRepository.removeSchedulesByStockId(stockId);
+    }
+
+    /**
+     * @param analystId id of the analyst
+     * @return the analyst's modules that are not published yet, soonest first
+     */
+    public List<ScheduledModule> findScheduled(Integer analystId) {
+        return scheduledModuleRepository.findByAnalystIdOrderByPublishAt(analystId);
+    }
+
+    /**
+     * Puts a newly scheduled module on the timer wheel once it is committed, if it is due within the horizon.
+     * Modules further ahead are picked up by {@link #loadUpcoming()}.
+     *
+     * @param event the scheduled module
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onModuleScheduled(ModuleScheduledEvent event) {
+        if (event.publishAt().isBefore(Instant.now().plus(horizon))) {
+            timerWheel.add(event.moduleId(), event.analystId(), event.publishAt());
+        }
+    }
+
+    /**
+     * Loads the modules that are due within the horizon onto the timer wheel.
+     * Modules that are already on the wheel are left alone, and overdue modules are released on the next tick.
+     */
+    @Scheduled(fixedDelayString = "${onlyfin.scheduled-publishing.load-millis:60000}")
+    public void loadUpcoming() {
+        List<ScheduledModule> upcoming =
+                scheduledModuleRepository.findByPublishAtBeforeOrderByPublishAt(Instant.now().plus(horizon));
+        for (ScheduledModule scheduledModule : upcoming) {
+            timerWheel.add(scheduledModule.getModuleId(), scheduledModule.getAnalystId(), scheduledModule.getPublishAt());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        ticker.shutdownNow();
+    }
+
+    /**
+     * Advances the timer wheel and publishes the modules that have become due.
+     * Failures are only logged: the rows are still in the table, so the next load puts them back on the wheel.
+     */
+    private void tick() {
+        try {
+            List<TimerWheel.Entry> dueEntries = timerWheel.advance(System.currentTimeMillis(), maxReleasesPerTick);
+            if (dueEntries.isEmpty()) {
+                return;
+            }
+
+            Integer publishedCount = transactionTemplate.execute((status) -> release(dueEntries));
+            logger.info("Published {} scheduled modules", publishedCount);
+        } catch (RuntimeException e) {
+            logger.error("Could not publish scheduled modules", e);
+        }
+    }
+
+    private int release(List<TimerWheel.Entry> dueEntries) {
+        int publishedCount = 0;
+        for (TimerWheel.Entry entry : dueEntries) {
+            if (scheduledModuleRepository.removeSchedule(entry.moduleId()) == 0) {
+                // cancelled, or released by another instance
+                continue;
+            }
+            if (moduleRepository.markPublished(entry.moduleId(), entry.publishAt()) == 0) {
+                continue;
+            }
+
+            feedCardRepository.refreshFromModule(entry.moduleId());
+            feedVersionService.bump(entry.analystId());
+            eventPublisher.publishEvent(new ModuleChangeEvent(
+                    ModuleChangeEvent.Type.CREATED, entry.moduleId(), entry.analystId()));
+            publishedCount++;
+        }
+        return publishedCount;
+    }
+
+    /**
+     * A hashed timer wheel: a ring of slots, each covering one tick, that entries are hashed into by the tick
+     * they are due at. Entries due more than one revolution ahead share a slot with nearer ones and are skipped
+     * until their tick comes around. Adding and cancelling are constant time, and each tick only looks at one slot.
+     */
+    static final class TimerWheel {
+        private final long tickMillis;
+        private final List<List<Entry>> slots;
+        private final Set<Integer> pendingModuleIds = new HashSet<>();
+        private final ArrayDeque<Entry> expired = new ArrayDeque<>();
+        private long currentTick;
+
+        TimerWheel(long tickMillis, int wheelSize, long startMillis) {
+            this.tickMillis = tickMillis;
+            this.slots = new ArrayList<>(wheelSize);
+            for (int i = 0; i < wheelSize; i++) {
+                slots.add(new ArrayList<>());
+            }
+            this.currentTick = startMillis / tickMillis;
+        }
+
+        /**
+         * Adds a module to the wheel unless it is already on it.
+         * Overdue modules are put in the next slot.
+         */
+        synchronized void add(Integer moduleId, Integer analystId, Instant publishAt) {
+            if (!pendingModuleIds.add(moduleId)) {
+                return;
+            }
+
+            long dueTick = Math.max(Math.floorDiv(publishAt.toEpochMilli() + tickMillis - 1, tickMillis), currentTick + 1);
+            slots.get((int) Math.floorMod(dueTick, (long) slots.size())).add(new Entry(moduleId, analystId, publishAt, dueTick));
+        }
+
+        /**
+         * Takes a module off the wheel. Its entry stays in its slot and is dropped when the slot is next visited.
+         */
+        synchronized void cancel(Integer moduleId) {
+            pendingModuleIds.remove(moduleId);
+        }
+
+        /**
+         * Moves the wheel forward to the current time and hands out the entries that have become due.
+         * Entries beyond the limit stay queued and are handed out first on the next call.
+         *
+         * @param nowMillis the current time
+         * @param limit     maximum number of entries to hand out
+         * @return the due entries, oldest first
+         */
+        synchronized List<Entry> advance(long nowMillis, int limit) {
+            long nowTick = nowMillis / tickMillis;
+            // after a pause longer than a revolution, visiting every slot once is enough
+            long ticksToVisit = Math.min(nowTick - currentTick, slots.size());
+            for (long tick = nowTick - ticksToVisit + 1; tick <= nowTick; tick++) {
+                List<Entry> slot = slots.get((int) Math.floorMod(tick, (long) slots.size()));
+                Iterator<Entry> iterator = slot.iterator();
+                while (iterator.hasNext()) {
+                    Entry entry = iterator.next();
+                    if (!pendingModuleIds.contains(entry.moduleId())) {
+                        iterator.remove();
+                    } else if (entry.dueTick() <= nowTick) {
+                        iterator.remove();
+                        expired.add(entry);
+                    }
+                }
+            }
+            currentTick = Math.max(currentTick, nowTick);
+
+            List<Entry> dueEntries = new ArrayList<>(Math.min(limit, expired.size()));
+            while (dueEntries.size() < limit && !expired.isEmpty()) {
+                Entry entry = expired.poll();
+                if (pendingModuleIds.remove(entry.moduleId())) {
+                    dueEntries.add(entry);
+                }
+            }
+            return dueEntries;
+        }
+
+        record Entry(Integer moduleId, Integer analystId, Instant publishAt, long dueTick) {
+        }
+    }
+
+}
@@ -0,0 +1,240 @@
+package se.onlyfin.onlyfinbackend.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+import se.onlyfin.onlyfinbackend.event.StockCoverageChangeEvent;
+
+import java.util.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * This class finds analysts that cover similar stocks, measured by the Jaccard similarity of the sets of stock
+ * references on their dashboards.
+ * Instead of comparing an analyst with every other analyst, every analyst gets a MinHash signature of their
+ * coverage set. The signature is split into bands, and analysts that share all values of at least one band end up
+ * in the same bucket. Only analysts sharing a bucket with the target are compared exactly, which finds analysts
+ * with a high similarity with a high probability.
+ * The index is built on startup and an analyst's entry is rebuilt whenever a stock is added to or removed from
+ * their dashboard, or their analyst status changes.
+ */
+@Service
+public class SimilarAnalystIndex {
+    private static final Logger logger = LoggerFactory.getLogger(SimilarAnalystIndex.class);
+    private static final long PRIME = (1L << 31) - 1;
+    private static final String COVERAGE_SQL = "SELECT s.dashboard_id, s.stock_ref_id FROM stock s " +
+            "JOIN users u ON u.id = s.dashboard_id " +
+            "WHERE u.is_analyst AND s.stock_ref_id IS NOT NULL";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final int bands;
+    private final int rowsPerBand;
+    private final long[] hashMultipliers;
+    private final long[] hashOffsets;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final HashMap<Integer, AnalystCoverage> coverageByAnalyst = new HashMap<>();
+    private final HashMap<Long, Set<Integer>> analystsByBucket = new HashMap<>();
+
+    public SimilarAnalystIndex(JdbcTemplate jdbcTemplate,
+                               @Value("${onlyfin.similar-analysts.bands:16}") int bands,
+                               @Value("${onlyfin.similar-analysts.rows-per-band:4}") int rowsPerBand) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.bands = bands;
+        this.rowsPerBand = rowsPerBand;
+
+        // fixed seed, so that signatures are the same on every instance
+        Random random = new Random(0x5EED);
+        int signatureLength = bands * rowsPerBand;
+        this.hashMultipliers = new long[signatureLength];
+        this.hashOffsets = new long[signatureLength];
+        for (int i = 0; i < signatureLength; i++) {
+            hashMultipliers[i] = 1 + random.nextInt((int) (PRIME - 1));
+            hashOffsets[i] = random.nextInt((int) PRIME);
+        }
+    }
+
+    /**
+     * Builds the index from the stocks on every analyst's dashboard.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        HashMap<Integer, Set<Integer>> stockRefIdsByAnalyst = new HashMap<>();
+        try {
+            jdbcTemplate.query(COVERAGE_SQL, (resultSet) -> {
+                stockRefIdsByAnalyst.computeIfAbsent(resultSet.getInt("dashboard_id"), (key) -> new HashSet<>())
+                        .add(resultSet.getInt("stock_ref_id"));
+            });
+        } catch (DataAccessException e) {
+            logger.error("Could not load stock coverage", e);
+            return;
+        }
+
+        lock.writeLock().lock();
+        try {
+            coverageByAnalyst.clear();
+            analystsByBucket.clear();
+            stockRefIdsByAnalyst.forEach(this::put);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        logger.info("Indexed stock coverage of {} analysts", coverageByAnalyst.size());
+    }
+
+    /**
+     * Reloads an analyst's coverage and moves the analyst to the buckets of its new signature.
+     * Users that are not analysts, or cover no stocks, are removed from the index.
+     *
+     * @param analystId id of the analyst
+     */
+    public void refreshAnalyst(Integer analystId) {
+        Set<Integer> stockRefIds = new HashSet<>(jdbcTemplate.queryForList(
+                "SELECT stock_ref_id FROM (" + COVERAGE_SQL + " AND s.dashboard_id = ?) coverage",
+                Integer.class, analystId));
+
+        lock.writeLock().lock();
+        try {
+            remove(analystId);
+            put(analystId, stockRefIds);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Finds the analysts whose covered stocks overlap the most with an analyst's.
+     *
+     * @param analystId id of the analyst
+     * @param limit     maximum number of analysts to return
+     * @return ids of similar analysts, most similar first, or empty if the analyst covers no stocks
+     */
+    public List<Integer> findSimilar(Integer analystId, int limit) {
+        lock.readLock().lock();
+        try {
+            AnalystCoverage target = coverageByAnalyst.get(analystId);
+            if (target == null) {
+                return List.of();
+            }
+
+            Set<Integer> candidateIds = new HashSet<>();
+            for (int band = 0; band < bands; band++) {
+                candidateIds.addAll(analystsByBucket.getOrDefault(bucketKey(target.signature(), band), Set.of()));
+            }
+            candidateIds.remove(analystId);
+
+            HashMap<Integer, Double> similarities = new HashMap<>();
+            for (Integer candidateId : candidateIds) {
+                double similarity = jaccard(target.stockRefIds(), coverageByAnalyst.get(candidateId).stockRefIds());
+                if (similarity > 0) {
+                    similarities.put(candidateId, similarity);
+                }
+            }
+
+            return similarities.entrySet().stream()
+                    .sorted(Map.Entry.<Integer, Double>comparingByValue().reversed())
+                    .limit(Math.max(limit, 0))
+                    .map(Map.Entry::getKey)
+                    .toList();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onStockCoverageChange(StockCoverageChangeEvent event) {
+        refreshAnalyst(event.analystId());
+    }
+
+    private void put(Integer analystId, Set<Integer> stockRefIds) {
+        if (stockRefIds.isEmpty()) {
+            return;
+        }
+
+        int[] sortedStockRefIds = stockRefIds.stream().mapToInt(Integer::intValue).sorted().toArray();
+        AnalystCoverage coverage = new AnalystCoverage(sortedStockRefIds, signature(sortedStockRefIds));
+        coverageByAnalyst.put(analystId, coverage);
+        for (int band = 0; band < bands; band++) {
+            analystsByBucket.computeIfAbsent(bucketKey(coverage.signature(), band), (key) -> new HashSet<>())
+                    .add(analystId);
+        }
+    }
+
+    private void remove(Integer analystId) {
+        AnalystCoverage coverage = coverageByAnalyst.remove(analystId);
+        if (coverage == null) {
+            return;
+        }
+
+        for (int band = 0; band < bands; band++) {
+            long bucketKey = bucketKey(coverage.signature(), band);
+            Set<Integer> bucket = analystsByBucket.get(bucketKey);
+            if (bucket != null) {
+                bucket.remove(analystId);
+                if (bucket.isEmpty()) {
+                    analystsByBucket.remove(bucketKey);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return for every hash function, the smallest hash of any of the stock reference ids
+     */
+    private int[] signature(int[] stockRefIds) {
+        int[] signature = new int[hashMultipliers.length];
+        Arrays.fill(signature, Integer.MAX_VALUE);
+        for (int stockRefId : stockRefIds) {
+            for (int i = 0; i < signature.length; i++) {
+                int hash = (int) ((hashMultipliers[i] * Integer.toUnsignedLong(stockRefId) + hashOffsets[i]) % PRIME);
+                if (hash < signature[i]) {
+                    signature[i] = hash;
+                }
+            }
+        }
+        return signature;
+    }
+
+    /**
+     * @return key of the bucket for one band of a signature, which includes the band so that bands don't mix
+     */
+    private long bucketKey(int[] signature, int band) {
+        int bandHash = 1;
+        for (int row = band * rowsPerBand; row < (band + 1) * rowsPerBand; row++) {
+            bandHash = 31 * bandHash + signature[row];
+        }
+        return ((long) band << 32) | Integer.toUnsignedLong(bandHash);
+    }
+
+    /**
+     * @return the size of the intersection divided by the size of the union of two sorted sets
+     */
+    private static double jaccard(int[] first, int[] second) {
+        int intersection = 0;
+        int i = 0;
+        int j = 0;
+        while (i < first.length && j < second.length) {
+            if (first[i] == second[j]) {
+                intersection++;
+                i++;
+                j++;
+            } else if (first[i] < second[j]) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        return (double) intersection / (first.length + second.length - intersection);
+    }
+
+    /**
+     * The stocks an analyst covers, as sorted stock reference ids, and their MinHash signature.
+     */
+    private record AnalystCoverage(int[] stockRefIds, int[] signature) {
+    }
+
+}
@@ -0,0 +1,234 @@
+package se.onlyfin.onlyfinbackend.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+import se.onlyfin.onlyfinbackend.event.SubscriptionChangeEvent;
+import se.onlyfin.onlyfinbackend.model.SubscriberCount;
+import se.onlyfin.onlyfinbackend.repository.SubscriptionRepository;
+
+import java.util.*;
+
+/**
+ * This class ranks analysts by their number of subscribers.
+ * The analysts are kept in an array sorted by subscriber count, most first, where analysts with the same count
+ * form a contiguous group whose first and last positions are known. Since a subscription changes a count by one,
+ * the analyst only has to swap places with the first or last analyst of its group to keep the array sorted, so
+ * updates and rank lookups take constant time and the top N analysts are simply the first N entries.
+ * The counts are loaded on startup with a single grouped query and then kept up to date by subscription changes
+ * and by analysts being added or removed.
+ */
+@Service
+public class SubscriberLeaderboard {
+    private static final Logger logger = LoggerFactory.getLogger(SubscriberLeaderboard.class);
+    private final SubscriptionRepository subscriptionRepository;
+
+    private int[] analystIds = new int[16];
+    private int[] subscriberCounts = new int[16];
+    private int size;
+    private final HashMap<Integer, Integer> positionByAnalyst = new HashMap<>();
+    private final HashMap<Integer, Integer> firstPositionByCount = new HashMap<>();
+    private final HashMap<Integer, Integer> lastPositionByCount = new HashMap<>();
+
+    public SubscriberLeaderboard(SubscriptionRepository subscriptionRepository) {
+        this.subscriptionRepository = subscriptionRepository;
+    }
+
+    /**
+     * Loads the subscriber count of every analyst.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void load() {
+        List<SubscriberCount> counts = new ArrayList<>(subscriptionRepository.countSubscribersOfAllAnalysts());
+        counts.sort(Comparator.comparingLong(SubscriberCount::getSubscriberCount).reversed());
+
+        analystIds = new int[Math.max(16, counts.size())];
+        subscriberCounts = new int[analystIds.length];
+        size = 0;
+        positionByAnalyst.clear();
+        firstPositionByCount.clear();
+        lastPositionByCount.clear();
+        for (SubscriberCount count : counts) {
+            int subscriberCount = count.getSubscriberCount().intValue();
+            analystIds[size] = count.getAnalystId();
+            subscriberCounts[size] = subscriberCount;
+            positionByAnalyst.put(count.getAnalystId(), size);
+            firstPositionByCount.putIfAbsent(subscriberCount, size);
+            lastPositionByCount.put(subscriberCount, size);
+            size++;
+        }
+        logger.info("Loaded subscriber counts of {} analysts", size);
+    }
+
+    /**
+     * Adds an analyst to the leaderboard with its current number of subscribers.
+     *
+     * @param analystId id of the analyst
+     */
+    public synchronized void addAnalyst(Integer analystId) {
+        if (positionByAnalyst.containsKey(analystId)) {
+            return;
+        }
+
+        append(analystId);
+        long subscriberCount = subscriptionRepository.countBySubscribedToId(analystId);
+        for (long i = 0; i < subscriberCount; i++) {
+            increment(analystId);
+        }
+    }
+
+    /**
+     * Removes a user that is no longer an analyst from the leaderboard.
+     *
+     * @param analystId id of the user
+     */
+    public synchronized void removeAnalyst(Integer analystId) {
+        Integer position = positionByAnalyst.get(analystId);
+        if (position == null) {
+            return;
+        }
+
+        // move the analyst down to the end of the array one subscriber at a time, then drop it
+        while (subscriberCounts[position] > 0) {
+            position = decrement(position);
+        }
+        position = swap(position, lastPositionByCount.get(0));
+        if (firstPositionByCount.get(0).equals(position)) {
+            firstPositionByCount.remove(0);
+            lastPositionByCount.remove(0);
+        } else {
+            lastPositionByCount.put(0, position - 1);
+        }
+        positionByAnalyst.remove(analystId);
+        size--;
+    }
+
+    /**
+     * @param limit maximum number of analysts to return
+     * @return ids of the most subscribed-to analysts, most subscribers first
+     */
+    public synchronized List<Integer> findTop(int limit) {
+        List<Integer> topAnalystIds = new ArrayList<>(Math.min(Math.max(limit, 0), size));
+        for (int position = 0; position < Math.min(limit, size); position++) {
+            topAnalystIds.add(analystIds[position]);
+        }
+        return topAnalystIds;
+    }
+
+    /**
+     * Finds the rank of an analyst. Analysts with the same number of subscribers share a rank.
+     *
+     * @param analystId id of the analyst
+     * @return one more than the number of analysts with more subscribers, or empty if the user isn't an analyst
+     */
+    public synchronized OptionalInt findRank(Integer analystId) {
+        Integer position = positionByAnalyst.get(analystId);
+        if (position == null) {
+            return OptionalInt.empty();
+        }
+        return OptionalInt.of(firstPositionByCount.get(subscriberCounts[position]) + 1);
+    }
+
+    /**
+     * @param analystId id of the analyst
+     * @return the analyst's number of subscribers, or empty if the user isn't an analyst
+     */
+    public synchronized OptionalInt findSubscriberCount(Integer analystId) {
+        Integer position = positionByAnalyst.get(analystId);
+        if (position == null) {
+            return OptionalInt.empty();
+        }
+        return OptionalInt.of(subscriberCounts[position]);
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public synchronized void onSubscriptionChange(SubscriptionChangeEvent event) {
+        Integer position = positionByAnalyst.get(event.subscribedToId());
+        if (position == null) {
+            return;
+        }
+
+        if (event.subscribed()) {
+            increment(event.subscribedToId());
+        } else if (subscriberCounts[position] > 0) {
+            decrement(position);
+        }
+    }
+
+    /**
+     * Adds an analyst without subscribers at the end of the array.
+     */
+    private void append(int analystId) {
+        if (size == analystIds.length) {
+            analystIds = Arrays.copyOf(analystIds, size * 2);
+            subscriberCounts = Arrays.copyOf(subscriberCounts, size * 2);
+        }
+
+        analystIds[size] = analystId;
+        subscriberCounts[size] = 0;
+        positionByAnalyst.put(analystId, size);
+        firstPositionByCount.putIfAbsent(0, size);
+        lastPositionByCount.put(0, size);
+        size++;
+    }
+
+    /**
+     * Moves an analyst to the front of its group and then into the group above it.
+     */
+    private void increment(int analystId) {
+        int count = subscriberCounts[positionByAnalyst.get(analystId)];
+        int position = swap(positionByAnalyst.get(analystId), firstPositionByCount.get(count));
+
+        if (lastPositionByCount.get(count) == position) {
+            firstPositionByCount.remove(count);
+            lastPositionByCount.remove(count);
+        } else {
+            firstPositionByCount.put(count, position + 1);
+        }
+        firstPositionByCount.putIfAbsent(count + 1, position);
+        lastPositionByCount.put(count + 1, position);
+        subscriberCounts[position] = count + 1;
+    }
+
+    /**
+     * Moves an analyst to the back of its group and then into the group below it.
+     *
+     * @return the new position of the analyst
+     */
+    private int decrement(int position) {
+        int count = subscriberCounts[position];
+        position = swap(position, lastPositionByCount.get(count));
+
+        if (firstPositionByCount.get(count) == position) {
+            firstPositionByCount.remove(count);
+            lastPositionByCount.remove(count);
+        } else {
+            lastPositionByCount.put(count, position - 1);
+        }
+        if (!firstPositionByCount.containsKey(count - 1)) {
+            lastPositionByCount.put(count - 1, position);
+        }
+        firstPositionByCount.put(count - 1, position);
+        subscriberCounts[position] = count - 1;
+        return position;
+    }
+
+    /**
+     * Swaps two analysts with the same subscriber count.
+     *
+     * @return the second position, where the analyst at the first position now is
+     */
+    private int swap(int position, int otherPosition) {
+        int analystId = analystIds[position];
+        int otherAnalystId = analystIds[otherPosition];
+        analystIds[position] = otherAnalystId;
+        analystIds[otherPosition] = analystId;
+        positionByAnalyst.put(otherAnalystId, position);
+        positionByAnalyst.put(analystId, otherPosition);
+        return otherPosition;
+    }
+
+}
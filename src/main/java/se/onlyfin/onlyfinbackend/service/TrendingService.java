@@ -0,0 +1,293 @@
+package se.onlyfin.onlyfinbackend.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+import se.onlyfin.onlyfinbackend.event.ModuleChangeEvent;
+import se.onlyfin.onlyfinbackend.event.SubscriptionChangeEvent;
+import se.onlyfin.onlyfinbackend.repository.FeedCardRepository;
+
+import java.time.Duration;
+import java.util.*;
+
+/**
+ * This class tracks which stocks are being posted about and which analysts are being subscribed to right now.
+ * Every stock and analyst counter is kept per time window in a sliding window of count-min sketches, one sketch
+ * per slice of the window plus a running total, so memory does not grow with the number of stocks or analysts.
+ * Each window also tracks a bounded set of heavy hitters, the keys with the highest estimated counts, which is
+ * what the trending lists are read from.
+ * Analysts are ranked by net new subscribers: unsubscribes are counted in sketches of their own and taken off the
+ * analyst's subscriptions, so subscribing and unsubscribing again does not push an analyst up the list.
+ * Nothing is persisted: the windows start out empty and fill up as modules are published and users subscribe.
+ */
+@Service
+public class TrendingService {
+    private final FeedCardRepository feedCardRepository;
+    private final EnumMap<Window, SlidingWindow> stockWindows = new EnumMap<>(Window.class);
+    private final EnumMap<Window, SlidingWindow> analystWindows = new EnumMap<>(Window.class);
+
+    public TrendingService(FeedCardRepository feedCardRepository,
+                           @Value("${onlyfin.trending.sketch-depth:4}") int sketchDepth,
+                           @Value("${onlyfin.trending.sketch-width:512}") int sketchWidth,
+                           @Value("${onlyfin.trending.heavy-hitters:50}") int heavyHitters) {
+        this.feedCardRepository = feedCardRepository;
+        long nowMillis = System.currentTimeMillis();
+        for (Window window : Window.values()) {
+            stockWindows.put(window, new SlidingWindow(window, sketchDepth, sketchWidth, heavyHitters, nowMillis));
+            analystWindows.put(window, new SlidingWindow(window, sketchDepth, sketchWidth, heavyHitters, nowMillis));
+        }
+    }
+
+    /**
+     * @param window the time window
+     * @param limit  maximum number of stocks to return
+     * @return the stocks with the most new posts in the window, as stock reference ids mapped to estimated post
+     * counts, most first
+     */
+    public List<Map.Entry<Integer, Integer>> findTrendingStocks(Window window, int limit) {
+        return stockWindows.get(window).top(limit, System.currentTimeMillis());
+    }
+
+    /**
+     * @param window the time window
+     * @param limit  maximum number of analysts to return
+     * @return the analysts with the most net new subscribers in the window, as analyst ids mapped to estimated
+     * net subscription counts, most first
+     */
+    public List<Map.Entry<Integer, Integer>> findTrendingAnalysts(Window window, int limit) {
+        return analystWindows.get(window).top(limit, System.currentTimeMillis());
+    }
+
+    /**
+     * Counts a published module towards the stock it is about.
+     *
+     * @param event the module change
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onModuleChange(ModuleChangeEvent event) {
+        if (event.type() != ModuleChangeEvent.Type.CREATED) {
+            return;
+        }
+
+        feedCardRepository.findStockRefIdByModuleId(event.moduleId()).ifPresent((stockRefId) -> {
+            long nowMillis = System.currentTimeMillis();
+            for (SlidingWindow window : stockWindows.values()) {
+                window.add(stockRefId, nowMillis);
+            }
+        });
+    }
+
+    /**
+     * Counts a new subscription towards the subscribed-to analyst, and an unsubscribe against it.
+     *
+     * @param event the subscription change
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onSubscriptionChange(SubscriptionChangeEvent event) {
+        long nowMillis = System.currentTimeMillis();
+        for (SlidingWindow window : analystWindows.values()) {
+            if (event.subscribed()) {
+                window.add(event.subscribedToId(), nowMillis);
+            } else {
+                window.remove(event.subscribedToId(), nowMillis);
+            }
+        }
+    }
+
+    /**
+     * The time windows that trends are tracked over, and how many slices each is divided into.
+     * A window moves forward one slice at a time, so its oldest slice can be up to one slice older than the window.
+     */
+    public enum Window {
+        HOUR("1h", Duration.ofHours(1), 12),
+        DAY("24h", Duration.ofHours(24), 24),
+        WEEK("7d", Duration.ofDays(7), 28);
+
+        private final String label;
+        private final Duration length;
+        private final int slices;
+
+        Window(String label, Duration length, int slices) {
+            this.label = label;
+            this.length = length;
+            this.slices = slices;
+        }
+
+        /**
+         * @param label the label of the window, such as "24h"
+         * @return the window with the label, if there is one
+         */
+        public static Optional<Window> fromLabel(String label) {
+            for (Window window : values()) {
+                if (window.label.equals(label)) {
+                    return Optional.of(window);
+                }
+            }
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Counts over a sliding time window: a ring of count-min sketches, one per slice, and a sketch holding their
+     * sum. When a slice expires, its sketch is subtracted from the sum and reused for the newest slice.
+     * Removals are counted in a second ring of their own rather than subtracted from the first, since lowering
+     * the counters a key shares with others would make the others' smallest counter too low. A key's estimate is
+     * its estimated additions minus its estimated removals, and is read as zero when there are more removals.
+     */
+    static final class SlidingWindow {
+        private final long sliceMillis;
+        private final CountMinSketch[] addedSlices;
+        private final CountMinSketch[] removedSlices;
+        private final CountMinSketch addedTotal;
+        private final CountMinSketch removedTotal;
+        private final int heavyHitterCapacity;
+        private final HashMap<Integer, Integer> heavyHitters = new HashMap<>();
+        private long currentSlice;
+
+        SlidingWindow(Window window, int depth, int width, int heavyHitterCapacity, long nowMillis) {
+            this.sliceMillis = window.length.toMillis() / window.slices;
+            this.addedSlices = new CountMinSketch[window.slices];
+            this.removedSlices = new CountMinSketch[window.slices];
+            for (int i = 0; i < window.slices; i++) {
+                addedSlices[i] = new CountMinSketch(depth, width);
+                removedSlices[i] = new CountMinSketch(depth, width);
+            }
+            this.addedTotal = new CountMinSketch(depth, width);
+            this.removedTotal = new CountMinSketch(depth, width);
+            this.heavyHitterCapacity = heavyHitterCapacity;
+            this.currentSlice = nowMillis / sliceMillis;
+        }
+
+        /**
+         * Counts one occurrence of a key and updates the heavy hitters.
+         * A key that is not a heavy hitter yet replaces the smallest one once its estimate is larger.
+         */
+        synchronized void add(int key, long nowMillis) {
+            advance(nowMillis);
+            addedSlices[currentSliceIndex()].add(key);
+            addedTotal.add(key);
+
+            int estimate = estimate(key);
+            if (heavyHitters.containsKey(key) || heavyHitters.size() < heavyHitterCapacity) {
+                heavyHitters.put(key, estimate);
+                return;
+            }
+
+            Map.Entry<Integer, Integer> smallest = Collections.min(heavyHitters.entrySet(), Map.Entry.comparingByValue());
+            if (estimate > smallest.getValue()) {
+                heavyHitters.remove(smallest.getKey());
+                heavyHitters.put(key, estimate);
+            }
+        }
+
+        /**
+         * Counts one removal of a key and updates its heavy hitter estimate, dropping it once it reaches zero.
+         * A key that is not a heavy hitter is not promoted, as its estimate can only have gone down.
+         */
+        synchronized void remove(int key, long nowMillis) {
+            advance(nowMillis);
+            removedSlices[currentSliceIndex()].add(key);
+            removedTotal.add(key);
+
+            if (heavyHitters.containsKey(key)) {
+                heavyHitters.put(key, estimate(key));
+                heavyHitters.values().removeIf((count) -> count == 0);
+            }
+        }
+
+        /**
+         * @return the heavy hitters with the highest estimates, highest first
+         */
+        synchronized List<Map.Entry<Integer, Integer>> top(int limit, long nowMillis) {
+            advance(nowMillis);
+            List<Map.Entry<Integer, Integer>> entries = new ArrayList<>(heavyHitters.size());
+            for (Map.Entry<Integer, Integer> heavyHitter : heavyHitters.entrySet()) {
+                entries.add(Map.entry(heavyHitter.getKey(), heavyHitter.getValue()));
+            }
+            entries.sort(Map.Entry.<Integer, Integer>comparingByValue().reversed());
+            return entries.subList(0, Math.min(Math.max(limit, 0), entries.size()));
+        }
+
+        private int estimate(int key) {
+            return Math.max(addedTotal.estimate(key) - removedTotal.estimate(key), 0);
+        }
+
+        private int currentSliceIndex() {
+            return (int) Math.floorMod(currentSlice, (long) addedSlices.length);
+        }
+
+        /**
+         * Expires the slices that have fallen out of the window and re-estimates the heavy hitters.
+         */
+        private void advance(long nowMillis) {
+            long nowSlice = nowMillis / sliceMillis;
+            if (nowSlice <= currentSlice) {
+                return;
+            }
+
+            long expiredSlices = Math.min(nowSlice - currentSlice, addedSlices.length);
+            for (long slice = nowSlice - expiredSlices + 1; slice <= nowSlice; slice++) {
+                int index = (int) Math.floorMod(slice, (long) addedSlices.length);
+                addedTotal.subtract(addedSlices[index]);
+                addedSlices[index].clear();
+                removedTotal.subtract(removedSlices[index]);
+                removedSlices[index].clear();
+            }
+            currentSlice = nowSlice;
+
+            heavyHitters.replaceAll((key, count) -> estimate(key));
+            heavyHitters.values().removeIf((count) -> count == 0);
+        }
+    }
+
+    /**
+     * A count-min sketch: a few rows of counters, each indexed by a different hash of the key. A key's estimate is
+     * the smallest of its counters, which is never too low and only too high when other keys collide in every row.
+     */
+    static final class CountMinSketch {
+        private final int[][] counters;
+        private final int mask;
+
+        CountMinSketch(int depth, int width) {
+            // a power of two, so that a hash can be reduced with a mask
+            this.counters = new int[depth][Integer.highestOneBit(Math.max(width - 1, 1)) << 1];
+            this.mask = counters[0].length - 1;
+        }
+
+        void add(int key) {
+            for (int row = 0; row < counters.length; row++) {
+                counters[row][index(key, row)]++;
+            }
+        }
+
+        int estimate(int key) {
+            int estimate = Integer.MAX_VALUE;
+            for (int row = 0; row < counters.length; row++) {
+                estimate = Math.min(estimate, counters[row][index(key, row)]);
+            }
+            return estimate;
+        }
+
+        void subtract(CountMinSketch other) {
+            for (int row = 0; row < counters.length; row++) {
+                for (int column = 0; column < counters[row].length; column++) {
+                    counters[row][column] -= other.counters[row][column];
+                }
+            }
+        }
+
+        void clear() {
+            for (int[] row : counters) {
+                Arrays.fill(row, 0);
+            }
+        }
+
+        int index(int key, int row) {
+            int hash = (key ^ (row * 0x7FEB352D)) * 0x9E3779B9;
+            hash ^= hash >>> 15;
+            hash *= 0x846CA68B;
+            return (hash ^ (hash >>> 16)) & mask;
+        }
+    }
+
+}
@@ -2,6 +2,7 @@ package se.onlyfin.onlyfinbackend.service;
 
 import jakarta.transaction.Transactional;
 import jakarta.validation.Valid;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.lang.NonNull;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
@@ -9,7 +10,10 @@ import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 import se.onlyfin.onlyfinbackend.DTO.ProfileDTO;
 import se.onlyfin.onlyfinbackend.DTO.UserDTO;
+import se.onlyfin.onlyfinbackend.event.SubscriptionChangeEvent;
+import se.onlyfin.onlyfinbackend.model.Subscription;
 import se.onlyfin.onlyfinbackend.model.User;
+import se.onlyfin.onlyfinbackend.repository.SubscriptionRepository;
 import se.onlyfin.onlyfinbackend.repository.UserRepository;
 
 import java.util.*;
@@ -21,10 +25,25 @@ import java.util.*;
 public class UserService {
     private final UserRepository userRepository;
     private final PasswordEncoder passwordEncoder;
+    private final AnalystCoverageMatrix analystCoverageMatrix;
+    private final SubscriberLeaderboard subscriberLeaderboard;
+    private final SimilarAnalystIndex similarAnalystIndex;
+    private final FeedNameDictionary feedNameDictionary;
+    private final SubscriptionRepository subscriptionRepository;
+    private final ApplicationEventPublisher eventPublisher;
 
-    public UserService(UserRepository userRepository, PasswordEncoder passwordEncoder) {
+    public UserService(UserRepository userRepository, PasswordEncoder passwordEncoder,
+                       AnalystCoverageMatrix analystCoverageMatrix, SubscriberLeaderboard subscriberLeaderboard,
+                       SimilarAnalystIndex similarAnalystIndex, FeedNameDictionary feedNameDictionary,
+                       SubscriptionRepository subscriptionRepository, ApplicationEventPublisher eventPublisher) {
         this.userRepository = userRepository;
         this.passwordEncoder = passwordEncoder;
+        this.analystCoverageMatrix = analystCoverageMatrix;
+        this.subscriberLeaderboard = subscriberLeaderboard;
+        this.similarAnalystIndex = similarAnalystIndex;
+        this.feedNameDictionary = feedNameDictionary;
+        this.subscriptionRepository = subscriptionRepository;
+        this.eventPublisher = eventPublisher;
     }
 
     /**
@@ -91,7 +110,9 @@ public class UserService {
             userToRegister.setEnabled(true);
             userToRegister.setRoles("ROLE_USER");
             userToRegister.setAnalyst(true);
-            return userRepository.save(userToRegister);
+            User registeredUser = userRepository.save(userToRegister);
+            subscriberLeaderboard.addAnalyst(registeredUser.getId());
+            return registeredUser;
         } else {
             return null;
         }
@@ -136,6 +157,9 @@ public class UserService {
 
         targetUser.setAnalyst(true);
         userRepository.save(targetUser);
+        analystCoverageMatrix.refreshAnalyst(targetUser.getId());
+        subscriberLeaderboard.addAnalyst(targetUser.getId());
+        similarAnalystIndex.refreshAnalyst(targetUser.getId());
 
         return targetUser.isAnalyst();
     }
@@ -153,6 +177,9 @@ public class UserService {
 
         targetUser.setAnalyst(false);
         userRepository.save(targetUser);
+        analystCoverageMatrix.refreshAnalyst(targetUser.getId());
+        subscriberLeaderboard.removeAnalyst(targetUser.getId());
+        similarAnalystIndex.refreshAnalyst(targetUser.getId());
 
         return !targetUser.isAnalyst();
     }
@@ -225,6 +252,25 @@ public class UserService {
         return profiles;
     }
 
+    /**
+     * Removes all subscriptions made by or to a user.
+     * An unsubscribe event is published for each removed subscription, so that the subscriber counts and the open
+     * feed streams of the other users stay in sync.
+     *
+     * @param targetUser The user whose subscriptions are to be removed.
+     */
+    @Transactional
+    public void removeAllSubscriptions(@NonNull User targetUser) {
+        List<Subscription> subscriptions = new ArrayList<>(subscriptionRepository.findBySubscriber(targetUser));
+        subscriptions.addAll(subscriptionRepository.findBySubscribedTo(targetUser));
+        subscriptionRepository.deleteAll(subscriptions);
+
+        for (Subscription subscription : subscriptions) {
+            eventPublisher.publishEvent(new SubscriptionChangeEvent(
+                    subscription.getSubscriber().getId(), subscription.getSubscribedTo().getId(), false));
+        }
+    }
+
     /**
      * TEST METHOD: ONLY USE THIS METHOD FOR TESTING PURPOSES AS THERE MAY BE SIDE EFFECTS WHEN DELETING USERS
      *
@@ -233,7 +279,10 @@ public class UserService {
     @Deprecated
     public void deleteUser(User targetUser) {
         if (targetUser != null) {
+            removeAllSubscriptions(targetUser);
             userRepository.delete(targetUser);
+            subscriberLeaderboard.removeAnalyst(targetUser.getId());
+            feedNameDictionary.evictAnalyst(targetUser.getId());
         }
     }
 
@@ -0,0 +1,50 @@
+package se.onlyfin.onlyfinbackend.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Base64;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * This class tests encoding and decoding of feed cursors.
+ */
+class FeedCursorTests {
+
+    @Test
+    void decodesWhatItEncodes() {
+        FeedCursor cursor = new FeedCursor(Instant.parse("2023-05-01T12:34:56.123456789Z"), 42);
+
+        assertEquals(cursor, FeedCursor.decode(cursor.encode()));
+    }
+
+    @Test
+    void encodedCursorIsUrlSafe() {
+        String encoded = new FeedCursor(Instant.parse("2023-05-01T12:34:56Z"), Integer.MAX_VALUE).encode();
+
+        assertEquals(encoded, encoded.replaceAll("[^A-Za-z0-9_-]", ""));
+    }
+
+    @Test
+    void rejectsMalformedCursors() {
+        assertThrows(IllegalArgumentException.class, () -> FeedCursor.decode("not base64!"));
+        assertThrows(IllegalArgumentException.class, () -> FeedCursor.decode(encode("1:2")));
+        assertThrows(IllegalArgumentException.class, () -> FeedCursor.decode(encode("a:b:c")));
+        assertThrows(IllegalArgumentException.class, () -> FeedCursor.decode(encode("1:2:3:4")));
+    }
+
+    @Test
+    void rejectsOutOfRangeDates() {
+        assertThrows(IllegalArgumentException.class, () -> FeedCursor.decode(encode(Long.MAX_VALUE + ":0:1")));
+        assertThrows(IllegalArgumentException.class,
+                () -> FeedCursor.decode(encode(Long.MAX_VALUE + ":" + Long.MAX_VALUE + ":1")));
+    }
+
+    private static String encode(String raw) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+}
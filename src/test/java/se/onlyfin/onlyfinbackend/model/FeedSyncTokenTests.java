@@ -0,0 +1,64 @@
+package se.onlyfin.onlyfinbackend.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * This class tests encoding and decoding of feed sync tokens and the hash of the subscription set they carry.
+ */
+class FeedSyncTokenTests {
+
+    @Test
+    void decodesWhatItEncodes() {
+        FeedSyncToken token = new FeedSyncToken(Instant.parse("2023-05-01T12:34:56.123456789Z"), 42, -17);
+
+        assertEquals(token, FeedSyncToken.decode(token.encode()));
+    }
+
+    @Test
+    void rejectsMalformedTokens() {
+        assertThrows(IllegalArgumentException.class, () -> FeedSyncToken.decode("not base64!"));
+        assertThrows(IllegalArgumentException.class, () -> FeedSyncToken.decode(encode("sync:1:2:3")));
+        assertThrows(IllegalArgumentException.class, () -> FeedSyncToken.decode(encode("feed:1:2:3:4")));
+        assertThrows(IllegalArgumentException.class, () -> FeedSyncToken.decode(encode("sync:a:2:3:4")));
+    }
+
+    @Test
+    void rejectsOutOfRangeDates() {
+        assertThrows(IllegalArgumentException.class,
+                () -> FeedSyncToken.decode(encode("sync:" + Long.MAX_VALUE + ":0:1:0")));
+    }
+
+    @Test
+    void feedCursorIsNotASyncToken() {
+        String cursor = new FeedCursor(Instant.parse("2023-05-01T12:34:56Z"), 42).encode();
+
+        assertThrows(IllegalArgumentException.class, () -> FeedSyncToken.decode(cursor));
+    }
+
+    @Test
+    void subscriptionHashIgnoresOrder() {
+        assertEquals(FeedSyncToken.subscriptionHash(List.of(3, 1, 2)), FeedSyncToken.subscriptionHash(List.of(1, 2, 3)));
+    }
+
+    @Test
+    void subscriptionHashChangesWithTheSubscriptionSet() {
+        int hash = FeedSyncToken.subscriptionHash(List.of(1, 2, 3));
+
+        assertNotEquals(hash, FeedSyncToken.subscriptionHash(List.of(1, 2)));
+        assertNotEquals(hash, FeedSyncToken.subscriptionHash(List.of(1, 2, 4)));
+    }
+
+    private static String encode(String raw) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+}
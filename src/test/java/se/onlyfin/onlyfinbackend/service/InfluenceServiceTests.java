@@ -0,0 +1,95 @@
+package se.onlyfin.onlyfinbackend.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * This class tests the PageRank computation of the influence service.
+ */
+class InfluenceServiceTests {
+    private static final double EPSILON = 1e-6;
+
+    private InfluenceService influenceService;
+
+    @BeforeEach
+    void setUp() {
+        influenceService = new InfluenceService(null, 2, 0.85, 200, 1e-12);
+    }
+
+    @AfterEach
+    void tearDown() {
+        influenceService.shutdown();
+    }
+
+    @Test
+    void cycleGivesEveryUserTheSameRank() {
+        double[] ranks = influenceService.computePageRank(graph(3, new int[][]{{0, 1}, {1, 2}, {2, 0}}));
+
+        for (double rank : ranks) {
+            assertEquals(1.0 / 3, rank, EPSILON);
+        }
+    }
+
+    @Test
+    void rankOfUsersWithoutSubscriptionsIsSpreadOverEveryUser() {
+        // user 1 is subscribed to nobody, so its rank is shared out instead of being lost
+        double[] ranks = influenceService.computePageRank(graph(2, new int[][]{{0, 1}}));
+
+        // r0 = (1 - d + d * r1) / 2 and r1 = 1 - r0, so r0 = 0.5 / (1 + d / 2)
+        assertEquals(0.5 / 1.425, ranks[0], EPSILON);
+        assertEquals(1 - 0.5 / 1.425, ranks[1], EPSILON);
+    }
+
+    @Test
+    void ranksSumToOne() {
+        double[] ranks = influenceService.computePageRank(
+                graph(5, new int[][]{{0, 1}, {2, 1}, {3, 1}, {1, 4}, {3, 4}}));
+
+        assertEquals(1.0, Arrays.stream(ranks).sum(), EPSILON);
+    }
+
+    @Test
+    void subscriberRankOutweighsSubscriberCount() {
+        // user 4 has one subscriber that three users subscribe to, user 5 has two subscribers nobody follows
+        double[] ranks = influenceService.computePageRank(
+                graph(8, new int[][]{{0, 3}, {1, 3}, {2, 3}, {3, 4}, {6, 5}, {7, 5}}));
+
+        assertTrue(ranks[4] > ranks[5]);
+    }
+
+    /**
+     * Builds a graph in the layout the service loads it in: subscribers grouped by the user they subscribe to.
+     *
+     * @param userCount number of users, numbered from 0
+     * @param links     pairs of subscriber and subscribed-to user
+     */
+    private static InfluenceService.SubscriptionGraph graph(int userCount, int[][] links) {
+        int[] subscriptionCounts = new int[userCount];
+        int[] subscriberOffsets = new int[userCount + 1];
+        for (int[] link : links) {
+            subscriptionCounts[link[0]]++;
+            subscriberOffsets[link[1] + 1]++;
+        }
+        for (int node = 0; node < userCount; node++) {
+            subscriberOffsets[node + 1] += subscriberOffsets[node];
+        }
+        int[] subscriberNodes = new int[links.length];
+        int[] nextSlot = Arrays.copyOf(subscriberOffsets, userCount);
+        for (int[] link : links) {
+            subscriberNodes[nextSlot[link[1]]++] = link[0];
+        }
+
+        int[] userIds = new int[userCount];
+        Arrays.setAll(userIds, (node) -> node + 1);
+        return new InfluenceService.SubscriptionGraph(userIds, Set.of(), subscriptionCounts, subscriberOffsets,
+                subscriberNodes);
+    }
+
+}
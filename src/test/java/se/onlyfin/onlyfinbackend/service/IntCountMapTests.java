@@ -0,0 +1,86 @@
+package se.onlyfin.onlyfinbackend.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * This class tests the open-addressing count map used to count co-subscriptions.
+ */
+class IntCountMapTests {
+
+    @Test
+    void countsAreAddedAndRemovedAtZero() {
+        CoSubscriptionRecommender.IntCountMap countMap = new CoSubscriptionRecommender.IntCountMap();
+        countMap.add(7, 2);
+        countMap.add(7, 3);
+        assertEquals(5, countMap.get(7));
+
+        countMap.add(7, -5);
+        assertEquals(0, countMap.get(7));
+        assertEquals(0, countMap.size());
+        assertTrue(countMap.keys().isEmpty());
+    }
+
+    @Test
+    void missingKeyIsNotInsertedByANegativeDelta() {
+        CoSubscriptionRecommender.IntCountMap countMap = new CoSubscriptionRecommender.IntCountMap();
+        countMap.add(7, -1);
+
+        assertEquals(0, countMap.size());
+        assertEquals(0, countMap.get(7));
+    }
+
+    @Test
+    void removingFromTheMiddleOfAProbeRunKeepsLaterKeysReachable() {
+        CoSubscriptionRecommender.IntCountMap countMap = new CoSubscriptionRecommender.IntCountMap();
+        for (int key = 1; key <= 100; key++) {
+            countMap.add(key, key);
+        }
+        for (int key = 1; key <= 100; key += 3) {
+            countMap.add(key, -key);
+        }
+
+        for (int key = 1; key <= 100; key++) {
+            assertEquals((key % 3 == 1) ? 0 : key, countMap.get(key));
+        }
+        assertEquals(66, countMap.size());
+    }
+
+    @Test
+    void matchesAHashMapUnderRandomUpdates() {
+        CoSubscriptionRecommender.IntCountMap countMap = new CoSubscriptionRecommender.IntCountMap();
+        HashMap<Integer, Integer> expected = new HashMap<>();
+        Random random = new Random(42);
+
+        for (int i = 0; i < 100_000; i++) {
+            // a small key range keeps the table dense, so removals often shift entries back
+            int key = random.nextInt(200) - 100;
+            int delta = random.nextInt(5) - 2;
+            countMap.add(key, delta);
+            int count = expected.getOrDefault(key, 0) + delta;
+            if (count > 0) {
+                expected.put(key, count);
+            } else {
+                expected.remove(key);
+            }
+        }
+
+        assertEquals(expected.size(), countMap.size());
+        for (int key = -100; key < 100; key++) {
+            assertEquals(expected.getOrDefault(key, 0), countMap.get(key));
+        }
+        HashMap<Integer, Integer> visited = new HashMap<>();
+        countMap.forEach(visited::put);
+        assertEquals(expected, visited);
+        List<Integer> keys = countMap.keys();
+        assertEquals(expected.size(), keys.size());
+        assertTrue(expected.keySet().containsAll(keys));
+    }
+
+}
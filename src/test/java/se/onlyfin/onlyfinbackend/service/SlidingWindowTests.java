@@ -0,0 +1,105 @@
+package se.onlyfin.onlyfinbackend.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * This class tests the sliding windows that trending stocks and analysts are counted in.
+ */
+class SlidingWindowTests {
+    // the hour window has 12 slices of 5 minutes
+    private static final long SLICE_MILLIS = Duration.ofMinutes(5).toMillis();
+    private static final long START_MILLIS = 1_000 * SLICE_MILLIS;
+
+    @Test
+    void countsAreRankedMostFirst() {
+        TrendingService.SlidingWindow window = newWindow(10);
+        add(window, 1, 3, START_MILLIS);
+        add(window, 2, 5, START_MILLIS);
+        add(window, 3, 1, START_MILLIS);
+
+        assertEquals(List.of(Map.entry(2, 5), Map.entry(1, 3)), window.top(2, START_MILLIS));
+    }
+
+    @Test
+    void countsExpireOnceTheirSliceLeavesTheWindow() {
+        TrendingService.SlidingWindow window = newWindow(10);
+        add(window, 1, 2, START_MILLIS);
+        add(window, 1, 3, START_MILLIS + 6 * SLICE_MILLIS);
+
+        assertEquals(List.of(Map.entry(1, 5)), window.top(10, START_MILLIS + 11 * SLICE_MILLIS));
+        assertEquals(List.of(Map.entry(1, 3)), window.top(10, START_MILLIS + 12 * SLICE_MILLIS));
+        assertTrue(window.top(10, START_MILLIS + 18 * SLICE_MILLIS).isEmpty());
+    }
+
+    @Test
+    void pauseLongerThanTheWindowExpiresEverything() {
+        TrendingService.SlidingWindow window = newWindow(10);
+        add(window, 1, 4, START_MILLIS);
+
+        assertTrue(window.top(10, START_MILLIS + 100 * SLICE_MILLIS).isEmpty());
+        add(window, 1, 1, START_MILLIS + 100 * SLICE_MILLIS);
+        assertEquals(List.of(Map.entry(1, 1)), window.top(10, START_MILLIS + 100 * SLICE_MILLIS));
+    }
+
+    @Test
+    void removalsCountAgainstAKey() {
+        TrendingService.SlidingWindow window = newWindow(10);
+        add(window, 1, 3, START_MILLIS);
+        add(window, 2, 2, START_MILLIS);
+        window.remove(1, START_MILLIS);
+        window.remove(1, START_MILLIS);
+
+        assertEquals(List.of(Map.entry(2, 2), Map.entry(1, 1)), window.top(10, START_MILLIS));
+
+        window.remove(1, START_MILLIS);
+        assertEquals(List.of(Map.entry(2, 2)), window.top(10, START_MILLIS));
+    }
+
+    @Test
+    void keyWithALargerCountReplacesTheSmallestHeavyHitter() {
+        TrendingService.SlidingWindow window = newWindow(2);
+        add(window, 1, 3, START_MILLIS);
+        add(window, 2, 1, START_MILLIS);
+        add(window, 3, 2, START_MILLIS);
+
+        assertEquals(List.of(Map.entry(1, 3), Map.entry(3, 2)), window.top(10, START_MILLIS));
+    }
+
+    @Test
+    void removalsOfACollidingKeyDoNotLowerAnotherKey() {
+        // a narrow sketch, so that keys share counters in some rows
+        TrendingService.SlidingWindow window =
+                new TrendingService.SlidingWindow(TrendingService.Window.HOUR, 2, 8, 10, START_MILLIS);
+        TrendingService.CountMinSketch sketch = new TrendingService.CountMinSketch(2, 8);
+        int collidingKey = 2;
+        while (sketch.index(collidingKey, 0) != sketch.index(1, 0) || sketch.index(collidingKey, 1) == sketch.index(1, 1)) {
+            collidingKey++;
+        }
+
+        add(window, 1, 3, START_MILLIS);
+        for (int i = 0; i < 5; i++) {
+            window.remove(collidingKey, START_MILLIS);
+        }
+
+        // moving into the next slice re-estimates the heavy hitters
+        assertEquals(List.of(Map.entry(1, 3)), window.top(10, START_MILLIS + SLICE_MILLIS));
+    }
+
+    private static TrendingService.SlidingWindow newWindow(int heavyHitters) {
+        return new TrendingService.SlidingWindow(TrendingService.Window.HOUR, 4, 512, heavyHitters, START_MILLIS);
+    }
+
+    private static void add(TrendingService.SlidingWindow window, int key, int times, long nowMillis) {
+        for (int i = 0; i < times; i++) {
+            window.add(key, nowMillis);
+        }
+    }
+
+}
@@ -0,0 +1,148 @@
+package se.onlyfin.onlyfinbackend.service;
+
+import org.junit.jupiter.api.Test;
+import se.onlyfin.onlyfinbackend.event.SubscriptionChangeEvent;
+import se.onlyfin.onlyfinbackend.model.SubscriberCount;
+import se.onlyfin.onlyfinbackend.repository.SubscriptionRepository;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * This class tests that the subscriber leaderboard stays sorted as analysts move between count groups.
+ */
+class SubscriberLeaderboardTests {
+
+    @Test
+    void loadRanksAnalystsBySubscriberCount() {
+        SubscriptionRepository subscriptionRepository = mock(SubscriptionRepository.class);
+        when(subscriptionRepository.countSubscribersOfAllAnalysts())
+                .thenReturn(List.of(subscriberCount(1, 1), subscriberCount(2, 3), subscriberCount(3, 3)));
+        SubscriberLeaderboard leaderboard = new SubscriberLeaderboard(subscriptionRepository);
+        leaderboard.load();
+
+        assertEquals(Set.of(2, 3), new HashSet<>(leaderboard.findTop(2)));
+        assertEquals(OptionalInt.of(1), leaderboard.findRank(2));
+        assertEquals(OptionalInt.of(1), leaderboard.findRank(3));
+        assertEquals(OptionalInt.of(3), leaderboard.findRank(1));
+        assertEquals(OptionalInt.empty(), leaderboard.findRank(4));
+    }
+
+    @Test
+    void subscribingMovesAnAnalystIntoTheGroupAbove() {
+        SubscriberLeaderboard leaderboard = leaderboardWithAnalysts(1, 2, 3);
+        subscribe(leaderboard, 3);
+
+        assertEquals(List.of(3), leaderboard.findTop(1));
+        assertEquals(OptionalInt.of(1), leaderboard.findSubscriberCount(3));
+        assertEquals(OptionalInt.of(2), leaderboard.findRank(1));
+        assertEquals(OptionalInt.of(2), leaderboard.findRank(2));
+    }
+
+    @Test
+    void unsubscribingMovesAnAnalystIntoTheGroupBelow() {
+        SubscriberLeaderboard leaderboard = leaderboardWithAnalysts(1, 2, 3);
+        subscribe(leaderboard, 1);
+        subscribe(leaderboard, 2);
+        subscribe(leaderboard, 3);
+        unsubscribe(leaderboard, 2);
+
+        assertEquals(OptionalInt.of(1), leaderboard.findRank(1));
+        assertEquals(OptionalInt.of(1), leaderboard.findRank(3));
+        assertEquals(OptionalInt.of(3), leaderboard.findRank(2));
+        assertEquals(2, leaderboard.findTop(3).indexOf(2));
+    }
+
+    @Test
+    void unsubscribingBelowZeroIsIgnored() {
+        SubscriberLeaderboard leaderboard = leaderboardWithAnalysts(1);
+        unsubscribe(leaderboard, 1);
+
+        assertEquals(OptionalInt.of(0), leaderboard.findSubscriberCount(1));
+    }
+
+    @Test
+    void removedAnalystLeavesTheOthersSorted() {
+        SubscriberLeaderboard leaderboard = leaderboardWithAnalysts(1, 2, 3, 4);
+        subscribe(leaderboard, 2);
+        subscribe(leaderboard, 2);
+        subscribe(leaderboard, 3);
+        leaderboard.removeAnalyst(2);
+
+        assertEquals(OptionalInt.empty(), leaderboard.findRank(2));
+        assertEquals(3, leaderboard.findTop(10).size());
+        assertEquals(OptionalInt.of(1), leaderboard.findRank(3));
+        assertEquals(OptionalInt.of(2), leaderboard.findRank(1));
+        assertEquals(OptionalInt.of(2), leaderboard.findRank(4));
+    }
+
+    @Test
+    void staysSortedUnderRandomSubscriptionChanges() {
+        int analystCount = 20;
+        Integer[] analystIds = new Integer[analystCount];
+        Arrays.setAll(analystIds, (i) -> i + 1);
+        SubscriberLeaderboard leaderboard = leaderboardWithAnalysts(analystIds);
+        HashMap<Integer, Integer> expectedCounts = new HashMap<>();
+        Random random = new Random(42);
+
+        for (int i = 0; i < 5_000; i++) {
+            int analystId = random.nextInt(analystCount) + 1;
+            // lean towards subscribing so that several count groups form
+            if (random.nextInt(5) < 3) {
+                subscribe(leaderboard, analystId);
+                expectedCounts.merge(analystId, 1, Integer::sum);
+            } else {
+                unsubscribe(leaderboard, analystId);
+                expectedCounts.computeIfPresent(analystId, (key, count) -> (count > 1) ? count - 1 : null);
+            }
+        }
+
+        List<Integer> top = leaderboard.findTop(analystCount);
+        assertEquals(analystCount, top.size());
+        for (int position = 1; position < top.size(); position++) {
+            assertTrue(expectedCounts.getOrDefault(top.get(position - 1), 0) >=
+                    expectedCounts.getOrDefault(top.get(position), 0));
+        }
+        for (int analystId = 1; analystId <= analystCount; analystId++) {
+            int count = expectedCounts.getOrDefault(analystId, 0);
+            long analystsAhead = expectedCounts.values().stream().filter((other) -> other > count).count();
+            assertEquals(OptionalInt.of(count), leaderboard.findSubscriberCount(analystId));
+            assertEquals(OptionalInt.of((int) analystsAhead + 1), leaderboard.findRank(analystId));
+        }
+    }
+
+    private static SubscriberLeaderboard leaderboardWithAnalysts(Integer... analystIds) {
+        SubscriberLeaderboard leaderboard = new SubscriberLeaderboard(mock(SubscriptionRepository.class));
+        for (Integer analystId : analystIds) {
+            leaderboard.addAnalyst(analystId);
+        }
+        return leaderboard;
+    }
+
+    private static void subscribe(SubscriberLeaderboard leaderboard, Integer analystId) {
+        leaderboard.onSubscriptionChange(new SubscriptionChangeEvent(0, analystId, true));
+    }
+
+    private static void unsubscribe(SubscriberLeaderboard leaderboard, Integer analystId) {
+        leaderboard.onSubscriptionChange(new SubscriptionChangeEvent(0, analystId, false));
+    }
+
+    private static SubscriberCount subscriberCount(Integer analystId, long count) {
+        return new SubscriberCount() {
+            @Override
+            public Integer getAnalystId() {
+                return analystId;
+            }
+
+            @Override
+            public Long getSubscriberCount() {
+                return count;
+            }
+        };
+    }
+
+}
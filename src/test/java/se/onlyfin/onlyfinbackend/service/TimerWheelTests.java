@@ -0,0 +1,99 @@
+package se.onlyfin.onlyfinbackend.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * This class tests the timer wheel that releases scheduled modules.
+ */
+class TimerWheelTests {
+    private static final long TICK_MILLIS = 1000;
+    private static final int WHEEL_SIZE = 8;
+    private static final long START_MILLIS = 1_000_000;
+
+    @Test
+    void entryIsReleasedWhenDue() {
+        ScheduledPublishingService.TimerWheel timerWheel = newTimerWheel();
+        timerWheel.add(1, 10, Instant.ofEpochMilli(START_MILLIS + 3 * TICK_MILLIS));
+
+        assertTrue(timerWheel.advance(START_MILLIS + 2 * TICK_MILLIS, 10).isEmpty());
+        assertEquals(List.of(1), moduleIds(timerWheel.advance(START_MILLIS + 3 * TICK_MILLIS, 10)));
+    }
+
+    @Test
+    void entryMoreThanOneRevolutionAheadWaitsForItsTick() {
+        ScheduledPublishingService.TimerWheel timerWheel = newTimerWheel();
+        // shares a slot with the tick one revolution earlier
+        timerWheel.add(1, 10, Instant.ofEpochMilli(START_MILLIS + (WHEEL_SIZE + 2) * TICK_MILLIS));
+
+        assertTrue(timerWheel.advance(START_MILLIS + 2 * TICK_MILLIS, 10).isEmpty());
+        assertTrue(timerWheel.advance(START_MILLIS + (WHEEL_SIZE + 1) * TICK_MILLIS, 10).isEmpty());
+        assertEquals(List.of(1), moduleIds(timerWheel.advance(START_MILLIS + (WHEEL_SIZE + 2) * TICK_MILLIS, 10)));
+    }
+
+    @Test
+    void overdueEntryIsReleasedOnTheNextTick() {
+        ScheduledPublishingService.TimerWheel timerWheel = newTimerWheel();
+        timerWheel.add(1, 10, Instant.ofEpochMilli(START_MILLIS - 60_000));
+
+        assertEquals(List.of(1), moduleIds(timerWheel.advance(START_MILLIS + TICK_MILLIS, 10)));
+    }
+
+    @Test
+    void cancelledEntryIsNotReleased() {
+        ScheduledPublishingService.TimerWheel timerWheel = newTimerWheel();
+        timerWheel.add(1, 10, Instant.ofEpochMilli(START_MILLIS + TICK_MILLIS));
+        timerWheel.add(2, 10, Instant.ofEpochMilli(START_MILLIS + TICK_MILLIS));
+        timerWheel.cancel(1);
+
+        assertEquals(List.of(2), moduleIds(timerWheel.advance(START_MILLIS + TICK_MILLIS, 10)));
+    }
+
+    @Test
+    void entryIsAddedOnlyOnce() {
+        ScheduledPublishingService.TimerWheel timerWheel = newTimerWheel();
+        timerWheel.add(1, 10, Instant.ofEpochMilli(START_MILLIS + TICK_MILLIS));
+        timerWheel.add(1, 10, Instant.ofEpochMilli(START_MILLIS + 2 * TICK_MILLIS));
+
+        assertEquals(List.of(1), moduleIds(timerWheel.advance(START_MILLIS + 2 * TICK_MILLIS, 10)));
+        assertTrue(timerWheel.advance(START_MILLIS + 3 * TICK_MILLIS, 10).isEmpty());
+    }
+
+    @Test
+    void entriesBeyondTheLimitAreReleasedOnLaterTicks() {
+        ScheduledPublishingService.TimerWheel timerWheel = newTimerWheel();
+        for (int moduleId = 1; moduleId <= 5; moduleId++) {
+            timerWheel.add(moduleId, 10, Instant.ofEpochMilli(START_MILLIS + TICK_MILLIS));
+        }
+
+        assertEquals(List.of(1, 2), moduleIds(timerWheel.advance(START_MILLIS + TICK_MILLIS, 2)));
+        assertEquals(List.of(3, 4), moduleIds(timerWheel.advance(START_MILLIS + 2 * TICK_MILLIS, 2)));
+        assertEquals(List.of(5), moduleIds(timerWheel.advance(START_MILLIS + 3 * TICK_MILLIS, 2)));
+    }
+
+    @Test
+    void pauseLongerThanARevolutionReleasesEveryDueEntry() {
+        ScheduledPublishingService.TimerWheel timerWheel = newTimerWheel();
+        timerWheel.add(1, 10, Instant.ofEpochMilli(START_MILLIS + TICK_MILLIS));
+        timerWheel.add(2, 10, Instant.ofEpochMilli(START_MILLIS + 5 * TICK_MILLIS));
+
+        List<Integer> released = moduleIds(timerWheel.advance(START_MILLIS + 3 * WHEEL_SIZE * TICK_MILLIS, 10));
+
+        assertEquals(2, released.size());
+        assertTrue(released.containsAll(List.of(1, 2)));
+    }
+
+    private static ScheduledPublishingService.TimerWheel newTimerWheel() {
+        return new ScheduledPublishingService.TimerWheel(TICK_MILLIS, WHEEL_SIZE, START_MILLIS);
+    }
+
+    private static List<Integer> moduleIds(List<ScheduledPublishingService.TimerWheel.Entry> entries) {
+        return entries.stream().map(ScheduledPublishingService.TimerWheel.Entry::moduleId).toList();
+    }
+
+}